@@ -0,0 +1,77 @@
+package com.monkcommerce.coupons.benchmark;
+
+import com.monkcommerce.coupons.catalog.CatalogEntry;
+import com.monkcommerce.coupons.catalog.CouponCatalog;
+import com.monkcommerce.coupons.dto.ApplicableCouponsResponse;
+import com.monkcommerce.coupons.dto.Cart;
+import com.monkcommerce.coupons.rule.RuleCompiler;
+import com.monkcommerce.coupons.service.CouponService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ApplicableCouponsBenchmark {
+
+    @Param({"1000", "50000"})
+    public int catalogSize;
+
+    @Param({"1", "100", "10000"})
+    public int cartLines;
+
+    @Param({"1000", "100000"})
+    public int productRange;
+
+    private ConfigurableApplicationContext context;
+    private CouponService couponService;
+    private Cart cart;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkContext.start();
+        couponService = context.getBean(CouponService.class);
+
+        RuleCompiler ruleCompiler = context.getBean(RuleCompiler.class);
+        List<CatalogEntry> entries = SyntheticCatalog
+                .coupons(catalogSize / 5, catalogSize * 2 / 5, catalogSize * 2 / 5, productRange, 1L).stream()
+                .map(coupon -> new CatalogEntry(ruleCompiler.compile(coupon), coupon.getDetails()))
+                .toList();
+        context.getBean(CouponCatalog.class).upsert(entries);
+
+        cart = SyntheticCatalog.cart(cartLines, productRange, 2L);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public ApplicableCouponsResponse getApplicableCoupons() {
+        return couponService.getApplicableCoupons(cart);
+    }
+
+    @Benchmark
+    public ApplicableCouponsResponse getTopApplicableCoupons() {
+        return couponService.getTopApplicableCoupons(cart, 5);
+    }
+}
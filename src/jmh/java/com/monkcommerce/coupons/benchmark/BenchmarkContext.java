@@ -0,0 +1,22 @@
+package com.monkcommerce.coupons.benchmark;
+
+import com.monkcommerce.coupons.CouponsApplication;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+final class BenchmarkContext {
+
+    private BenchmarkContext() {
+    }
+
+    static ConfigurableApplicationContext start() {
+        return new SpringApplicationBuilder(CouponsApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "spring.jpa.show-sql=false",
+                        "spring.datasource.url=jdbc:h2:mem:benchmark_db",
+                        "logging.level.root=WARN")
+                .run();
+    }
+}
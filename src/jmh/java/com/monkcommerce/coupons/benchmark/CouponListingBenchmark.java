@@ -0,0 +1,96 @@
+package com.monkcommerce.coupons.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
+import com.monkcommerce.coupons.catalog.CatalogEntry;
+import com.monkcommerce.coupons.catalog.CouponCatalog;
+import com.monkcommerce.coupons.dto.CouponResponse;
+import com.monkcommerce.coupons.model.CouponType;
+import com.monkcommerce.coupons.rule.RuleCompiler;
+import com.monkcommerce.coupons.service.CouponService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the {@code GET /coupons} body: the coupon list with each coupon's stored details written
+ * through as raw JSON, against the previous path that parsed every details string into a tree
+ * only to serialize it again. Run with {@code -prof gc} to compare allocation per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CouponListingBenchmark {
+
+    @Param({"1000", "50000"})
+    public int catalogSize;
+
+    private ConfigurableApplicationContext context;
+    private CouponService couponService;
+    private ObjectMapper objectMapper;
+
+    /**
+     * The response shape before details were passed through: an object tree in place of the string.
+     */
+    public record TreeCouponResponse(Long id, CouponType type, Object details, Instant validFrom,
+                                     Instant validUntil, Long maxRedemptions, Long maxRedemptionsPerCustomer) {
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkContext.start();
+        couponService = context.getBean(CouponService.class);
+        objectMapper = new ObjectMapper()
+                .registerModule(new SimpleModule().addSerializer(Instant.class, ToStringSerializer.instance));
+
+        RuleCompiler ruleCompiler = context.getBean(RuleCompiler.class);
+        List<CatalogEntry> entries = SyntheticCatalog
+                .coupons(catalogSize / 5, catalogSize * 2 / 5, catalogSize * 2 / 5, 10_000, 1L).stream()
+                .map(coupon -> new CatalogEntry(ruleCompiler.compile(coupon), coupon.getDetails()))
+                .toList();
+        context.getBean(CouponCatalog.class).upsert(entries);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public byte[] listCouponsRawDetails() throws IOException {
+        return objectMapper.writeValueAsBytes(couponService.getAllCoupons());
+    }
+
+    @Benchmark
+    public byte[] listCouponsDetailsTree() throws IOException {
+        List<CouponResponse> coupons = couponService.getAllCoupons();
+        List<TreeCouponResponse> responses = new ArrayList<>(coupons.size());
+        for (CouponResponse coupon : coupons) {
+            responses.add(new TreeCouponResponse(coupon.getId(), coupon.getType(),
+                    objectMapper.readValue(coupon.getDetails(), Object.class), coupon.getValidFrom(),
+                    coupon.getValidUntil(), coupon.getMaxRedemptions(), coupon.getMaxRedemptionsPerCustomer()));
+        }
+        return objectMapper.writeValueAsBytes(responses);
+    }
+}
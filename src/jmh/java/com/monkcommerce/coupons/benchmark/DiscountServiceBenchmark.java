@@ -0,0 +1,73 @@
+package com.monkcommerce.coupons.benchmark;
+
+import com.monkcommerce.coupons.dto.Cart;
+import com.monkcommerce.coupons.model.Coupon;
+import com.monkcommerce.coupons.service.DiscountService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DiscountServiceBenchmark {
+
+    @Param({"1000"})
+    public int catalogSize;
+
+    @Param({"1", "100", "10000"})
+    public int cartLines;
+
+    @Param({"1000"})
+    public int productRange;
+
+    private ConfigurableApplicationContext context;
+    private DiscountService discountService;
+    private List<Coupon> coupons;
+    private Cart cart;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkContext.start();
+        discountService = context.getBean(DiscountService.class);
+        coupons = SyntheticCatalog.coupons(catalogSize / 5, catalogSize * 2 / 5, catalogSize * 2 / 5, productRange, 1L);
+        cart = SyntheticCatalog.cart(cartLines, productRange, 2L);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public void calculateDiscountAllCoupons(Blackhole blackhole) {
+        for (Coupon coupon : coupons) {
+            blackhole.consume(discountService.calculateDiscount(coupon, cart));
+        }
+    }
+
+    @Benchmark
+    public Object applyDiscount() {
+        Coupon coupon = coupons.get(next++ % coupons.size());
+        return discountService.applyDiscount(coupon, cart);
+    }
+}
@@ -0,0 +1,65 @@
+package com.monkcommerce.coupons.benchmark;
+
+import com.monkcommerce.coupons.dto.Cart;
+import com.monkcommerce.coupons.dto.CartItem;
+import com.monkcommerce.coupons.model.Coupon;
+import com.monkcommerce.coupons.model.CouponType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Deterministic generators for benchmark catalogs and carts. Coupons and carts draw product ids from
+ * the same {@code productRange}, so a smaller range means more coupons overlap each cart.
+ */
+public final class SyntheticCatalog {
+
+    private SyntheticCatalog() {
+    }
+
+    public static List<Coupon> coupons(int cartWise, int productWise, int bxGy, int productRange, long seed) {
+        Random random = new Random(seed);
+        List<Coupon> coupons = new ArrayList<>(cartWise + productWise + bxGy);
+        long id = 1;
+
+        for (int i = 0; i < cartWise; i++) {
+            coupons.add(coupon(id++, CouponType.CART_WISE, """
+                    {"threshold":%d,"discount":%d}""".formatted(random.nextInt(5_000), 1 + random.nextInt(30))));
+        }
+        for (int i = 0; i < productWise; i++) {
+            coupons.add(coupon(id++, CouponType.PRODUCT_WISE, """
+                    {"product_id":%d,"discount":%d}""".formatted(random.nextInt(productRange), 1 + random.nextInt(50))));
+        }
+        for (int i = 0; i < bxGy; i++) {
+            coupons.add(coupon(id++, CouponType.BXGY, """
+                    {"buy_products":[{"product_id":%d,"quantity":%d},{"product_id":%d,"quantity":1}],\
+                    "get_products":[{"product_id":%d,"quantity":1}],"repetition_limit":%d}""".formatted(
+                    random.nextInt(productRange), 1 + random.nextInt(3), random.nextInt(productRange),
+                    random.nextInt(productRange), 1 + random.nextInt(3))));
+        }
+        return coupons;
+    }
+
+    public static Cart cart(int lines, int productRange, long seed) {
+        Random random = new Random(seed);
+        List<CartItem> items = new ArrayList<>(lines);
+        for (int i = 0; i < lines; i++) {
+            items.add(CartItem.builder()
+                    .productId((long) random.nextInt(productRange))
+                    .quantity(1 + random.nextInt(5))
+                    .price(1 + random.nextInt(20_000) / 100.0)
+                    .build());
+        }
+        return Cart.builder().items(items).build();
+    }
+
+    private static Coupon coupon(long id, CouponType type, String details) {
+        return Coupon.builder()
+                .id(id)
+                .type(type)
+                .details(details)
+                .version(0L)
+                .build();
+    }
+}
@@ -0,0 +1,140 @@
+package com.monkcommerce.coupons.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.monkcommerce.coupons.dto.Cart;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.env.Environment;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Drives the running application over HTTP with virtual-thread clients and fails if any endpoint
+ * misses its latency budget. Every setting is a {@code loadtest.*} property and can be overridden
+ * with {@code -D}; see the README for the full list.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "spring.datasource.url=jdbc:h2:mem:loadtest_db",
+        "spring.jpa.show-sql=false",
+        "logging.level.root=WARN"
+})
+class CouponsLoadTest {
+
+    @Value("${local.server.port}")
+    private int port;
+
+    @Autowired
+    private Environment environment;
+
+    @Value("${loadtest.clients:64}")
+    private int clients;
+
+    @Value("${loadtest.warmup:5s}")
+    private Duration warmup;
+
+    @Value("${loadtest.duration:20s}")
+    private Duration duration;
+
+    @Value("${loadtest.catalog.cart-wise:1000}")
+    private int cartWise;
+
+    @Value("${loadtest.catalog.product-wise:4000}")
+    private int productWise;
+
+    @Value("${loadtest.catalog.bxgy:4000}")
+    private int bxGy;
+
+    @Value("${loadtest.product-range:5000}")
+    private int productRange;
+
+    @Value("${loadtest.carts:1000}")
+    private int cartCount;
+
+    @Value("${loadtest.cart-lines:10}")
+    private int cartLines;
+
+    @Value("${loadtest.mix.applicable:70}")
+    private int applicableWeight;
+
+    @Value("${loadtest.mix.apply:25}")
+    private int applyWeight;
+
+    @Value("${loadtest.mix.crud:5}")
+    private int crudWeight;
+
+    @Value("${loadtest.budget.min-throughput:0}")
+    private double minThroughput;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void endpointsStayWithinTheirLatencyBudgets() throws Exception {
+        URI base = URI.create("http://localhost:" + port);
+        HttpClient http = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+
+        long[] couponIds = seedCatalog(http, base);
+        List<byte[]> carts = new ArrayList<>(cartCount);
+        for (Cart cart : SyntheticLoad.carts(cartCount, cartLines, productRange, 2L)) {
+            carts.add(objectMapper.writeValueAsBytes(cart));
+        }
+        LoadMix mix = new LoadMix(applicableWeight, applyWeight, crudWeight);
+
+        long recordFrom = System.nanoTime() + warmup.toNanos();
+        long deadline = recordFrom + duration.toNanos();
+        List<LoadClient> loadClients = new ArrayList<>(clients);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < clients; i++) {
+                LoadClient client = new LoadClient(http, base, objectMapper, carts, couponIds, mix, recordFrom, deadline);
+                loadClients.add(client);
+                executor.execute(client);
+            }
+        }
+
+        LoadReport report = new LoadReport(loadClients, duration);
+        System.out.printf("Load test: %d clients, %s warmup, %s measured, %d coupons, %d-line carts%n%s",
+                clients, warmup, duration, couponIds.length, cartLines, report.format());
+        assertThat(report.violations(this::p99Budget, minThroughput)).isEmpty();
+    }
+
+    private long[] seedCatalog(HttpClient http, URI base) throws IOException, InterruptedException {
+        HttpResponse<String> imported = http.send(HttpRequest.newBuilder(base.resolve("/coupons/import"))
+                .header("Content-Type", "application/x-ndjson")
+                .POST(HttpRequest.BodyPublishers.ofString(
+                        SyntheticLoad.catalogNdjson(cartWise, productWise, bxGy, productRange, 1L)))
+                .build(), HttpResponse.BodyHandlers.ofString());
+        assertThat(imported.statusCode()).isEqualTo(200);
+        assertThat(objectMapper.readTree(imported.body()).get("imported").asLong())
+                .isEqualTo(cartWise + productWise + bxGy);
+
+        HttpResponse<String> listed = http.send(HttpRequest.newBuilder(base.resolve("/coupons")).GET().build(),
+                HttpResponse.BodyHandlers.ofString());
+        JsonNode coupons = objectMapper.readTree(listed.body());
+        long[] ids = new long[coupons.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = coupons.get(i).get("id").asLong();
+        }
+        return ids;
+    }
+
+    private Duration p99Budget(Endpoint endpoint) {
+        return environment.getProperty("loadtest.budget." + endpoint.key() + ".p99", Duration.class,
+                Duration.ofMillis(endpoint.defaultP99Millis()));
+    }
+}
@@ -0,0 +1,37 @@
+package com.monkcommerce.coupons.loadtest;
+
+/**
+ * Operations the load harness drives. The key names the operation in {@code loadtest.budget.*}
+ * properties.
+ */
+enum Endpoint {
+
+    APPLICABLE("applicable", "POST /applicable-coupons", 250),
+    APPLY("apply", "POST /apply-coupon/{id}", 250),
+    CREATE("create", "POST /coupons", 500),
+    READ("read", "GET /coupons/{id}", 250),
+    UPDATE("update", "PUT /coupons/{id}", 500),
+    DELETE("delete", "DELETE /coupons/{id}", 500);
+
+    private final String key;
+    private final String label;
+    private final long defaultP99Millis;
+
+    Endpoint(String key, String label, long defaultP99Millis) {
+        this.key = key;
+        this.label = label;
+        this.defaultP99Millis = defaultP99Millis;
+    }
+
+    String key() {
+        return key;
+    }
+
+    String label() {
+        return label;
+    }
+
+    long defaultP99Millis() {
+        return defaultP99Millis;
+    }
+}
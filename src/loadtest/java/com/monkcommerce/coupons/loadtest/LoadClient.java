@@ -0,0 +1,170 @@
+package com.monkcommerce.coupons.loadtest;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * One simulated client. It issues requests back to back until the deadline, picking each operation
+ * from the configured mix, and records the latency of every request that starts after warmup. CRUD
+ * operations only update and delete coupons this client created, so the seeded catalog stays
+ * intact for the read traffic. Requests shed by admission control ({@code 503}) are counted on
+ * their own rather than as errors, and their latency is left out of the histograms.
+ */
+final class LoadClient implements Runnable {
+
+    private static final long HIGHEST_TRACKABLE_MICROS = 60_000_000L;
+    private static final int SERVICE_UNAVAILABLE = 503;
+
+    private final HttpClient http;
+    private final URI base;
+    private final ObjectMapper objectMapper;
+    private final List<byte[]> carts;
+    private final long[] couponIds;
+    private final LoadMix mix;
+    private final long recordFrom;
+    private final long deadline;
+    private final Map<Endpoint, Histogram> latencies = new EnumMap<>(Endpoint.class);
+    private final Map<Endpoint, Long> errors = new EnumMap<>(Endpoint.class);
+    private final Map<Endpoint, Long> shed = new EnumMap<>(Endpoint.class);
+    private final Deque<Long> owned = new ArrayDeque<>();
+
+    LoadClient(HttpClient http, URI base, ObjectMapper objectMapper, List<byte[]> carts, long[] couponIds,
+               LoadMix mix, long recordFrom, long deadline) {
+        this.http = http;
+        this.base = base;
+        this.objectMapper = objectMapper;
+        this.carts = carts;
+        this.couponIds = couponIds;
+        this.mix = mix;
+        this.recordFrom = recordFrom;
+        this.deadline = deadline;
+        for (Endpoint endpoint : Endpoint.values()) {
+            latencies.put(endpoint, new Histogram(HIGHEST_TRACKABLE_MICROS, 3));
+            errors.put(endpoint, 0L);
+            shed.put(endpoint, 0L);
+        }
+    }
+
+    Map<Endpoint, Histogram> latencies() {
+        return latencies;
+    }
+
+    Map<Endpoint, Long> errors() {
+        return errors;
+    }
+
+    Map<Endpoint, Long> shed() {
+        return shed;
+    }
+
+    @Override
+    public void run() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (System.nanoTime() < deadline) {
+            int pick = random.nextInt(mix.total());
+            if (pick < mix.applicable()) {
+                send(Endpoint.APPLICABLE, post("/applicable-coupons", randomCart(random)), 200);
+            } else if (pick < mix.applicable() + mix.apply()) {
+                long id = couponIds[random.nextInt(couponIds.length)];
+                send(Endpoint.APPLY, post("/apply-coupon/" + id, randomCart(random)), 200);
+            } else {
+                crud(random);
+            }
+        }
+    }
+
+    private void crud(ThreadLocalRandom random) {
+        int operation = owned.isEmpty() ? 0 : random.nextInt(4);
+        switch (operation) {
+            case 0 -> {
+                String body = send(Endpoint.CREATE, post("/coupons", couponJson(random)), 201);
+                if (body != null) {
+                    owned.add(id(body));
+                }
+            }
+            case 1 -> send(Endpoint.READ, request("/coupons/" + owned.peekLast()).GET(), 200);
+            case 2 -> send(Endpoint.UPDATE, request("/coupons/" + owned.peekLast())
+                    .header("Content-Type", "application/json")
+                    .PUT(HttpRequest.BodyPublishers.ofByteArray(couponJson(random))), 200);
+            default -> send(Endpoint.DELETE, request("/coupons/" + owned.pollFirst()).DELETE(), 204);
+        }
+    }
+
+    /**
+     * Sends {@code request} and returns the body, or {@code null} if it failed, was shed or returned
+     * anything but {@code expectedStatus}.
+     */
+    private String send(Endpoint endpoint, HttpRequest.Builder request, int expectedStatus) {
+        long start = System.nanoTime();
+        String body = null;
+        int status = 0;
+        try {
+            HttpResponse<String> response = http.send(request.build(), HttpResponse.BodyHandlers.ofString());
+            status = response.statusCode();
+            if (status == expectedStatus) {
+                body = response.body();
+            }
+        } catch (IOException e) {
+            // counted as an error below
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        long end = System.nanoTime();
+        if (start >= recordFrom && end <= deadline) {
+            if (status == SERVICE_UNAVAILABLE) {
+                shed.merge(endpoint, 1L, Long::sum);
+                return null;
+            }
+            latencies.get(endpoint).recordValue(Math.min((end - start) / 1_000, HIGHEST_TRACKABLE_MICROS));
+            if (body == null) {
+                errors.merge(endpoint, 1L, Long::sum);
+            }
+        }
+        return body;
+    }
+
+    private HttpRequest.Builder post(String path, byte[] json) {
+        return request(path)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(json));
+    }
+
+    private HttpRequest.Builder request(String path) {
+        return HttpRequest.newBuilder(base.resolve(path));
+    }
+
+    private byte[] randomCart(ThreadLocalRandom random) {
+        return carts.get(random.nextInt(carts.size()));
+    }
+
+    private static byte[] couponJson(ThreadLocalRandom random) {
+        return """
+                {"type":"CART_WISE","details":{"threshold":%d,"discount":%d}}""".formatted(
+                random.nextInt(5_000), 1 + random.nextInt(30)).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private long id(String body) {
+        try {
+            JsonNode node = objectMapper.readTree(body);
+            return node.get("id").asLong();
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Unexpected coupon response: " + body, e);
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.monkcommerce.coupons.loadtest;
+
+/**
+ * Relative weights of the operations each client issues.
+ */
+record LoadMix(int applicable, int apply, int crud) {
+
+    LoadMix {
+        if (applicable < 0 || apply < 0 || crud < 0 || applicable + apply + crud == 0) {
+            throw new IllegalArgumentException("Load mix weights must be non-negative and not all zero");
+        }
+    }
+
+    int total() {
+        return applicable + apply + crud;
+    }
+}
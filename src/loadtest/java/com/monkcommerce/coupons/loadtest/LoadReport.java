@@ -0,0 +1,101 @@
+package com.monkcommerce.coupons.loadtest;
+
+import org.HdrHistogram.Histogram;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Per-endpoint throughput and latency percentiles merged from every client, checked against the
+ * configured budgets. Shed requests are reported next to errors but fail nothing: turning excess
+ * load away is what admission control is for.
+ */
+final class LoadReport {
+
+    private final Map<Endpoint, Histogram> latencies = new EnumMap<>(Endpoint.class);
+    private final Map<Endpoint, Long> errors = new EnumMap<>(Endpoint.class);
+    private final Map<Endpoint, Long> shed = new EnumMap<>(Endpoint.class);
+    private final Duration measured;
+
+    LoadReport(List<LoadClient> clients, Duration measured) {
+        this.measured = measured;
+        for (Endpoint endpoint : Endpoint.values()) {
+            Histogram merged = new Histogram(3);
+            long failed = 0;
+            long turnedAway = 0;
+            for (LoadClient client : clients) {
+                merged.add(client.latencies().get(endpoint));
+                failed += client.errors().get(endpoint);
+                turnedAway += client.shed().get(endpoint);
+            }
+            latencies.put(endpoint, merged);
+            errors.put(endpoint, failed);
+            shed.put(endpoint, turnedAway);
+        }
+    }
+
+    String format() {
+        StringBuilder report = new StringBuilder()
+                .append("%-26s %9s %7s %9s %10s %9s %9s %9s %9s%n".formatted(
+                        "endpoint", "requests", "errors", "shed", "req/s", "p50 ms", "p99 ms", "p99.9 ms", "max ms"));
+        for (Endpoint endpoint : Endpoint.values()) {
+            Histogram histogram = latencies.get(endpoint);
+            report.append("%-26s %9d %7d %9d %10.1f %9.2f %9.2f %9.2f %9.2f%n".formatted(
+                    endpoint.label(), histogram.getTotalCount(), errors.get(endpoint), shed.get(endpoint),
+                    throughput(endpoint), millis(histogram.getValueAtPercentile(50)),
+                    millis(histogram.getValueAtPercentile(99)), millis(histogram.getValueAtPercentile(99.9)),
+                    millis(histogram.getMaxValue())));
+        }
+        return report.append("%-26s %9d %7d %9d %10.1f%n".formatted(
+                "total", totalRequests(), errors.values().stream().mapToLong(Long::longValue).sum(),
+                shed.values().stream().mapToLong(Long::longValue).sum(), totalRequests() / seconds())).toString();
+    }
+
+    /**
+     * Every budget the run exceeded; empty if it passed. Endpoints with no recorded requests are not
+     * gated, and throughput only counts requests that were served.
+     */
+    List<String> violations(Function<Endpoint, Duration> p99Budget, double minThroughput) {
+        List<String> violations = new ArrayList<>();
+        for (Endpoint endpoint : Endpoint.values()) {
+            Histogram histogram = latencies.get(endpoint);
+            if (histogram.getTotalCount() == 0) {
+                continue;
+            }
+            if (errors.get(endpoint) > 0) {
+                violations.add("%s: %d failed requests".formatted(endpoint.label(), errors.get(endpoint)));
+            }
+            Duration budget = p99Budget.apply(endpoint);
+            long p99Micros = histogram.getValueAtPercentile(99);
+            if (p99Micros > budget.toNanos() / 1_000) {
+                violations.add("%s: p99 %.2f ms exceeds budget %d ms".formatted(
+                        endpoint.label(), millis(p99Micros), budget.toMillis()));
+            }
+        }
+        double throughput = totalRequests() / seconds();
+        if (throughput < minThroughput) {
+            violations.add("throughput %.1f req/s is below the minimum %.1f req/s".formatted(throughput, minThroughput));
+        }
+        return violations;
+    }
+
+    private long totalRequests() {
+        return latencies.values().stream().mapToLong(Histogram::getTotalCount).sum();
+    }
+
+    private double throughput(Endpoint endpoint) {
+        return latencies.get(endpoint).getTotalCount() / seconds();
+    }
+
+    private double seconds() {
+        return measured.toNanos() / 1e9;
+    }
+
+    private static double millis(long micros) {
+        return micros / 1_000.0;
+    }
+}
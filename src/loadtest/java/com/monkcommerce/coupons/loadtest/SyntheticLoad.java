@@ -0,0 +1,61 @@
+package com.monkcommerce.coupons.loadtest;
+
+import com.monkcommerce.coupons.dto.Cart;
+import com.monkcommerce.coupons.dto.CartItem;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Deterministic catalog and cart generators for the load harness, drawing product ids from a shared
+ * range so that carts overlap product-wise and BxGy coupons.
+ */
+final class SyntheticLoad {
+
+    private SyntheticLoad() {
+    }
+
+    /**
+     * The catalog as NDJSON lines for {@code POST /coupons/import}.
+     */
+    static String catalogNdjson(int cartWise, int productWise, int bxGy, int productRange, long seed) {
+        Random random = new Random(seed);
+        StringBuilder ndjson = new StringBuilder();
+        for (int i = 0; i < cartWise; i++) {
+            ndjson.append("""
+                    {"type":"CART_WISE","details":{"threshold":%d,"discount":%d}}
+                    """.formatted(random.nextInt(5_000), 1 + random.nextInt(30)));
+        }
+        for (int i = 0; i < productWise; i++) {
+            ndjson.append("""
+                    {"type":"PRODUCT_WISE","details":{"product_id":%d,"discount":%d}}
+                    """.formatted(random.nextInt(productRange), 1 + random.nextInt(50)));
+        }
+        for (int i = 0; i < bxGy; i++) {
+            ndjson.append("""
+                    {"type":"BXGY","details":{"buy_products":[{"product_id":%d,"quantity":%d}],\
+                    "get_products":[{"product_id":%d,"quantity":1}],"repetition_limit":%d}}
+                    """.formatted(random.nextInt(productRange), 1 + random.nextInt(3),
+                    random.nextInt(productRange), 1 + random.nextInt(3)));
+        }
+        return ndjson.toString();
+    }
+
+    static List<Cart> carts(int count, int lines, int productRange, long seed) {
+        Random random = new Random(seed);
+        List<Cart> carts = new ArrayList<>(count);
+        for (int c = 0; c < count; c++) {
+            List<CartItem> items = new ArrayList<>(lines);
+            for (int i = 0; i < lines; i++) {
+                items.add(CartItem.builder()
+                        .productId((long) random.nextInt(productRange))
+                        .quantity(1 + random.nextInt(5))
+                        .price(1 + random.nextInt(20_000) / 100.0)
+                        .build());
+            }
+            carts.add(Cart.builder().items(items).build());
+        }
+        return carts;
+    }
+}
@@ -0,0 +1,104 @@
+package com.monkcommerce.coupons.admission;
+
+import com.monkcommerce.coupons.metrics.CouponMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * Admission control for the evaluation endpoints: {@code POST /applicable-coupons},
+ * {@code /applicable-coupons/best} and {@code /apply-coupon/{id}} run through one
+ * {@link ConcurrencyLimiter}, and requests it turns away get {@code 503} with {@code Retry-After}
+ * before their body is read. The streaming batch endpoint holds a connection for as long as its
+ * input lasts, so it is left out rather than let one upload pin a slot and skew the latency the
+ * adaptive limit follows.
+ */
+@Component
+@RequiredArgsConstructor
+public class AdmissionControlFilter extends OncePerRequestFilter {
+
+    private final CouponMetrics metrics;
+
+    @Value("${coupons.admission.enabled:true}")
+    private boolean enabled;
+
+    @Value("${coupons.admission.limit:64}")
+    private int limit;
+
+    @Value("${coupons.admission.queue-size:32}")
+    private int queueSize;
+
+    @Value("${coupons.admission.queue-timeout:50ms}")
+    private Duration queueTimeout;
+
+    @Value("${coupons.admission.adaptive:false}")
+    private boolean adaptive;
+
+    @Value("${coupons.admission.min-limit:8}")
+    private int minLimit;
+
+    @Value("${coupons.admission.max-limit:256}")
+    private int maxLimit;
+
+    @Value("${coupons.admission.retry-after:1s}")
+    private Duration retryAfter;
+
+    private ConcurrencyLimiter limiter;
+
+    @PostConstruct
+    void start() {
+        if (enabled) {
+            limiter = new ConcurrencyLimiter(limit, queueSize, queueTimeout, adaptive, minLimit, maxLimit);
+            metrics.monitorAdmission(limiter);
+        }
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        if (limiter == null || !"POST".equals(request.getMethod())) {
+            return true;
+        }
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        return !(path.equals("/applicable-coupons")
+                || path.equals("/applicable-coupons/best")
+                || path.startsWith("/apply-coupon/"));
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        ConcurrencyLimiter.Admission admission;
+        try {
+            admission = limiter.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            admission = ConcurrencyLimiter.Admission.TIMED_OUT;
+        }
+        if (admission != ConcurrencyLimiter.Admission.ADMITTED) {
+            metrics.recordShed(admission == ConcurrencyLimiter.Admission.QUEUE_FULL);
+            response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1L, retryAfter.toSeconds())));
+            response.sendError(HttpStatus.SERVICE_UNAVAILABLE.value(), "Too many evaluations in flight");
+            return;
+        }
+
+        long start = System.nanoTime();
+        boolean completed = false;
+        try {
+            chain.doFilter(request, response);
+            completed = true;
+        } finally {
+            limiter.release(completed ? System.nanoTime() - start : ConcurrencyLimiter.NO_SAMPLE);
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package com.monkcommerce.coupons.admission;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounds how many evaluations run at once. Requests over the limit wait in a short queue for a
+ * slot and are turned away when the queue is full or their wait runs out, so overload shows up as
+ * fast rejections instead of every request getting slower.
+ *
+ * <p>In adaptive mode the limit follows latency, gradient style. The average latency of each
+ * window of samples is compared with a slow moving average across windows: while they agree the
+ * limit grows by about its square root, and when recent latency climbs above the long-term
+ * average, requests are queueing somewhere and the limit shrinks in proportion, by at most half.
+ * Each step is smoothed, and the limit only grows while at least half of it is in use.
+ *
+ * <p>Slots are taken and returned with a CAS on the in-flight count, so a request admitted without
+ * waiting never takes the lock. The lock only guards the queue, and the limit update at the end of
+ * each sample window. A request arriving as a slot frees up may take it ahead of a queued one.
+ */
+public final class ConcurrencyLimiter {
+
+    /**
+     * Passed to {@link #release(long)} for requests whose latency should not steer the limit.
+     */
+    public static final long NO_SAMPLE = -1L;
+
+    static final int WINDOW_SAMPLES = 32;
+    private static final double LONG_WINDOWS = 20;
+    private static final double TOLERANCE = 1.5;
+    private static final double SMOOTHING = 0.2;
+
+    public enum Admission {
+        ADMITTED, QUEUE_FULL, TIMED_OUT
+    }
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder windowRttNanos = new LongAdder();
+    private final AtomicInteger windowSamples = new AtomicInteger();
+    private final AtomicInteger windowMaxInFlight = new AtomicInteger();
+    private final int queueSize;
+    private final long queueTimeoutNanos;
+    private final boolean adaptive;
+    private final int minLimit;
+    private final int maxLimit;
+
+    // Written under the lock; volatile so admission and gauges can read them without it.
+    private volatile int limit;
+    private volatile int queued;
+
+    private double estimatedLimit;
+    private double longRttNanos;
+
+    public ConcurrencyLimiter(int limit, int queueSize, Duration queueTimeout,
+                              boolean adaptive, int minLimit, int maxLimit) {
+        if (minLimit < 1 || maxLimit < minLimit || limit < minLimit || limit > maxLimit) {
+            throw new IllegalArgumentException("Admission limit " + limit + " must lie within "
+                    + minLimit + ".." + maxLimit + " and the minimum must be at least 1");
+        }
+        if (queueSize < 0) {
+            throw new IllegalArgumentException("Admission queue size must not be negative");
+        }
+        this.limit = limit;
+        this.estimatedLimit = limit;
+        this.queueSize = queueSize;
+        this.queueTimeoutNanos = queueTimeout.toNanos();
+        this.adaptive = adaptive;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+    }
+
+    /**
+     * Takes a slot, waiting in the queue for one if all are taken. Every {@link Admission#ADMITTED}
+     * must be followed by one {@link #release(long)}.
+     */
+    public Admission acquire() throws InterruptedException {
+        if (tryAdmit()) {
+            return Admission.ADMITTED;
+        }
+        lock.lock();
+        try {
+            if (queued >= queueSize) {
+                return tryAdmit() ? Admission.ADMITTED : Admission.QUEUE_FULL;
+            }
+            // Counted as queued before checking again, so a release either frees a slot this check
+            // sees or finds a waiter to signal.
+            queued++;
+            try {
+                long remaining = queueTimeoutNanos;
+                while (!tryAdmit()) {
+                    if (remaining <= 0) {
+                        passSignal();
+                        return Admission.TIMED_OUT;
+                    }
+                    remaining = available.awaitNanos(remaining);
+                }
+                return Admission.ADMITTED;
+            } catch (InterruptedException e) {
+                passSignal();
+                throw e;
+            } finally {
+                queued--;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Frees a slot taken by {@link #acquire()}, recording how long it was held unless
+     * {@code rttNanos} is {@link #NO_SAMPLE}.
+     */
+    public void release(long rttNanos) {
+        inFlight.decrementAndGet();
+        if (adaptive && rttNanos != NO_SAMPLE) {
+            sample(Math.max(1L, rttNanos));
+        }
+        if (queued > 0) {
+            lock.lock();
+            try {
+                available.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    public int limit() {
+        return limit;
+    }
+
+    public int inFlight() {
+        return inFlight.get();
+    }
+
+    public int queued() {
+        return queued;
+    }
+
+    private boolean tryAdmit() {
+        int current;
+        do {
+            current = inFlight.get();
+            if (current >= limit) {
+                return false;
+            }
+        } while (!inFlight.compareAndSet(current, current + 1));
+        if (adaptive && current + 1 > windowMaxInFlight.get()) {
+            windowMaxInFlight.accumulateAndGet(current + 1, Math::max);
+        }
+        return true;
+    }
+
+    /**
+     * A waiter leaving without a slot may have consumed the signal for a free one; hand it on.
+     */
+    private void passSignal() {
+        if (inFlight.get() < limit) {
+            available.signal();
+        }
+    }
+
+    /**
+     * Adds a sample to the current window; whoever completes the window closes it under the lock.
+     * Samples recorded while a window closes may land in either window.
+     */
+    private void sample(long rttNanos) {
+        windowRttNanos.add(rttNanos);
+        if (windowSamples.incrementAndGet() < WINDOW_SAMPLES) {
+            return;
+        }
+        lock.lock();
+        try {
+            int samples = windowSamples.get();
+            if (samples >= WINDOW_SAMPLES) {
+                windowSamples.addAndGet(-samples);
+                closeWindow((double) windowRttNanos.sumThenReset() / samples);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void closeWindow(double shortRttNanos) {
+        boolean underused = windowMaxInFlight.getAndSet(inFlight.get()) < estimatedLimit / 2;
+
+        longRttNanos = longRttNanos == 0
+                ? shortRttNanos
+                : longRttNanos + (shortRttNanos - longRttNanos) / LONG_WINDOWS;
+        if (longRttNanos > 2 * shortRttNanos) {
+            // Latency has dropped well below the long-term average; let the average catch up.
+            longRttNanos *= 0.95;
+        }
+        if (underused) {
+            return;
+        }
+
+        double gradient = Math.clamp(TOLERANCE * longRttNanos / shortRttNanos, 0.5, 1.0);
+        double target = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+        estimatedLimit = Math.clamp(estimatedLimit * (1 - SMOOTHING) + target * SMOOTHING, minLimit, maxLimit);
+        int previous = limit;
+        limit = (int) estimatedLimit;
+        if (limit > previous) {
+            available.signalAll();
+        }
+    }
+}
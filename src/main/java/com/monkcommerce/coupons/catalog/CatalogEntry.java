@@ -0,0 +1,63 @@
+package com.monkcommerce.coupons.catalog;
+
+import com.monkcommerce.coupons.model.Coupon;
+import com.monkcommerce.coupons.model.CouponType;
+import com.monkcommerce.coupons.rule.CouponRule;
+
+import java.time.Instant;
+
+/**
+ * A compiled coupon, its validity window in epoch milliseconds (active from {@code validFrom}
+ * inclusive until {@code validUntil} exclusive) and its redemption limits.
+ */
+public record CatalogEntry(CouponRule rule, String details, long validFrom, long validUntil,
+                           long maxRedemptions, long maxRedemptionsPerCustomer) {
+
+    public static final long UNBOUNDED_FROM = Long.MIN_VALUE;
+    public static final long UNBOUNDED_UNTIL = Long.MAX_VALUE;
+    public static final long NO_LIMIT = Long.MAX_VALUE;
+
+    public CatalogEntry(CouponRule rule, String details) {
+        this(rule, details, UNBOUNDED_FROM, UNBOUNDED_UNTIL);
+    }
+
+    public CatalogEntry(CouponRule rule, String details, long validFrom, long validUntil) {
+        this(rule, details, validFrom, validUntil, NO_LIMIT, NO_LIMIT);
+    }
+
+    public static CatalogEntry of(CouponRule rule, Coupon coupon) {
+        return new CatalogEntry(rule, coupon.getDetails(),
+                coupon.getValidFrom() != null ? coupon.getValidFrom().toEpochMilli() : UNBOUNDED_FROM,
+                coupon.getValidUntil() != null ? coupon.getValidUntil().toEpochMilli() : UNBOUNDED_UNTIL,
+                coupon.getMaxRedemptions() != null ? coupon.getMaxRedemptions() : NO_LIMIT,
+                coupon.getMaxRedemptionsPerCustomer() != null ? coupon.getMaxRedemptionsPerCustomer() : NO_LIMIT);
+    }
+
+    public long id() {
+        return rule.couponId();
+    }
+
+    public CouponType type() {
+        return rule.type();
+    }
+
+    public boolean isActiveAt(long epochMillis) {
+        return validFrom <= epochMillis && epochMillis < validUntil;
+    }
+
+    public Instant validFromInstant() {
+        return validFrom != UNBOUNDED_FROM ? Instant.ofEpochMilli(validFrom) : null;
+    }
+
+    public Instant validUntilInstant() {
+        return validUntil != UNBOUNDED_UNTIL ? Instant.ofEpochMilli(validUntil) : null;
+    }
+
+    public Long maxRedemptionsOrNull() {
+        return maxRedemptions != NO_LIMIT ? maxRedemptions : null;
+    }
+
+    public Long maxRedemptionsPerCustomerOrNull() {
+        return maxRedemptionsPerCustomer != NO_LIMIT ? maxRedemptionsPerCustomer : null;
+    }
+}
@@ -0,0 +1,241 @@
+package com.monkcommerce.coupons.catalog;
+
+import com.monkcommerce.coupons.model.CouponType;
+import com.monkcommerce.coupons.rule.CouponRule;
+import com.monkcommerce.coupons.rule.ProductSetRule;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * One immutable generation of the coupon catalog. Every field is fixed at construction, so a
+ * snapshot can be shared freely between request threads without locking.
+ *
+ * <p>The snapshot holds every coupon, but its {@link CouponIndex} only covers those active at
+ * {@link #activeAt()}. {@link #nextBoundary()} is the earliest later instant at which a coupon
+ * starts or stops being active; until then the index stays exact. The future boundaries are kept
+ * sorted, so moving the index forward in time only touches the coupons whose boundaries it passes.
+ */
+public final class CatalogSnapshot {
+
+    private static final CatalogSnapshot EMPTY = new CatalogSnapshot(0L, new TreeMap<>(), 0L);
+
+    private final long version;
+    private final NavigableMap<Long, CatalogEntry> entries;
+    private final long activeAt;
+    private final long nextBoundary;
+    private final int activeCount;
+    private final long productSetBytes;
+    private final CouponIndex index;
+    private final Boundaries boundaries;
+
+    /**
+     * Validity boundaries later than the instant they were collected at, ordered by time: at
+     * {@code times[i]} coupon {@code couponIds[i]} starts or stops being active.
+     */
+    private record Boundaries(long[] times, long[] couponIds) {
+
+        /**
+         * Position of the first boundary after {@code instant}.
+         */
+        int after(long instant) {
+            int low = 0;
+            int high = times.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (times[mid] <= instant) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        long nextAfter(long instant) {
+            int next = after(instant);
+            return next < times.length ? times[next] : Long.MAX_VALUE;
+        }
+    }
+
+    private CatalogSnapshot(long version, TreeMap<Long, CatalogEntry> entries, long activeAt) {
+        this.version = version;
+        this.entries = Collections.unmodifiableNavigableMap(entries);
+        this.activeAt = activeAt;
+
+        List<CouponRule> active = new ArrayList<>(entries.size());
+        List<long[]> pending = new ArrayList<>();
+        long setBytes = 0;
+        for (CatalogEntry entry : entries.values()) {
+            if (entry.rule() instanceof ProductSetRule productSet) {
+                setBytes += productSet.products().memoryBytes();
+            }
+            if (entry.isActiveAt(activeAt)) {
+                active.add(entry.rule());
+            }
+            if (entry.validFrom() > activeAt) {
+                pending.add(new long[] {entry.validFrom(), entry.id()});
+            }
+            if (entry.validUntil() > activeAt && entry.validUntil() != CatalogEntry.UNBOUNDED_UNTIL) {
+                pending.add(new long[] {entry.validUntil(), entry.id()});
+            }
+        }
+        pending.sort(Comparator.comparingLong(boundary -> boundary[0]));
+        long[] times = new long[pending.size()];
+        long[] couponIds = new long[pending.size()];
+        for (int i = 0; i < times.length; i++) {
+            times[i] = pending.get(i)[0];
+            couponIds[i] = pending.get(i)[1];
+        }
+        this.boundaries = new Boundaries(times, couponIds);
+        this.nextBoundary = boundaries.nextAfter(activeAt);
+        this.activeCount = active.size();
+        this.productSetBytes = setBytes;
+        this.index = CouponIndex.of(active);
+    }
+
+    private CatalogSnapshot(long version, CatalogSnapshot previous, long activeAt, CouponIndex index, int activeCount) {
+        this.version = version;
+        this.entries = previous.entries;
+        this.activeAt = activeAt;
+        this.boundaries = previous.boundaries;
+        this.nextBoundary = boundaries.nextAfter(activeAt);
+        this.activeCount = activeCount;
+        this.productSetBytes = previous.productSetBytes;
+        this.index = index;
+    }
+
+    public static CatalogSnapshot empty() {
+        return EMPTY;
+    }
+
+    public static CatalogSnapshot of(long version, Collection<CatalogEntry> entries, long activeAt) {
+        TreeMap<Long, CatalogEntry> byId = new TreeMap<>();
+        for (CatalogEntry entry : entries) {
+            byId.put(entry.id(), entry);
+        }
+        return new CatalogSnapshot(version, byId, activeAt);
+    }
+
+    public CatalogSnapshot withUpserted(long version, Collection<CatalogEntry> upserted, long activeAt) {
+        return withChanges(version, upserted, List.of(), activeAt);
+    }
+
+    public CatalogSnapshot withRemoved(long version, long couponId, long activeAt) {
+        return withChanges(version, List.of(), List.of(couponId), activeAt);
+    }
+
+    /**
+     * A new generation with {@code upserted} put and {@code removed} dropped. An upsert older than
+     * the entry already held, as when two commits publish out of order, is ignored.
+     */
+    public CatalogSnapshot withChanges(long version, Collection<CatalogEntry> upserted, Collection<Long> removed,
+            long activeAt) {
+        TreeMap<Long, CatalogEntry> byId = new TreeMap<>(entries);
+        for (CatalogEntry entry : upserted) {
+            byId.merge(entry.id(), entry,
+                    (held, update) -> held.rule().version() > update.rule().version() ? held : update);
+        }
+        for (Long couponId : removed) {
+            byId.remove(couponId);
+        }
+        return new CatalogSnapshot(version, byId, activeAt);
+    }
+
+    /**
+     * The same coupons with the index moved forward to the coupons active at {@code activeAt}.
+     * Only coupons with a boundary between the two instants can have changed, so those alone are
+     * added to or removed from the index; the entries are shared with this generation.
+     */
+    public CatalogSnapshot withActiveAt(long version, long activeAt) {
+        if (activeAt < this.activeAt) {
+            throw new IllegalArgumentException("Validity only moves forward: " + activeAt + " < " + this.activeAt);
+        }
+        Set<Long> crossing = new HashSet<>();
+        for (int i = boundaries.after(this.activeAt), end = boundaries.after(activeAt); i < end; i++) {
+            crossing.add(boundaries.couponIds()[i]);
+        }
+        List<CouponRule> added = new ArrayList<>();
+        List<CouponRule> removed = new ArrayList<>();
+        for (Long couponId : crossing) {
+            CatalogEntry entry = entries.get(couponId);
+            boolean wasActive = entry.isActiveAt(this.activeAt);
+            if (wasActive != entry.isActiveAt(activeAt)) {
+                (wasActive ? removed : added).add(entry.rule());
+            }
+        }
+        return new CatalogSnapshot(version, this, activeAt, index.withChanges(added, removed),
+                activeCount + added.size() - removed.size());
+    }
+
+    public long version() {
+        return version;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public CatalogEntry get(long couponId) {
+        return entries.get(couponId);
+    }
+
+    /**
+     * Whether {@code couponId} is in the index, i.e. exists and is active at {@link #activeAt()}.
+     */
+    public boolean isActive(long couponId) {
+        CatalogEntry entry = entries.get(couponId);
+        return entry != null && entry.isActiveAt(activeAt);
+    }
+
+    public long activeAt() {
+        return activeAt;
+    }
+
+    public long nextBoundary() {
+        return nextBoundary;
+    }
+
+    public int activeCount() {
+        return activeCount;
+    }
+
+    /**
+     * Heap held by the product sets of every PRODUCT_SET coupon in the snapshot.
+     */
+    public long productSetBytes() {
+        return productSetBytes;
+    }
+
+    public Collection<CatalogEntry> entries() {
+        return entries.values();
+    }
+
+    /**
+     * Returns up to {@code limit} entries with an id greater than {@code after}, in id order,
+     * optionally restricted to one coupon type.
+     */
+    public List<CatalogEntry> page(long after, int limit, CouponType type) {
+        List<CatalogEntry> page = new ArrayList<>(Math.min(limit, entries.size()));
+        for (CatalogEntry entry : entries.tailMap(after, false).values()) {
+            if (page.size() == limit) {
+                break;
+            }
+            if (type == null || entry.type() == type) {
+                page.add(entry);
+            }
+        }
+        return page;
+    }
+
+    public CouponIndex index() {
+        return index;
+    }
+}
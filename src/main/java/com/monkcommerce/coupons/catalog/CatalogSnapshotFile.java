@@ -0,0 +1,402 @@
+package com.monkcommerce.coupons.catalog;
+
+import com.monkcommerce.coupons.rule.BxGyRule;
+import com.monkcommerce.coupons.rule.CartWiseRule;
+import com.monkcommerce.coupons.rule.ProductSet;
+import com.monkcommerce.coupons.rule.ProductSetRule;
+import com.monkcommerce.coupons.rule.ProductWiseRule;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * Compact binary form of a compiled {@link CatalogSnapshot}, read back through a memory mapping
+ * without touching the database or parsing any JSON.
+ *
+ * <p>Layout: a fixed header (magic, format version, catalog version, entry count, body length,
+ * checksum) followed by one columnar section per coupon type. Each section stores its
+ * ids, versions, validity windows, redemption limits and rule fields as primitive arrays, then the raw {@code details}
+ * of its entries.
+ */
+public final class CatalogSnapshotFile {
+
+    private static final int MAGIC = 0x43504e53;
+    private static final int FORMAT_VERSION = 4;
+    private static final int HEADER_BYTES = 4 + 4 + 8 + 4 + 8 + 8;
+
+    private CatalogSnapshotFile() {
+    }
+
+    /**
+     * Writes {@code snapshot} to {@code file}, replacing it atomically.
+     */
+    public static void write(CatalogSnapshot snapshot, Path file) throws IOException {
+        List<CartWiseRule> cartWise = new ArrayList<>();
+        List<ProductWiseRule> productWise = new ArrayList<>();
+        List<BxGyRule> bxGy = new ArrayList<>();
+        List<ProductSetRule> productSet = new ArrayList<>();
+        List<String> cartWiseDetails = new ArrayList<>();
+        List<String> productWiseDetails = new ArrayList<>();
+        List<String> bxGyDetails = new ArrayList<>();
+        List<String> productSetDetails = new ArrayList<>();
+        List<CatalogEntry> cartWiseEntries = new ArrayList<>();
+        List<CatalogEntry> productWiseEntries = new ArrayList<>();
+        List<CatalogEntry> bxGyEntries = new ArrayList<>();
+        List<CatalogEntry> productSetEntries = new ArrayList<>();
+        for (CatalogEntry entry : snapshot.entries()) {
+            switch (entry.rule()) {
+                case CartWiseRule rule -> {
+                    cartWise.add(rule);
+                    cartWiseDetails.add(entry.details());
+                    cartWiseEntries.add(entry);
+                }
+                case ProductWiseRule rule -> {
+                    productWise.add(rule);
+                    productWiseDetails.add(entry.details());
+                    productWiseEntries.add(entry);
+                }
+                case BxGyRule rule -> {
+                    bxGy.add(rule);
+                    bxGyDetails.add(entry.details());
+                    bxGyEntries.add(entry);
+                }
+                case ProductSetRule rule -> {
+                    productSet.add(rule);
+                    productSetDetails.add(entry.details());
+                    productSetEntries.add(entry);
+                }
+            }
+        }
+
+        ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream();
+        DataOutputStream body = new DataOutputStream(bodyBytes);
+
+        body.writeInt(cartWise.size());
+        for (CartWiseRule rule : cartWise) {
+            body.writeLong(rule.couponId());
+        }
+        for (CartWiseRule rule : cartWise) {
+            body.writeLong(rule.version());
+        }
+        writeWindowAndLimits(body, cartWiseEntries);
+        for (CartWiseRule rule : cartWise) {
+            body.writeDouble(rule.threshold());
+        }
+        for (CartWiseRule rule : cartWise) {
+            body.writeDouble(rule.percent());
+        }
+        writeDetails(body, cartWiseDetails);
+
+        body.writeInt(productWise.size());
+        for (ProductWiseRule rule : productWise) {
+            body.writeLong(rule.couponId());
+        }
+        for (ProductWiseRule rule : productWise) {
+            body.writeLong(rule.version());
+        }
+        writeWindowAndLimits(body, productWiseEntries);
+        for (ProductWiseRule rule : productWise) {
+            body.writeLong(rule.productId());
+        }
+        for (ProductWiseRule rule : productWise) {
+            body.writeDouble(rule.percent());
+        }
+        writeDetails(body, productWiseDetails);
+
+        body.writeInt(bxGy.size());
+        for (BxGyRule rule : bxGy) {
+            body.writeLong(rule.couponId());
+        }
+        for (BxGyRule rule : bxGy) {
+            body.writeLong(rule.version());
+        }
+        writeWindowAndLimits(body, bxGyEntries);
+        for (BxGyRule rule : bxGy) {
+            body.writeInt(rule.repetitionLimit());
+            body.writeInt(rule.buyQuantityNeeded());
+            body.writeInt(rule.getQuantityPerDeal());
+            body.writeInt(rule.buyProductIds().length);
+            body.writeInt(rule.getProductIds().length);
+        }
+        for (BxGyRule rule : bxGy) {
+            for (int i = 0; i < rule.buyProductIds().length; i++) {
+                body.writeLong(rule.buyProductIds()[i]);
+                body.writeInt(rule.buyQuantities()[i]);
+            }
+            for (int i = 0; i < rule.getProductIds().length; i++) {
+                body.writeLong(rule.getProductIds()[i]);
+                body.writeInt(rule.getQuantities()[i]);
+            }
+        }
+        writeDetails(body, bxGyDetails);
+
+        body.writeInt(productSet.size());
+        for (ProductSetRule rule : productSet) {
+            body.writeLong(rule.couponId());
+        }
+        for (ProductSetRule rule : productSet) {
+            body.writeLong(rule.version());
+        }
+        writeWindowAndLimits(body, productSetEntries);
+        for (ProductSetRule rule : productSet) {
+            body.writeDouble(rule.percent());
+        }
+        for (ProductSetRule rule : productSet) {
+            body.writeInt(rule.products().size());
+        }
+        for (ProductSetRule rule : productSet) {
+            for (long productId : rule.products().ids()) {
+                body.writeLong(productId);
+            }
+        }
+        writeDetails(body, productSetDetails);
+        body.flush();
+
+        byte[] bytes = bodyBytes.toByteArray();
+        long checksum = checksum(snapshot.version(), snapshot.size(), ByteBuffer.wrap(bytes));
+
+        Path directory = file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeLong(snapshot.version());
+                out.writeInt(snapshot.size());
+                out.writeLong(bytes.length);
+                out.writeLong(checksum);
+                out.write(bytes);
+                out.flush();
+                channel.force(true);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Maps {@code file} and decodes it into a snapshot indexing the coupons active at {@code activeAt}.
+     *
+     * @throws IOException if the file can't be read, was written by another format version, or
+     *                     fails its checksum
+     */
+    public static CatalogSnapshot read(Path file, long activeAt) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES) {
+                throw new IOException("Catalog snapshot file is truncated: " + file);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not a catalog snapshot file: " + file);
+            }
+            int formatVersion = buffer.getInt();
+            if (formatVersion != FORMAT_VERSION) {
+                throw new IOException("Unsupported catalog snapshot format " + formatVersion + ": " + file);
+            }
+            long version = buffer.getLong();
+            int count = buffer.getInt();
+            long bodyLength = buffer.getLong();
+            long expectedChecksum = buffer.getLong();
+            if (bodyLength != channel.size() - HEADER_BYTES) {
+                throw new IOException("Catalog snapshot file is truncated: " + file);
+            }
+
+            if (checksum(version, count, buffer.slice(HEADER_BYTES, (int) bodyLength)) != expectedChecksum) {
+                throw new IOException("Catalog snapshot checksum mismatch: " + file);
+            }
+
+            List<CatalogEntry> entries = new ArrayList<>(count);
+            readCartWise(buffer, entries);
+            readProductWise(buffer, entries);
+            readBxGy(buffer, entries);
+            readProductSet(buffer, entries);
+            if (entries.size() != count) {
+                throw new IOException("Catalog snapshot holds " + entries.size() + " coupons, header says " + count);
+            }
+            return CatalogSnapshot.of(version, entries, activeAt);
+        } catch (RuntimeException e) {
+            throw new IOException("Corrupt catalog snapshot file: " + file, e);
+        }
+    }
+
+    private static void readCartWise(ByteBuffer buffer, List<CatalogEntry> entries) {
+        int n = buffer.getInt();
+        long[] ids = longs(buffer, n);
+        long[] versions = longs(buffer, n);
+        long[] validFrom = longs(buffer, n);
+        long[] validUntil = longs(buffer, n);
+        long[] maxRedemptions = longs(buffer, n);
+        long[] maxPerCustomer = longs(buffer, n);
+        double[] thresholds = doubles(buffer, n);
+        double[] percents = doubles(buffer, n);
+        String[] details = details(buffer, n);
+        for (int i = 0; i < n; i++) {
+            entries.add(new CatalogEntry(new CartWiseRule(ids[i], versions[i], thresholds[i], percents[i]), details[i],
+                    validFrom[i], validUntil[i], maxRedemptions[i], maxPerCustomer[i]));
+        }
+    }
+
+    private static void readProductWise(ByteBuffer buffer, List<CatalogEntry> entries) {
+        int n = buffer.getInt();
+        long[] ids = longs(buffer, n);
+        long[] versions = longs(buffer, n);
+        long[] validFrom = longs(buffer, n);
+        long[] validUntil = longs(buffer, n);
+        long[] maxRedemptions = longs(buffer, n);
+        long[] maxPerCustomer = longs(buffer, n);
+        long[] productIds = longs(buffer, n);
+        double[] percents = doubles(buffer, n);
+        String[] details = details(buffer, n);
+        for (int i = 0; i < n; i++) {
+            entries.add(new CatalogEntry(
+                    new ProductWiseRule(ids[i], versions[i], productIds[i], percents[i]), details[i],
+                    validFrom[i], validUntil[i], maxRedemptions[i], maxPerCustomer[i]));
+        }
+    }
+
+    private static void readBxGy(ByteBuffer buffer, List<CatalogEntry> entries) {
+        int n = buffer.getInt();
+        long[] ids = longs(buffer, n);
+        long[] versions = longs(buffer, n);
+        long[] validFrom = longs(buffer, n);
+        long[] validUntil = longs(buffer, n);
+        long[] maxRedemptions = longs(buffer, n);
+        long[] maxPerCustomer = longs(buffer, n);
+        int[] shape = new int[n * 5];
+        buffer.asIntBuffer().get(shape);
+        buffer.position(buffer.position() + shape.length * Integer.BYTES);
+
+        BxGyRule[] rules = new BxGyRule[n];
+        for (int i = 0; i < n; i++) {
+            int buyCount = shape[i * 5 + 3];
+            int getCount = shape[i * 5 + 4];
+            long[] buyProductIds = new long[buyCount];
+            int[] buyQuantities = new int[buyCount];
+            long[] getProductIds = new long[getCount];
+            int[] getQuantities = new int[getCount];
+            for (int j = 0; j < buyCount; j++) {
+                buyProductIds[j] = buffer.getLong();
+                buyQuantities[j] = buffer.getInt();
+            }
+            for (int j = 0; j < getCount; j++) {
+                getProductIds[j] = buffer.getLong();
+                getQuantities[j] = buffer.getInt();
+            }
+            rules[i] = new BxGyRule(ids[i], versions[i], buyProductIds, buyQuantities, getProductIds, getQuantities,
+                    shape[i * 5], shape[i * 5 + 1], shape[i * 5 + 2]);
+        }
+
+        String[] details = details(buffer, n);
+        for (int i = 0; i < n; i++) {
+            entries.add(new CatalogEntry(rules[i], details[i], validFrom[i], validUntil[i],
+                    maxRedemptions[i], maxPerCustomer[i]));
+        }
+    }
+
+    private static void readProductSet(ByteBuffer buffer, List<CatalogEntry> entries) {
+        int n = buffer.getInt();
+        long[] ids = longs(buffer, n);
+        long[] versions = longs(buffer, n);
+        long[] validFrom = longs(buffer, n);
+        long[] validUntil = longs(buffer, n);
+        long[] maxRedemptions = longs(buffer, n);
+        long[] maxPerCustomer = longs(buffer, n);
+        double[] percents = doubles(buffer, n);
+        int[] sizes = new int[n];
+        buffer.asIntBuffer().get(sizes);
+        buffer.position(buffer.position() + n * Integer.BYTES);
+
+        ProductSetRule[] rules = new ProductSetRule[n];
+        for (int i = 0; i < n; i++) {
+            rules[i] = new ProductSetRule(ids[i], versions[i], ProductSet.of(longs(buffer, sizes[i])), percents[i]);
+        }
+
+        String[] details = details(buffer, n);
+        for (int i = 0; i < n; i++) {
+            entries.add(new CatalogEntry(rules[i], details[i], validFrom[i], validUntil[i],
+                    maxRedemptions[i], maxPerCustomer[i]));
+        }
+    }
+
+    /**
+     * CRC32C over the catalog version, entry count and body, so a damaged header is caught too.
+     */
+    private static long checksum(long version, int count, ByteBuffer body) {
+        CRC32C checksum = new CRC32C();
+        checksum.update(ByteBuffer.allocate(Long.BYTES + Integer.BYTES).putLong(version).putInt(count).flip());
+        checksum.update(body);
+        return checksum.getValue();
+    }
+
+    private static void writeWindowAndLimits(DataOutputStream body, List<CatalogEntry> entries) throws IOException {
+        for (CatalogEntry entry : entries) {
+            body.writeLong(entry.validFrom());
+        }
+        for (CatalogEntry entry : entries) {
+            body.writeLong(entry.validUntil());
+        }
+        for (CatalogEntry entry : entries) {
+            body.writeLong(entry.maxRedemptions());
+        }
+        for (CatalogEntry entry : entries) {
+            body.writeLong(entry.maxRedemptionsPerCustomer());
+        }
+    }
+
+    private static void writeDetails(DataOutputStream body, List<String> details) throws IOException {
+        List<byte[]> encoded = new ArrayList<>(details.size());
+        for (String value : details) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            encoded.add(bytes);
+            body.writeInt(bytes.length);
+        }
+        for (byte[] bytes : encoded) {
+            body.write(bytes);
+        }
+    }
+
+    private static String[] details(ByteBuffer buffer, int n) {
+        int[] lengths = new int[n];
+        buffer.asIntBuffer().get(lengths);
+        buffer.position(buffer.position() + n * Integer.BYTES);
+
+        String[] details = new String[n];
+        for (int i = 0; i < n; i++) {
+            details[i] = StandardCharsets.UTF_8.decode(buffer.slice(buffer.position(), lengths[i])).toString();
+            buffer.position(buffer.position() + lengths[i]);
+        }
+        return details;
+    }
+
+    private static long[] longs(ByteBuffer buffer, int n) {
+        long[] values = new long[n];
+        buffer.asLongBuffer().get(values);
+        buffer.position(buffer.position() + n * Long.BYTES);
+        return values;
+    }
+
+    private static double[] doubles(ByteBuffer buffer, int n) {
+        double[] values = new double[n];
+        buffer.asDoubleBuffer().get(values);
+        buffer.position(buffer.position() + n * Double.BYTES);
+        return values;
+    }
+}
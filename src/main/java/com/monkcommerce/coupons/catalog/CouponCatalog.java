@@ -0,0 +1,438 @@
+package com.monkcommerce.coupons.catalog;
+
+import com.monkcommerce.coupons.metrics.CouponMetrics;
+import com.monkcommerce.coupons.model.Coupon;
+import com.monkcommerce.coupons.model.CouponChangeFeed;
+import com.monkcommerce.coupons.model.CouponType;
+import com.monkcommerce.coupons.repository.CouponChangeFeedRepository;
+import com.monkcommerce.coupons.repository.CouponRepository;
+import com.monkcommerce.coupons.rule.CartIndex;
+import com.monkcommerce.coupons.rule.CouponRule;
+import com.monkcommerce.coupons.rule.CouponRuleCache;
+import com.monkcommerce.coupons.rule.InvalidCouponDetailsException;
+import com.monkcommerce.coupons.rule.ProductSetRule;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes copy-on-write {@link CatalogSnapshot}s. Readers take the current snapshot with a single
+ * volatile read; writers are serialized and swap in a new generation once their transaction has
+ * committed.
+ *
+ * <p>When a validity boundary passes, a generation is published with only the coupons crossing
+ * it added to or removed from the index. A background thread checks for due boundaries every
+ * tick; readers also compare the clock with the snapshot's next boundary, so a request that beats
+ * the ticker to a boundary publishes that generation itself rather than seeing a stale index.
+ *
+ * <p>The catalog also tracks the version of the shared change feed it reflects, so that changes
+ * made by other instances can be applied as deltas on top of it.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class CouponCatalog {
+
+    private static final int RELOAD_PAGE_SIZE = 1000;
+
+    private final CouponRepository couponRepository;
+    private final CouponRuleCache ruleCache;
+    private final CouponMetrics metrics;
+    private final CouponChangeFeedRepository feedRepository;
+
+    @Value("${coupons.catalog.enabled:true}")
+    private boolean enabled;
+
+    @Value("${coupons.catalog.snapshot-file:}")
+    private String snapshotFile;
+
+    @Value("${coupons.validity.tick:1s}")
+    private Duration validityTick;
+
+    private Clock clock = Clock.systemUTC();
+    private ScheduledExecutorService ticker;
+    private volatile CatalogSnapshot snapshot = CatalogSnapshot.empty();
+    private volatile long feedVersion;
+
+    public CatalogSnapshot snapshot() {
+        CatalogSnapshot current = snapshot;
+        if (clock.millis() < current.nextBoundary()) {
+            return current;
+        }
+        return advanceValidity();
+    }
+
+    /**
+     * Publishes a generation indexing the coupons active now, if a validity boundary has passed
+     * since the current one was built.
+     */
+    synchronized CatalogSnapshot advanceValidity() {
+        long now = clock.millis();
+        if (now >= snapshot.nextBoundary()) {
+            snapshot = snapshot.withActiveAt(snapshot.version() + 1, now);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Whether reads are served from the in-memory snapshot. When disabled the service runs
+     * database-only and every read fetches just the rows it needs.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * The snapshot to explain a cart against: the current generation, or, in database-only mode,
+     * a throwaway snapshot over the rows the database prefilters for this cart. Evaluation in
+     * database-only mode uses {@link #findCandidates(CartIndex)} instead.
+     */
+    public CatalogSnapshot snapshotFor(CartIndex cart) {
+        if (enabled) {
+            return snapshot();
+        }
+        return CatalogSnapshot.of(0L, toEntries(findCandidateCoupons(cart)), clock.millis());
+    }
+
+    /**
+     * Database-only mode: the rules of the coupons the database prefilters for {@code cart} that
+     * are active now, in id order, without building a snapshot or index around them. PRODUCT_SET
+     * coupons come back regardless of the cart and are kept only if their set covers one of its
+     * products.
+     */
+    public List<CouponRule> findCandidates(CartIndex cart) {
+        long now = clock.millis();
+        List<Coupon> coupons = findCandidateCoupons(cart);
+        List<CouponRule> rules = new ArrayList<>(coupons.size());
+        for (Coupon coupon : coupons) {
+            CatalogEntry entry = toEntry(coupon);
+            if (entry != null && entry.isActiveAt(now)
+                    && !(entry.rule() instanceof ProductSetRule productSet && !productSet.coversAny(cart))) {
+                rules.add(entry.rule());
+            }
+        }
+        return rules;
+    }
+
+    private List<Coupon> findCandidateCoupons(CartIndex cart) {
+        if (cart.productCount() == 0) {
+            return couponRepository.findByTypeAndThresholdLessThanOrderByIdAsc(CouponType.CART_WISE, cart.total());
+        }
+        List<Long> productIds = new ArrayList<>(cart.productCount());
+        for (int i = 0; i < cart.productCount(); i++) {
+            productIds.add(cart.productAt(i));
+        }
+        return couponRepository.findCandidates(productIds, cart.total());
+    }
+
+    /**
+     * The change feed version the catalog has caught up with.
+     */
+    public long feedVersion() {
+        return feedVersion;
+    }
+
+    public long currentTimeMillis() {
+        return clock.millis();
+    }
+
+    public Optional<CatalogEntry> find(long couponId) {
+        if (enabled) {
+            return Optional.ofNullable(snapshot.get(couponId));
+        }
+        return couponRepository.findById(couponId).map(this::toEntry);
+    }
+
+    public List<CatalogEntry> entries() {
+        if (enabled) {
+            return List.copyOf(snapshot.entries());
+        }
+        return toEntries(couponRepository.findAllByOrderByIdAsc());
+    }
+
+    public List<CatalogEntry> page(long after, int limit, CouponType type) {
+        if (enabled) {
+            return snapshot.page(after, limit, type);
+        }
+        return toEntries(type == null
+                ? couponRepository.findByIdGreaterThanOrderByIdAsc(after, Limit.of(limit))
+                : couponRepository.findByTypeAndIdGreaterThanOrderByIdAsc(type, after, Limit.of(limit)));
+    }
+
+    @PostConstruct
+    void registerGauges() {
+        metrics.registerCatalogGauge("coupons.catalog.size", "Coupons in the current catalog snapshot",
+                this, catalog -> catalog.snapshot().size());
+        metrics.registerCatalogGauge("coupons.catalog.version", "Version of the current catalog snapshot",
+                this, catalog -> catalog.snapshot().version());
+        metrics.registerCatalogGauge("coupons.catalog.active", "Coupons active in the current catalog snapshot",
+                this, catalog -> catalog.snapshot().activeCount());
+        metrics.registerCatalogGauge("coupons.catalog.product_sets.bytes",
+                "Heap held by PRODUCT_SET membership arrays in the current catalog snapshot",
+                this, catalog -> catalog.snapshot().productSetBytes());
+        if (enabled) {
+            start();
+            startTicker();
+        }
+    }
+
+    /**
+     * Serves from the snapshot file when there is a valid one, verifying it against the database in
+     * the background; otherwise rebuilds the catalog from the database before returning.
+     */
+    private void start() {
+        long startingFeedVersion = currentFeedVersion();
+        CatalogSnapshot loaded = loadSnapshotFile();
+        if (loaded == null) {
+            reload();
+            return;
+        }
+        synchronized (this) {
+            snapshot = loaded;
+            feedVersion = startingFeedVersion;
+        }
+        Thread.ofVirtual().name("catalog-verify").start(() -> verifyAgainstDatabase(loaded));
+    }
+
+    private CatalogSnapshot loadSnapshotFile() {
+        if (snapshotFile.isBlank() || !Files.exists(Path.of(snapshotFile))) {
+            return null;
+        }
+        long start = System.nanoTime();
+        try {
+            CatalogSnapshot loaded = CatalogSnapshotFile.read(Path.of(snapshotFile), clock.millis());
+            log.info("Loaded {} coupons at catalog version {} from {} in {} ms", loaded.size(), loaded.version(),
+                    snapshotFile, (System.nanoTime() - start) / 1_000_000);
+            return loaded;
+        } catch (IOException e) {
+            log.warn("Ignoring catalog snapshot file, rebuilding from the database: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    void verifyAgainstDatabase(CatalogSnapshot loaded) {
+        try {
+            if (!matchesDatabase(loaded)) {
+                log.warn("Catalog snapshot file {} is out of date, rebuilding from the database", snapshotFile);
+                reload();
+            }
+        } catch (RuntimeException e) {
+            log.error("Could not verify catalog snapshot file {} against the database", snapshotFile, e);
+        }
+    }
+
+    /**
+     * Whether the database holds exactly the coupons of {@code loaded}, at the same versions.
+     */
+    private boolean matchesDatabase(CatalogSnapshot loaded) {
+        Iterator<CatalogEntry> expected = loaded.entries().iterator();
+        List<Coupon> page = couponRepository.findByIdGreaterThanOrderByIdAsc(0L, Limit.of(RELOAD_PAGE_SIZE));
+        while (!page.isEmpty()) {
+            for (Coupon coupon : page) {
+                if (!expected.hasNext()) {
+                    return false;
+                }
+                CatalogEntry entry = expected.next();
+                long version = coupon.getVersion() != null ? coupon.getVersion() : 0L;
+                if (entry.id() != coupon.getId() || entry.rule().version() != version) {
+                    return false;
+                }
+            }
+            Long after = page.get(page.size() - 1).getId();
+            page = couponRepository.findByIdGreaterThanOrderByIdAsc(after, Limit.of(RELOAD_PAGE_SIZE));
+        }
+        return !expected.hasNext();
+    }
+
+    private void startTicker() {
+        long tickMillis = Math.max(1L, validityTick.toMillis());
+        ticker = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform()
+                .name("catalog-validity").daemon().factory());
+        ticker.scheduleAtFixedRate(() -> {
+            try {
+                tick();
+            } catch (RuntimeException e) {
+                log.error("Could not advance coupon validity", e);
+            }
+        }, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Publishes the generation for a validity boundary that has come due, ahead of any reader.
+     */
+    void tick() {
+        if (clock.millis() >= snapshot.nextBoundary()) {
+            advanceValidity();
+        }
+    }
+
+    @PreDestroy
+    void stop() {
+        if (ticker != null) {
+            ticker.shutdownNow();
+        }
+        writeSnapshotFile();
+    }
+
+    public void writeSnapshotFile() {
+        if (!enabled || snapshotFile.isBlank()) {
+            return;
+        }
+        CatalogSnapshot current = snapshot;
+        try {
+            CatalogSnapshotFile.write(current, Path.of(snapshotFile));
+            log.info("Wrote {} coupons at catalog version {} to {}", current.size(), current.version(), snapshotFile);
+        } catch (IOException e) {
+            log.warn("Could not write catalog snapshot file {}", snapshotFile, e);
+        }
+    }
+
+    public synchronized void reload() {
+        long start = System.nanoTime();
+        // Taken before reading, so changes committed during the reload are applied again later.
+        long reloadedFeedVersion = currentFeedVersion();
+        List<CatalogEntry> entries = new ArrayList<>();
+        List<Coupon> page = couponRepository.findByIdGreaterThanOrderByIdAsc(0L, Limit.of(RELOAD_PAGE_SIZE));
+        while (!page.isEmpty()) {
+            entries.addAll(toEntries(page));
+            Long after = page.get(page.size() - 1).getId();
+            page = couponRepository.findByIdGreaterThanOrderByIdAsc(after, Limit.of(RELOAD_PAGE_SIZE));
+        }
+        snapshot = CatalogSnapshot.of(snapshot.version() + 1, entries, clock.millis());
+        feedVersion = reloadedFeedVersion;
+        metrics.recordCatalogReload(System.nanoTime() - start);
+    }
+
+    public void upsertAfterCommit(Coupon coupon) {
+        upsertAllAfterCommit(List.of(coupon));
+    }
+
+    /**
+     * Publishes all {@code coupons} as a single new generation once the surrounding transaction
+     * commits.
+     */
+    public void upsertAllAfterCommit(List<Coupon> coupons) {
+        List<CatalogEntry> entries = compile(coupons);
+        if (enabled) {
+            afterCommit(() -> upsert(entries));
+        }
+    }
+
+    /**
+     * Compiles saved {@code coupons} into entries for a later {@link #upsert}, for writers that
+     * publish several committed transactions as one generation.
+     */
+    public List<CatalogEntry> compile(List<Coupon> coupons) {
+        List<CatalogEntry> entries = new ArrayList<>(coupons.size());
+        for (Coupon coupon : coupons) {
+            entries.add(CatalogEntry.of(ruleCache.put(coupon), coupon));
+        }
+        return entries;
+    }
+
+    public void removeAfterCommit(long couponId) {
+        ruleCache.evict(couponId);
+        if (enabled) {
+            afterCommit(() -> remove(couponId));
+        }
+    }
+
+    public synchronized void upsert(List<CatalogEntry> entries) {
+        snapshot = snapshot.withUpserted(snapshot.version() + 1, entries, clock.millis());
+    }
+
+    public synchronized void remove(long couponId) {
+        snapshot = snapshot.withRemoved(snapshot.version() + 1, couponId, clock.millis());
+    }
+
+    /**
+     * Applies changes read from the feed up to {@code version} as one generation. Coupons this
+     * instance has already published at the same or a later version, and removals of coupons it
+     * no longer holds, are skipped.
+     */
+    public synchronized void applyChanges(List<Coupon> upserts, Collection<Long> deleted, long version) {
+        List<CatalogEntry> upserted = new ArrayList<>(upserts.size());
+        for (Coupon coupon : upserts) {
+            CatalogEntry current = snapshot.get(coupon.getId());
+            long couponVersion = coupon.getVersion() != null ? coupon.getVersion() : 0L;
+            if (current != null && current.rule().version() >= couponVersion) {
+                continue;
+            }
+            CatalogEntry entry = toEntry(coupon);
+            if (entry != null) {
+                upserted.add(entry);
+            }
+        }
+        List<Long> removed = new ArrayList<>(deleted.size());
+        for (Long couponId : deleted) {
+            ruleCache.evict(couponId);
+            if (snapshot.get(couponId) != null) {
+                removed.add(couponId);
+            }
+        }
+        if (!upserted.isEmpty() || !removed.isEmpty()) {
+            snapshot = snapshot.withChanges(snapshot.version() + 1, upserted, removed, clock.millis());
+        }
+        feedVersion = Math.max(feedVersion, version);
+    }
+
+    private long currentFeedVersion() {
+        if (feedRepository == null) {
+            return 0L;
+        }
+        return feedRepository.findById(CouponChangeFeed.ID).map(CouponChangeFeed::getVersion).orElse(0L);
+    }
+
+    private List<CatalogEntry> toEntries(List<Coupon> coupons) {
+        List<CatalogEntry> entries = new ArrayList<>(coupons.size());
+        for (Coupon coupon : coupons) {
+            CatalogEntry entry = toEntry(coupon);
+            if (entry != null) {
+                entries.add(entry);
+            }
+        }
+        return entries;
+    }
+
+    private CatalogEntry toEntry(Coupon coupon) {
+        try {
+            return CatalogEntry.of(ruleCache.get(coupon), coupon);
+        } catch (InvalidCouponDetailsException e) {
+            log.warn("Skipping coupon {} with invalid details: {}", coupon.getId(), e.getMessage());
+            return null;
+        }
+    }
+
+    private void afterCommit(Runnable publish) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            publish.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                publish.run();
+            }
+        });
+    }
+}
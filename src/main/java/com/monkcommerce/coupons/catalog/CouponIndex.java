@@ -0,0 +1,401 @@
+package com.monkcommerce.coupons.catalog;
+
+import com.monkcommerce.coupons.rule.BxGyRule;
+import com.monkcommerce.coupons.rule.CartIndex;
+import com.monkcommerce.coupons.rule.CartWiseRule;
+import com.monkcommerce.coupons.rule.CouponRule;
+import com.monkcommerce.coupons.rule.LongHashing;
+import com.monkcommerce.coupons.rule.ProductSetRule;
+import com.monkcommerce.coupons.rule.ProductWiseRule;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Immutable candidate index over compiled rules. PRODUCT_WISE coupons are keyed by their target
+ * product and BXGY coupons by every product in their buy set; CART_WISE coupons are sorted by
+ * threshold so that the qualifying ones form a prefix found with one binary search. BXGY coupons
+ * are also keyed by their get set, which only matters when working out what a cart edit affects.
+ *
+ * <p>PRODUCT_SET coupons are not keyed by product: a set can cover a whole category, and an entry
+ * per product would cost far more than the set itself. They are kept in one list instead, and each
+ * is matched by probing its set with the cart's products.
+ */
+public final class CouponIndex {
+
+    private static final Comparator<CouponRule> BY_COUPON_ID = Comparator.comparingLong(CouponRule::couponId);
+    private static final Comparator<CartWiseRule> BY_THRESHOLD =
+            Comparator.comparingDouble(CartWiseRule::threshold).thenComparing(BY_COUPON_ID);
+    private static final CouponRule[] NO_RULES = new CouponRule[0];
+    private static final long[] NO_PRODUCTS = new long[0];
+    private static final CouponIndex EMPTY = new CouponIndex(List.of());
+
+    private final ProductTable products;
+    private final ProductTable getProducts;
+    private final double[] thresholds;
+    private final CartWiseRule[] cartWiseByThreshold;
+    private final ProductSetRule[] productSets;
+
+    private CouponIndex(Collection<CouponRule> rules) {
+        Map<Long, List<CouponRule>> products = new HashMap<>();
+        Map<Long, List<CouponRule>> getProducts = new HashMap<>();
+        List<CartWiseRule> cartWise = new ArrayList<>();
+        List<ProductSetRule> productSets = new ArrayList<>();
+
+        for (CouponRule rule : rules) {
+            switch (rule) {
+                case CartWiseRule cartWiseRule -> cartWise.add(cartWiseRule);
+                case ProductWiseRule productWise ->
+                        products.computeIfAbsent(productWise.productId(), k -> new ArrayList<>()).add(productWise);
+                case BxGyRule bxGy -> {
+                    addOnce(products, bxGy.buyProductIds(), bxGy);
+                    addOnce(getProducts, bxGy.getProductIds(), bxGy);
+                }
+                case ProductSetRule productSet -> productSets.add(productSet);
+            }
+        }
+
+        this.products = new ProductTable(products);
+        this.getProducts = new ProductTable(getProducts);
+
+        cartWise.sort(BY_THRESHOLD);
+        this.cartWiseByThreshold = cartWise.toArray(CartWiseRule[]::new);
+        this.thresholds = thresholds(cartWiseByThreshold);
+
+        productSets.sort(BY_COUPON_ID);
+        this.productSets = productSets.toArray(ProductSetRule[]::new);
+    }
+
+    private CouponIndex(ProductTable products, ProductTable getProducts, CartWiseRule[] cartWiseByThreshold,
+                        ProductSetRule[] productSets) {
+        this.products = products;
+        this.getProducts = getProducts;
+        this.cartWiseByThreshold = cartWiseByThreshold;
+        this.thresholds = thresholds(cartWiseByThreshold);
+        this.productSets = productSets;
+    }
+
+    public static CouponIndex empty() {
+        return EMPTY;
+    }
+
+    public static CouponIndex of(Collection<CouponRule> rules) {
+        return rules.isEmpty() ? EMPTY : new CouponIndex(rules);
+    }
+
+    /**
+     * A copy with {@code removed} taken out and {@code added} put in. Only the buckets of the
+     * products those coupons are keyed by are rebuilt; every other bucket is shared.
+     */
+    public CouponIndex withChanges(Collection<CouponRule> added, Collection<CouponRule> removed) {
+        if (added.isEmpty() && removed.isEmpty()) {
+            return this;
+        }
+        Set<Long> replaced = new HashSet<>();
+        removed.forEach(rule -> replaced.add(rule.couponId()));
+        added.forEach(rule -> replaced.add(rule.couponId()));
+
+        List<CartWiseRule> addedCartWise = new ArrayList<>();
+        List<ProductSetRule> keptProductSets = new ArrayList<>();
+        for (CouponRule rule : added) {
+            if (rule instanceof CartWiseRule cartWise) {
+                addedCartWise.add(cartWise);
+            } else if (rule instanceof ProductSetRule productSet) {
+                keptProductSets.add(productSet);
+            }
+        }
+        addedCartWise.sort(BY_THRESHOLD);
+        CartWiseRule[] merged = new CartWiseRule[cartWiseByThreshold.length + addedCartWise.size()];
+        int size = 0;
+        int next = 0;
+        for (CartWiseRule rule : cartWiseByThreshold) {
+            if (replaced.contains(rule.couponId())) {
+                continue;
+            }
+            while (next < addedCartWise.size() && BY_THRESHOLD.compare(addedCartWise.get(next), rule) < 0) {
+                merged[size++] = addedCartWise.get(next++);
+            }
+            merged[size++] = rule;
+        }
+        while (next < addedCartWise.size()) {
+            merged[size++] = addedCartWise.get(next++);
+        }
+
+        ProductSetRule[] productSets = this.productSets;
+        if (!keptProductSets.isEmpty() || replacesAny(productSets, replaced)) {
+            for (ProductSetRule rule : this.productSets) {
+                if (!replaced.contains(rule.couponId())) {
+                    keptProductSets.add(rule);
+                }
+            }
+            keptProductSets.sort(BY_COUPON_ID);
+            productSets = keptProductSets.toArray(ProductSetRule[]::new);
+        }
+
+        return new CouponIndex(
+                products.with(changedBuckets(products, replaced, added, removed, CouponIndex::productKeys)),
+                getProducts.with(changedBuckets(getProducts, replaced, added, removed, CouponIndex::getProductKeys)),
+                size == merged.length ? merged : Arrays.copyOf(merged, size),
+                productSets);
+    }
+
+    /**
+     * Returns every coupon that can yield a non-zero discount for the cart, ordered by coupon id.
+     */
+    public List<CouponRule> candidates(CartIndex cart) {
+        List<CouponRule> candidates = new ArrayList<>();
+
+        for (int i = 0; i < cart.productCount(); i++) {
+            CouponRule[] bucket = products.get(cart.productAt(i));
+            if (bucket != null) {
+                candidates.addAll(Arrays.asList(bucket));
+            }
+        }
+
+        int qualifying = countThresholdsBelow(cart.total());
+        for (int i = 0; i < qualifying; i++) {
+            candidates.add(cartWiseByThreshold[i]);
+        }
+
+        for (ProductSetRule productSet : productSets) {
+            if (productSet.coversAny(cart)) {
+                candidates.add(productSet);
+            }
+        }
+
+        candidates.sort(BY_COUPON_ID);
+        return distinct(candidates);
+    }
+
+    /**
+     * Returns the coupons whose discount can change when the cart lines of any of {@code productIds}
+     * change, or whose applicability can change when the cart total moves from {@code fromTotal} to
+     * {@code toTotal}, ordered by coupon id: PRODUCT_WISE and PRODUCT_SET coupons on those
+     * products, BXGY coupons buying or giving them, and CART_WISE coupons whose threshold the total
+     * crossed.
+     */
+    public List<CouponRule> affected(long[] productIds, double fromTotal, double toTotal) {
+        List<CouponRule> affected = new ArrayList<>();
+        for (long productId : productIds) {
+            CouponRule[] bucket = products.get(productId);
+            if (bucket != null) {
+                affected.addAll(Arrays.asList(bucket));
+            }
+            bucket = getProducts.get(productId);
+            if (bucket != null) {
+                affected.addAll(Arrays.asList(bucket));
+            }
+        }
+        for (ProductSetRule productSet : productSets) {
+            for (long productId : productIds) {
+                if (productSet.products().contains(productId)) {
+                    affected.add(productSet);
+                    break;
+                }
+            }
+        }
+
+        double low = Math.min(fromTotal, toTotal);
+        double high = Math.max(fromTotal, toTotal);
+        if (low != high) {
+            // A total at or below zero yields no discount whatever the threshold, so moving across
+            // zero can flip every coupon below the higher total, not only those in between.
+            int from = low <= 0 ? 0 : countThresholdsBelow(low);
+            int to = countThresholdsBelow(high);
+            for (int i = from; i < to; i++) {
+                affected.add(cartWiseByThreshold[i]);
+            }
+        }
+
+        affected.sort(BY_COUPON_ID);
+        return distinct(affected);
+    }
+
+    private static void addOnce(Map<Long, List<CouponRule>> buckets, long[] productIds, CouponRule rule) {
+        for (long productId : productIds) {
+            List<CouponRule> bucket = buckets.computeIfAbsent(productId, k -> new ArrayList<>());
+            if (bucket.isEmpty() || bucket.get(bucket.size() - 1) != rule) {
+                bucket.add(rule);
+            }
+        }
+    }
+
+    /**
+     * The new contents of every bucket keyed by a changed coupon: the old bucket without the
+     * replaced coupons, followed by the added coupons keyed by it.
+     */
+    private static Map<Long, List<CouponRule>> changedBuckets(ProductTable table, Set<Long> replaced,
+            Collection<CouponRule> added, Collection<CouponRule> removed, Function<CouponRule, long[]> keys) {
+        Map<Long, List<CouponRule>> buckets = new HashMap<>();
+        for (Collection<CouponRule> changed : List.of(removed, added)) {
+            for (CouponRule rule : changed) {
+                for (long productId : keys.apply(rule)) {
+                    buckets.computeIfAbsent(productId, k -> {
+                        List<CouponRule> kept = new ArrayList<>();
+                        CouponRule[] bucket = table.get(productId);
+                        if (bucket != null) {
+                            for (CouponRule held : bucket) {
+                                if (!replaced.contains(held.couponId())) {
+                                    kept.add(held);
+                                }
+                            }
+                        }
+                        return kept;
+                    });
+                }
+            }
+        }
+        for (CouponRule rule : added) {
+            addOnce(buckets, keys.apply(rule), rule);
+        }
+        return buckets;
+    }
+
+    private static long[] productKeys(CouponRule rule) {
+        return switch (rule) {
+            case CartWiseRule cartWise -> NO_PRODUCTS;
+            case ProductWiseRule productWise -> new long[] {productWise.productId()};
+            case BxGyRule bxGy -> bxGy.buyProductIds();
+            case ProductSetRule productSet -> NO_PRODUCTS;
+        };
+    }
+
+    private static long[] getProductKeys(CouponRule rule) {
+        return rule instanceof BxGyRule bxGy ? bxGy.getProductIds() : NO_PRODUCTS;
+    }
+
+    private static boolean replacesAny(ProductSetRule[] productSets, Set<Long> replaced) {
+        for (ProductSetRule rule : productSets) {
+            if (replaced.contains(rule.couponId())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static double[] thresholds(CartWiseRule[] cartWiseByThreshold) {
+        double[] thresholds = new double[cartWiseByThreshold.length];
+        for (int i = 0; i < cartWiseByThreshold.length; i++) {
+            thresholds[i] = cartWiseByThreshold[i].threshold();
+        }
+        return thresholds;
+    }
+
+    private int countThresholdsBelow(double cartTotal) {
+        int low = 0;
+        int high = thresholds.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (thresholds[mid] < cartTotal) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static List<CouponRule> distinct(List<CouponRule> sorted) {
+        int size = 0;
+        for (int i = 0; i < sorted.size(); i++) {
+            CouponRule rule = sorted.get(i);
+            if (size == 0 || sorted.get(size - 1).couponId() != rule.couponId()) {
+                sorted.set(size++, rule);
+            }
+        }
+        return sorted.subList(0, size);
+    }
+
+    /**
+     * Open-addressing table from product id to the coupons keyed by it. A product whose last
+     * coupon is removed keeps its slot with an empty bucket, so probe chains stay intact; such
+     * slots are dropped when the table is next rebuilt.
+     */
+    private static final class ProductTable {
+
+        private final long[] keys;
+        private final CouponRule[][] buckets;
+        private final int mask;
+        private final int used;
+
+        private ProductTable(Map<Long, List<CouponRule>> byProduct) {
+            int capacity = Integer.highestOneBit(Math.max(4, byProduct.size() * 2 - 1)) << 1;
+            this.keys = new long[capacity];
+            this.buckets = new CouponRule[capacity][];
+            this.mask = capacity - 1;
+            this.used = byProduct.size();
+            byProduct.forEach((productId, bucket) -> {
+                int slot = slot(productId);
+                keys[slot] = productId;
+                buckets[slot] = bucket.toArray(CouponRule[]::new);
+            });
+        }
+
+        private ProductTable(long[] keys, CouponRule[][] buckets, int used) {
+            this.keys = keys;
+            this.buckets = buckets;
+            this.mask = keys.length - 1;
+            this.used = used;
+        }
+
+        /**
+         * A copy with the buckets of the products in {@code changes} replaced, rebuilt from scratch
+         * only when the new products would fill more than half the slots.
+         */
+        private ProductTable with(Map<Long, List<CouponRule>> changes) {
+            if (changes.isEmpty()) {
+                return this;
+            }
+            int added = 0;
+            for (Long productId : changes.keySet()) {
+                if (get(productId) == null) {
+                    added++;
+                }
+            }
+            if ((used + added) * 2L > keys.length) {
+                Map<Long, List<CouponRule>> byProduct = new HashMap<>();
+                for (int slot = 0; slot < keys.length; slot++) {
+                    if (buckets[slot] != null && buckets[slot].length > 0) {
+                        byProduct.put(keys[slot], Arrays.asList(buckets[slot]));
+                    }
+                }
+                changes.forEach((productId, bucket) -> {
+                    if (bucket.isEmpty()) {
+                        byProduct.remove(productId);
+                    } else {
+                        byProduct.put(productId, bucket);
+                    }
+                });
+                return new ProductTable(byProduct);
+            }
+
+            ProductTable copy = new ProductTable(keys.clone(), buckets.clone(), used + added);
+            changes.forEach((productId, bucket) -> {
+                int slot = copy.slot(productId);
+                copy.keys[slot] = productId;
+                copy.buckets[slot] = bucket.isEmpty() ? NO_RULES : bucket.toArray(CouponRule[]::new);
+            });
+            return copy;
+        }
+
+        private CouponRule[] get(long productId) {
+            return buckets[slot(productId)];
+        }
+
+        private int slot(long productId) {
+            int slot = LongHashing.hash(productId) & mask;
+            while (buckets[slot] != null && keys[slot] != productId) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+    }
+}
@@ -16,12 +16,13 @@ public class ApplyCouponController {
     @PostMapping("/{id}")
     public ResponseEntity<ApplyCouponResponse> applyCoupon(
             @PathVariable Long id,
+            @RequestParam(required = false) String customerId,
             @RequestBody(required = false) Cart cart) {
         if (cart == null || cart.getItems() == null) {
             return ResponseEntity.<ApplyCouponResponse>badRequest().build();
         }
 
-        ApplyCouponResponse response = couponService.applyCoupon(id, cart);
+        ApplyCouponResponse response = couponService.applyCoupon(id, cart, customerId);
         return ResponseEntity.ok(response);
     }
 }
@@ -1,22 +1,52 @@
 package com.monkcommerce.coupons.controller;
 
 import com.monkcommerce.coupons.dto.*;
+import com.monkcommerce.coupons.service.ApplicableCouponsBatchService;
 import com.monkcommerce.coupons.service.CouponService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
+
 @RestController
 @RequiredArgsConstructor
 @RequestMapping("/applicable-coupons")
 public class CartController {
 
     private final CouponService couponService;
+    private final ApplicableCouponsBatchService batchService;
 
     @PostMapping
     public ResponseEntity<ApplicableCouponsResponse> getApplicableCoupons(
-            @RequestBody Cart cart) {
-        ApplicableCouponsResponse response = couponService.getApplicableCoupons(cart);
+            @RequestBody Cart cart,
+            @RequestParam(required = false) Integer top,
+            @RequestParam(defaultValue = "false") boolean explain) {
+        if (explain) {
+            return ResponseEntity.ok(couponService.explainApplicableCoupons(cart, top));
+        }
+        ApplicableCouponsResponse response = top == null
+                ? couponService.getApplicableCoupons(cart)
+                : couponService.getTopApplicableCoupons(cart, top);
         return ResponseEntity.ok(response);
     }
+
+    @PostMapping("/best")
+    public ResponseEntity<ApplicableCoupon> getBestCoupon(@RequestBody Cart cart) {
+        return couponService.getBestCoupon(cart)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.noContent().build());
+    }
+
+    @PostMapping(value = "/batch",
+            consumes = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.APPLICATION_JSON_VALUE},
+            produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public void getApplicableCouponsBatch(HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        batchService.evaluate(request.getInputStream(), response.getOutputStream());
+    }
 }
@@ -0,0 +1,60 @@
+package com.monkcommerce.coupons.controller;
+
+import com.monkcommerce.coupons.dto.Cart;
+import com.monkcommerce.coupons.dto.CartItem;
+import com.monkcommerce.coupons.dto.CartSessionResponse;
+import com.monkcommerce.coupons.service.CartSessionService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequiredArgsConstructor
+@RequestMapping("/cart-sessions")
+public class CartSessionController {
+
+    private final CartSessionService cartSessionService;
+
+    @PostMapping
+    public ResponseEntity<CartSessionResponse> createSession(@RequestBody(required = false) Cart cart) {
+        return new ResponseEntity<>(cartSessionService.create(cart), HttpStatus.CREATED);
+    }
+
+    @GetMapping("/{sessionId}")
+    public ResponseEntity<CartSessionResponse> getSession(@PathVariable String sessionId) {
+        return ResponseEntity.ok(cartSessionService.get(sessionId));
+    }
+
+    @PostMapping("/{sessionId}/items")
+    public ResponseEntity<CartSessionResponse> addItem(@PathVariable String sessionId,
+            @RequestBody CartItem item) {
+        return ResponseEntity.ok(cartSessionService.addItem(sessionId, item));
+    }
+
+    @PutMapping("/{sessionId}/items/{line}")
+    public ResponseEntity<CartSessionResponse> updateItem(@PathVariable String sessionId,
+            @PathVariable int line,
+            @RequestBody CartItem item) {
+        return ResponseEntity.ok(cartSessionService.updateItem(sessionId, line, item));
+    }
+
+    @DeleteMapping("/{sessionId}/items/{line}")
+    public ResponseEntity<CartSessionResponse> removeItem(@PathVariable String sessionId,
+            @PathVariable int line) {
+        return ResponseEntity.ok(cartSessionService.removeItem(sessionId, line));
+    }
+
+    @DeleteMapping("/{sessionId}")
+    public ResponseEntity<Void> deleteSession(@PathVariable String sessionId) {
+        cartSessionService.delete(sessionId);
+        return ResponseEntity.noContent().build();
+    }
+}
@@ -1,11 +1,19 @@
 package com.monkcommerce.coupons.controller;
 
 import com.monkcommerce.coupons.dto.*;
+import com.monkcommerce.coupons.model.CouponType;
+import com.monkcommerce.coupons.service.BulkFormat;
+import com.monkcommerce.coupons.service.CouponBulkService;
 import com.monkcommerce.coupons.service.CouponService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
 import java.util.List;
 
 
@@ -14,7 +22,12 @@ import java.util.List;
 @RequiredArgsConstructor
 public class CouponController {
 
+    private static final String NEXT_AFTER_HEADER = "X-Next-After";
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final String CSV_VALUE = "text/csv";
+
     private final CouponService couponService;
+    private final CouponBulkService couponBulkService;
 
     @PostMapping
     public ResponseEntity<CouponResponse> createCoupon(@RequestBody CreateCouponRequest request) {
@@ -23,9 +36,43 @@ public class CouponController {
     }
 
     @GetMapping
-    public ResponseEntity<List<CouponResponse>> getAllCoupons() {
-        List<CouponResponse> coupons = couponService.getAllCoupons();
-        return ResponseEntity.ok(coupons);
+    public ResponseEntity<List<CouponResponse>> getAllCoupons(
+            @RequestParam(required = false) Long after,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) CouponType type) {
+        if (after == null && limit == null && type == null) {
+            return ResponseEntity.ok(couponService.getAllCoupons());
+        }
+
+        int pageSize = limit != null ? limit : DEFAULT_PAGE_SIZE;
+        List<CouponResponse> coupons = couponService.getCoupons(after != null ? after : 0L, pageSize, type);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (coupons.size() == pageSize) {
+            response.header(NEXT_AFTER_HEADER, String.valueOf(coupons.get(coupons.size() - 1).getId()));
+        }
+        return response.body(coupons);
+    }
+
+    @PostMapping(value = "/import", consumes = {MediaType.APPLICATION_NDJSON_VALUE, CSV_VALUE})
+    public ResponseEntity<BulkImportResponse> importCoupons(HttpServletRequest request) throws IOException {
+        BulkFormat format = request.getContentType() != null && request.getContentType().startsWith(CSV_VALUE)
+                ? BulkFormat.CSV
+                : BulkFormat.NDJSON;
+        return ResponseEntity.ok(couponBulkService.importCoupons(request.getInputStream(), format));
+    }
+
+    @GetMapping(value = "/export", produces = {MediaType.APPLICATION_NDJSON_VALUE, CSV_VALUE})
+    public void exportCoupons(@RequestParam(required = false) CouponType type,
+            @RequestParam(defaultValue = "NDJSON") BulkFormat format,
+            HttpServletResponse response) throws IOException {
+        response.setContentType(format == BulkFormat.CSV ? CSV_VALUE : MediaType.APPLICATION_NDJSON_VALUE);
+        couponBulkService.exportCoupons(type, format, response.getOutputStream());
+    }
+
+    @GetMapping("/changes")
+    public ResponseEntity<CouponChangesResponse> getChanges(@RequestParam(defaultValue = "0") long since,
+            @RequestParam(defaultValue = "1000") int limit) {
+        return ResponseEntity.ok(couponService.getChanges(since, limit));
     }
 
     @GetMapping("/{id}")
@@ -1,5 +1,6 @@
 package com.monkcommerce.coupons.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -13,4 +14,11 @@ import java.util.List;
 @Builder
 public class ApplicableCouponsResponse {
     private List<ApplicableCoupon> applicableCoupons;
+    private long catalogVersion;
+
+    /**
+     * Only present when the request asked for an explanation.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private EvaluationExplanation explain;
 }
@@ -11,4 +11,5 @@ import lombok.NoArgsConstructor;
 @Builder
 public class ApplyCouponResponse {
     private UpdatedCart updatedCart;
+    private long catalogVersion;
 }
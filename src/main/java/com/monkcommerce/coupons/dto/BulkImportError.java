@@ -0,0 +1,15 @@
+package com.monkcommerce.coupons.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class BulkImportError {
+    private long line;
+    private String message;
+}
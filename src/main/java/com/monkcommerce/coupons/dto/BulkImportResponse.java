@@ -0,0 +1,20 @@
+package com.monkcommerce.coupons.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class BulkImportResponse {
+    private long imported;
+    private long failed;
+    private List<BulkImportError> errors;
+    private long elapsedMillis;
+    private double rowsPerSecond;
+}
@@ -0,0 +1,22 @@
+package com.monkcommerce.coupons.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class CartSessionResponse {
+    private String sessionId;
+    private List<CartItem> items;
+    private double totalPrice;
+    private long catalogVersion;
+    private List<ApplicableCoupon> applicableCoupons;
+    private List<ApplicableCoupon> added;
+    private List<Long> removed;
+}
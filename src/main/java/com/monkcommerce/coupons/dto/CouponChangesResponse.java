@@ -0,0 +1,18 @@
+package com.monkcommerce.coupons.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@Builder
+public class CouponChangesResponse {
+
+    private long since;
+    private long version;
+    private boolean reset;
+    private boolean hasMore;
+    private List<CouponResponse> upserts;
+    private List<Long> deleted;
+}
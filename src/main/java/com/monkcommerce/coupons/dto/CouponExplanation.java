@@ -0,0 +1,46 @@
+package com.monkcommerce.coupons.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * How one coupon was handled while finding the applicable coupons for a cart, and why it was left
+ * out when it was.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class CouponExplanation {
+
+    public enum Path {
+        /** Not a candidate for the cart, so never evaluated. */
+        INDEX_MISS,
+        /** A candidate skipped because its discount upper bound could not make the top K. */
+        BOUND_PRUNED,
+        /** A candidate whose discount was fully calculated. */
+        EVALUATED
+    }
+
+    public enum Reason {
+        NOT_ACTIVE,
+        THRESHOLD_NOT_MET,
+        PRODUCT_NOT_IN_CART,
+        BUY_QUANTITY_NOT_MET,
+        GET_PRODUCT_NOT_IN_CART,
+        ZERO_DISCOUNT,
+        OUTRANKED,
+        EVALUATION_FAILED
+    }
+
+    private Long couponId;
+    private String type;
+    private Path path;
+    private double discount;
+    private Double upperBound;
+    private Long evaluationNanos;
+    private Reason rejection;
+    private String detail;
+}
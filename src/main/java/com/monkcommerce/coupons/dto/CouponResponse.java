@@ -1,14 +1,34 @@
 package com.monkcommerce.coupons.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonRawValue;
 import com.monkcommerce.coupons.model.CouponType;
 import lombok.Builder;
 import lombok.Data;
 
+import java.time.Instant;
+
 @Data
 @Builder
 public class CouponResponse {
     
     private Long id;
     private CouponType type;
-    private Object details;
+
+    /**
+     * The stored details JSON, validated and canonicalized on write and written out verbatim.
+     */
+    @JsonRawValue
+    private String details;
+
+    private Instant validFrom;
+    private Instant validUntil;
+    private Long maxRedemptions;
+    private Long maxRedemptionsPerCustomer;
+
+    /**
+     * Heap held by the product set of a PRODUCT_SET coupon.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Long productSetBytes;
 }
@@ -3,9 +3,15 @@ package com.monkcommerce.coupons.dto;
 import com.monkcommerce.coupons.model.CouponType;
 import lombok.Data;
 
+import java.time.Instant;
+
 @Data
 public class CreateCouponRequest {
     
     private CouponType type;
     private Object details;
+    private Instant validFrom;
+    private Instant validUntil;
+    private Long maxRedemptions;
+    private Long maxRedemptionsPerCustomer;
 }
@@ -0,0 +1,19 @@
+package com.monkcommerce.coupons.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class EvaluationExplanation {
+    private long indexNanos;
+    private long evaluationNanos;
+    private int candidates;
+    private List<CouponExplanation> coupons;
+}
@@ -0,0 +1,226 @@
+package com.monkcommerce.coupons.metrics;
+
+import com.monkcommerce.coupons.admission.ConcurrencyLimiter;
+import com.monkcommerce.coupons.model.CouponType;
+import com.monkcommerce.coupons.rule.CouponRule;
+import com.github.benmanes.caffeine.cache.Cache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Hot-path meters for coupon evaluation. Every meter used per request is resolved once up front, so
+ * recording costs a few atomic updates and no registry lookups.
+ */
+@Component
+public class CouponMetrics {
+
+    private final MeterRegistry registry;
+    private final Map<CouponType, Timer> applyTimers = new EnumMap<>(CouponType.class);
+    private final Map<String, Counter> failureCounters = new ConcurrentHashMap<>();
+    private final Timer scanAllTimer;
+    private final Timer scanTopTimer;
+    private final Timer applicableTimer;
+    private final DistributionSummary candidates;
+    private final DistributionSummary matched;
+    private final Timer catalogReloads;
+    private final Counter coalescedApplicable;
+    private final Counter coalescedApply;
+    private final Counter coalescingTimeouts;
+    private final Timer sessionIncremental;
+    private final Timer sessionFull;
+    private final DistributionSummary sessionEvaluated;
+    private final Counter redemptionsCommitted;
+    private final Counter redemptionsReleased;
+    private final Counter redemptionsRejected;
+    private final Timer redemptionFlushes;
+    private final Counter shedQueueFull;
+    private final Counter shedTimedOut;
+
+    public CouponMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        for (CouponType type : CouponType.values()) {
+            applyTimers.put(type, Timer.builder("coupons.evaluation")
+                    .description("Time to apply one coupon to a cart")
+                    .tag("type", type.name())
+                    .tag("operation", "apply")
+                    .register(registry));
+        }
+        this.scanAllTimer = scanTimer("all");
+        this.scanTopTimer = scanTimer("top");
+        this.applicableTimer = Timer.builder("coupons.applicable.duration")
+                .description("Time to answer one applicable-coupons request, including cache hits")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.candidates = DistributionSummary.builder("coupons.applicable.candidates")
+                .description("Candidate coupons evaluated per applicable-coupons evaluation, excluding cache hits")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.matched = DistributionSummary.builder("coupons.applicable.matched")
+                .description("Coupons with a positive discount per applicable-coupons request")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.catalogReloads = Timer.builder("coupons.catalog.reloads")
+                .description("Full catalog reloads from the database")
+                .register(registry);
+        this.coalescedApplicable = coalescedCounter("applicable");
+        this.coalescedApply = coalescedCounter("apply");
+        this.coalescingTimeouts = Counter.builder("coupons.coalescing.timeouts")
+                .description("Coalesced requests that stopped waiting and evaluated on their own")
+                .register(registry);
+        this.sessionIncremental = sessionTimer("incremental");
+        this.sessionFull = sessionTimer("full");
+        this.sessionEvaluated = DistributionSummary.builder("coupons.sessions.evaluated")
+                .description("Coupons re-evaluated per cart session change")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.redemptionsCommitted = redemptionCounter("committed");
+        this.redemptionsReleased = redemptionCounter("released");
+        this.redemptionsRejected = redemptionCounter("rejected");
+        this.redemptionFlushes = Timer.builder("coupons.redemptions.flush")
+                .description("Write-behind flushes of redemption counts to the database")
+                .register(registry);
+        this.shedQueueFull = shedCounter("queue_full");
+        this.shedTimedOut = shedCounter("queue_timeout");
+    }
+
+    private Timer scanTimer(String mode) {
+        return Timer.builder("coupons.evaluation.scan")
+                .description("Time to evaluate all candidate coupons of one request")
+                .tag("mode", mode)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    private Timer sessionTimer(String mode) {
+        return Timer.builder("coupons.sessions.recompute")
+                .description("Time to bring a cart session's applicable coupons up to date after a change")
+                .tag("mode", mode)
+                .register(registry);
+    }
+
+    private Counter coalescedCounter(String operation) {
+        return Counter.builder("coupons.coalesced")
+                .description("Requests served by an identical evaluation already in flight")
+                .tag("operation", operation)
+                .register(registry);
+    }
+
+    private Counter redemptionCounter(String outcome) {
+        return Counter.builder("coupons.redemptions")
+                .description("Redemption reservations by how they ended")
+                .tag("outcome", outcome)
+                .register(registry);
+    }
+
+    private Counter shedCounter(String reason) {
+        return Counter.builder("coupons.admission.shed")
+                .description("Evaluation requests turned away with 503 by admission control")
+                .tag("reason", reason)
+                .register(registry);
+    }
+
+    /**
+     * Records one pass over a request's candidates, for all applicable coupons or the best few.
+     * Individual coupons are not timed: an evaluation costs about as much as reading the clock.
+     */
+    public void recordScan(boolean top, long nanos) {
+        (top ? scanTopTimer : scanAllTimer).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public <T> T recordApply(CouponType type, Supplier<T> apply) {
+        return applyTimers.get(type).record(apply);
+    }
+
+    /**
+     * Records one applicable-coupons request end to end, whether it was served from the result cache,
+     * by an evaluation already in flight or by evaluating the cart.
+     */
+    public void recordApplicable(long nanos, int matchedCount) {
+        applicableTimer.record(nanos, TimeUnit.NANOSECONDS);
+        matched.record(matchedCount);
+    }
+
+    public void recordCandidates(int candidateCount) {
+        candidates.record(candidateCount);
+    }
+
+    public void recordEvaluationFailure(CouponRule rule, Throwable failure) {
+        String exception = failure.getClass().getSimpleName();
+        failureCounters.computeIfAbsent(rule.type().name() + ':' + exception,
+                key -> Counter.builder("coupons.evaluation.failures")
+                        .description("Coupon evaluations that threw and were treated as not applicable")
+                        .tag("type", rule.type().name())
+                        .tag("exception", exception)
+                        .register(registry))
+                .increment();
+    }
+
+    public void recordCoalesced(boolean apply) {
+        (apply ? coalescedApply : coalescedApplicable).increment();
+    }
+
+    public void recordCoalescingTimeout() {
+        coalescingTimeouts.increment();
+    }
+
+    public void recordSessionRecompute(boolean full, long nanos, int evaluatedCount) {
+        (full ? sessionFull : sessionIncremental).record(nanos, TimeUnit.NANOSECONDS);
+        sessionEvaluated.record(evaluatedCount);
+    }
+
+    /**
+     * Records a reservation that was committed, released unused, or rejected at its limit.
+     */
+    public void recordRedemption(boolean reserved, boolean committed) {
+        (!reserved ? redemptionsRejected : committed ? redemptionsCommitted : redemptionsReleased).increment();
+    }
+
+    public void recordRedemptionFlush(long nanos) {
+        redemptionFlushes.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordShed(boolean queueFull) {
+        (queueFull ? shedQueueFull : shedTimedOut).increment();
+    }
+
+    public void recordCatalogReload(long nanos) {
+        catalogReloads.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Exposes hit, miss, eviction and size statistics of a cache built with {@code recordStats()}.
+     */
+    public void monitorCache(Cache<?, ?> cache, String name) {
+        CaffeineCacheMetrics.monitor(registry, cache, name);
+    }
+
+    public void monitorAdmission(ConcurrencyLimiter limiter) {
+        Gauge.builder("coupons.admission.limit", limiter, ConcurrencyLimiter::limit)
+                .description("Evaluations allowed in flight at once")
+                .register(registry);
+        Gauge.builder("coupons.admission.in_flight", limiter, ConcurrencyLimiter::inFlight)
+                .description("Evaluations currently in flight")
+                .register(registry);
+        Gauge.builder("coupons.admission.queued", limiter, ConcurrencyLimiter::queued)
+                .description("Evaluation requests waiting for a slot")
+                .register(registry);
+    }
+
+    public <T> void registerCatalogGauge(String name, String description, T source, ToDoubleFunction<T> value) {
+        Gauge.builder(name, source, value)
+                .description(description)
+                .register(registry);
+    }
+}
@@ -4,10 +4,17 @@ import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
 
 @Entity
-@Table(name = "coupons")
+@Table(name = "coupons",
+        indexes = @Index(name = "idx_coupons_type_threshold", columnList = "type, threshold"))
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -15,7 +22,8 @@ import lombok.NoArgsConstructor;
 public class Coupon {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "coupon_seq")
+    @SequenceGenerator(name = "coupon_seq", sequenceName = "coupon_seq", allocationSize = 50)
     private Long id;
 
     @Enumerated(EnumType.STRING)
@@ -24,4 +32,34 @@ public class Coupon {
 
     @Column(nullable = false, columnDefinition = "TEXT")
     private String details;
+
+    @Version
+    private Long version;
+
+    private Double threshold;
+
+    @Column(name = "discount_percent")
+    private Double discountPercent;
+
+    @Column(name = "repetition_limit")
+    private Integer repetitionLimit;
+
+    @Column(name = "valid_from")
+    private Instant validFrom;
+
+    @Column(name = "valid_until")
+    private Instant validUntil;
+
+    @Column(name = "max_redemptions")
+    private Long maxRedemptions;
+
+    @Column(name = "max_redemptions_per_customer")
+    private Long maxRedemptionsPerCustomer;
+
+    @OneToMany(cascade = CascadeType.ALL, orphanRemoval = true)
+    @JoinColumn(name = "coupon_id", nullable = false)
+    @Builder.Default
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private List<CouponProduct> products = new ArrayList<>();
 }
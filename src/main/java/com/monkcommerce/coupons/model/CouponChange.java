@@ -0,0 +1,34 @@
+package com.monkcommerce.coupons.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * One coupon mutation in the change feed, at the catalog version it was assigned.
+ */
+@Entity
+@Table(name = "coupon_changes",
+        indexes = @Index(name = "idx_coupon_changes_changed_at", columnList = "changed_at"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class CouponChange {
+
+    @Id
+    private Long version;
+
+    @Column(name = "coupon_id", nullable = false)
+    private Long couponId;
+
+    @Column(nullable = false)
+    private boolean deleted;
+
+    @Column(name = "changed_at", nullable = false)
+    private Instant changedAt;
+}
@@ -0,0 +1,30 @@
+package com.monkcommerce.coupons.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * The single row that hands out catalog versions. Writers lock it to take the next version, so
+ * versions are committed in the order they are assigned. Changes at or below
+ * {@code compactedVersion} have been dropped from the feed.
+ */
+@Entity
+@Table(name = "coupon_change_feed")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CouponChangeFeed {
+
+    public static final long ID = 1L;
+
+    @Id
+    private Long id;
+
+    @Column(nullable = false)
+    private long version;
+
+    @Column(name = "compacted_version", nullable = false)
+    private long compactedVersion;
+}
@@ -0,0 +1,31 @@
+package com.monkcommerce.coupons.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Entity
+@Table(name = "coupon_products",
+        indexes = @Index(name = "idx_coupon_products_product_role", columnList = "product_id, role"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class CouponProduct {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "coupon_product_seq")
+    @SequenceGenerator(name = "coupon_product_seq", sequenceName = "coupon_product_seq", allocationSize = 50)
+    private Long id;
+
+    @Column(name = "product_id", nullable = false)
+    private Long productId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private CouponProductRole role;
+
+    private Integer quantity;
+}
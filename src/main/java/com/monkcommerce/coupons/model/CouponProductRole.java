@@ -0,0 +1,7 @@
+package com.monkcommerce.coupons.model;
+
+public enum CouponProductRole {
+    TARGET,
+    BUY,
+    GET
+}
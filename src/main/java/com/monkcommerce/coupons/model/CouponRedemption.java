@@ -0,0 +1,39 @@
+package com.monkcommerce.coupons.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * Redemptions of one coupon, in total ({@code customerId} empty) or by one customer, as added up
+ * from the flushes of every instance.
+ */
+@Entity
+@Table(name = "coupon_redemptions")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CouponRedemption {
+
+    @EmbeddedId
+    private Key key;
+
+    @Column(nullable = false)
+    private long redeemed;
+
+    @Embeddable
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+
+        @Column(name = "coupon_id", nullable = false)
+        private long couponId;
+
+        @Column(name = "customer_id", nullable = false)
+        private String customerId;
+    }
+}
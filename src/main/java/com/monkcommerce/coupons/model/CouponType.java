@@ -3,5 +3,6 @@ package com.monkcommerce.coupons.model;
 public enum CouponType {
     CART_WISE,
     PRODUCT_WISE,
-    BXGY
+    BXGY,
+    PRODUCT_SET
 }
@@ -0,0 +1,22 @@
+package com.monkcommerce.coupons.repository;
+
+import com.monkcommerce.coupons.model.CouponChangeFeed;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface CouponChangeFeedRepository extends JpaRepository<CouponChangeFeed, Long> {
+
+    /**
+     * The feed row, locked until the surrounding transaction ends.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select f from CouponChangeFeed f where f.id = :id")
+    Optional<CouponChangeFeed> lockById(@Param("id") Long id);
+}
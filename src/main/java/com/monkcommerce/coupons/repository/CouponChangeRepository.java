@@ -0,0 +1,25 @@
+package com.monkcommerce.coupons.repository;
+
+import com.monkcommerce.coupons.model.CouponChange;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.List;
+
+@Repository
+public interface CouponChangeRepository extends JpaRepository<CouponChange, Long> {
+
+    List<CouponChange> findByVersionGreaterThanOrderByVersionAsc(long version, Limit limit);
+
+    @Query("select max(c.version) from CouponChange c where c.changedAt < :cutoff")
+    Long findLastVersionBefore(@Param("cutoff") Instant cutoff);
+
+    @Modifying
+    @Query("delete from CouponChange c where c.version <= :version")
+    int deleteThrough(@Param("version") long version);
+}
@@ -0,0 +1,28 @@
+package com.monkcommerce.coupons.repository;
+
+import com.monkcommerce.coupons.model.CouponRedemption;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Flushed redemption counts. Used under every profile: the counts live in the database even when
+ * coupons themselves are kept in the embedded log.
+ */
+@Repository
+public interface CouponRedemptionRepository extends JpaRepository<CouponRedemption, CouponRedemption.Key> {
+
+    @Modifying
+    @Query("""
+            update CouponRedemption r set r.redeemed = r.redeemed + :delta
+            where r.key.couponId = :couponId and r.key.customerId = :customerId
+            """)
+    int addRedeemed(@Param("couponId") long couponId, @Param("customerId") String customerId,
+                    @Param("delta") long delta);
+
+    @Modifying
+    @Query("delete from CouponRedemption r where r.key.couponId = :couponId")
+    int deleteByCouponId(@Param("couponId") long couponId);
+}
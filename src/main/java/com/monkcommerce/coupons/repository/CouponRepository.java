@@ -1,9 +1,56 @@
 package com.monkcommerce.coupons.repository;
 
 import com.monkcommerce.coupons.model.Coupon;
-import org.springframework.data.jpa.repository.JpaRepository;
-import org.springframework.stereotype.Repository;
+import com.monkcommerce.coupons.model.CouponType;
+import org.springframework.data.domain.Limit;
 
-@Repository
-public interface CouponRepository extends JpaRepository<Coupon, Long> {
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Storage contract for coupons, implemented by {@link JpaCouponRepository} and, under the
+ * {@code logstore} profile, by the embedded
+ * {@link com.monkcommerce.coupons.repository.log.LogCouponRepository}. Saving assigns the id of a
+ * new coupon and increments the version of an existing one, rejecting stale versions.
+ */
+public interface CouponRepository {
+
+    <S extends Coupon> S save(S coupon);
+
+    <S extends Coupon> S saveAndFlush(S coupon);
+
+    <S extends Coupon> List<S> saveAll(Iterable<S> coupons);
+
+    Optional<Coupon> findById(Long id);
+
+    long count();
+
+    void delete(Coupon coupon);
+
+    /**
+     * CART_WISE coupons whose threshold the cart total exceeds, every coupon that targets or
+     * requires one of the given products, and every PRODUCT_SET coupon, whose set is only matched
+     * against the cart once compiled.
+     */
+    List<Coupon> findCandidates(Collection<Long> productIds, double cartTotal);
+
+    /**
+     * The threshold half of {@link #findCandidates}, for carts without products.
+     */
+    List<Coupon> findByTypeAndThresholdLessThanOrderByIdAsc(CouponType type, Double threshold);
+
+    List<Coupon> findAllByOrderByIdAsc();
+
+    List<Coupon> findByIdGreaterThanOrderByIdAsc(Long after, Limit limit);
+
+    List<Coupon> findByTypeAndIdGreaterThanOrderByIdAsc(CouponType type, Long after, Limit limit);
+
+    /**
+     * Every coupon in id order. The stream must be closed.
+     */
+    Stream<Coupon> streamAllByOrderByIdAsc();
+
+    Stream<Coupon> streamByTypeOrderByIdAsc(CouponType type);
 }
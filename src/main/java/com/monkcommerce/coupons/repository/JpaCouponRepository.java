@@ -0,0 +1,42 @@
+package com.monkcommerce.coupons.repository;
+
+import com.monkcommerce.coupons.model.Coupon;
+import com.monkcommerce.coupons.model.CouponType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
+@Repository
+@Profile("!logstore")
+public interface JpaCouponRepository extends JpaRepository<Coupon, Long>, CouponRepository {
+
+    @Override
+    @Query("""
+            select distinct c from Coupon c left join c.products p
+            where (c.type = com.monkcommerce.coupons.model.CouponType.CART_WISE and c.threshold < :cartTotal)
+               or c.type = com.monkcommerce.coupons.model.CouponType.PRODUCT_SET
+               or (p.productId in :productIds
+                   and p.role in (com.monkcommerce.coupons.model.CouponProductRole.TARGET,
+                                  com.monkcommerce.coupons.model.CouponProductRole.BUY))
+            order by c.id
+            """)
+    List<Coupon> findCandidates(@Param("productIds") Collection<Long> productIds,
+                                @Param("cartTotal") double cartTotal);
+
+    @Override
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    Stream<Coupon> streamAllByOrderByIdAsc();
+
+    @Override
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    Stream<Coupon> streamByTypeOrderByIdAsc(CouponType type);
+}
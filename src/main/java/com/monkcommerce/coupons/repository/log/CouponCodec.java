@@ -0,0 +1,172 @@
+package com.monkcommerce.coupons.repository.log;
+
+import com.monkcommerce.coupons.model.Coupon;
+import com.monkcommerce.coupons.model.CouponProduct;
+import com.monkcommerce.coupons.model.CouponProductRole;
+import com.monkcommerce.coupons.model.CouponType;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * Binary log records. Every record starts with its length and a CRC32C of everything after the
+ * checksum, so a torn write at the tail of the log is detected on recovery.
+ *
+ * <pre>
+ * int length | int crc | byte op | long id
+ * PUT only:  long version | byte type | double threshold | double discountPercent
+ *            | long validFrom | long validUntil | long maxRedemptions | long maxRedemptionsPerCustomer
+ *            | int repetitionLimit | int productCount | (long productId, byte role, int quantity)*
+ *            | int detailsLength | byte[] details
+ * </pre>
+ */
+final class CouponCodec {
+
+    static final byte PUT = 1;
+    static final byte DELETE = 2;
+
+    /**
+     * Length and checksum fields that precede the part of a record counted by its length.
+     */
+    static final int PREFIX_BYTES = Integer.BYTES * 2;
+
+    private static final int OP_OFFSET = PREFIX_BYTES;
+    private static final int ID_OFFSET = OP_OFFSET + 1;
+    private static final int VERSION_OFFSET = ID_OFFSET + Long.BYTES;
+    private static final int TYPE_OFFSET = VERSION_OFFSET + Long.BYTES;
+    private static final int NULL_INT = Integer.MIN_VALUE;
+    private static final long NULL_FROM = Long.MIN_VALUE;
+    private static final long NULL_UNTIL = Long.MAX_VALUE;
+    private static final long NULL_LONG = Long.MIN_VALUE;
+    private static final CouponType[] TYPES = CouponType.values();
+    private static final CouponProductRole[] ROLES = CouponProductRole.values();
+
+    private CouponCodec() {
+    }
+
+    static ByteBuffer put(Coupon coupon) {
+        byte[] details = coupon.getDetails().getBytes(StandardCharsets.UTF_8);
+        List<CouponProduct> products = coupon.getProducts() != null ? coupon.getProducts() : List.of();
+        int length = 1 + Long.BYTES + Long.BYTES + 1 + Double.BYTES * 2 + Long.BYTES * 4 + Integer.BYTES * 2
+                + products.size() * (Long.BYTES + 1 + Integer.BYTES) + Integer.BYTES + details.length;
+
+        ByteBuffer record = ByteBuffer.allocate(PREFIX_BYTES + length);
+        record.putInt(length).putInt(0);
+        record.put(PUT).putLong(coupon.getId()).putLong(coupon.getVersion());
+        record.put((byte) coupon.getType().ordinal());
+        record.putDouble(coupon.getThreshold() != null ? coupon.getThreshold() : Double.NaN);
+        record.putDouble(coupon.getDiscountPercent() != null ? coupon.getDiscountPercent() : Double.NaN);
+        record.putLong(coupon.getValidFrom() != null ? coupon.getValidFrom().toEpochMilli() : NULL_FROM);
+        record.putLong(coupon.getValidUntil() != null ? coupon.getValidUntil().toEpochMilli() : NULL_UNTIL);
+        record.putLong(coupon.getMaxRedemptions() != null ? coupon.getMaxRedemptions() : NULL_LONG);
+        record.putLong(coupon.getMaxRedemptionsPerCustomer() != null ? coupon.getMaxRedemptionsPerCustomer() : NULL_LONG);
+        record.putInt(coupon.getRepetitionLimit() != null ? coupon.getRepetitionLimit() : NULL_INT);
+        record.putInt(products.size());
+        for (CouponProduct product : products) {
+            record.putLong(product.getProductId());
+            record.put((byte) product.getRole().ordinal());
+            record.putInt(product.getQuantity() != null ? product.getQuantity() : NULL_INT);
+        }
+        record.putInt(details.length).put(details);
+        return seal(record);
+    }
+
+    static ByteBuffer delete(long id) {
+        int length = 1 + Long.BYTES;
+        ByteBuffer record = ByteBuffer.allocate(PREFIX_BYTES + length);
+        record.putInt(length).putInt(0).put(DELETE).putLong(id);
+        return seal(record);
+    }
+
+    /**
+     * Total size of the record at {@code offset}, or {@code -1} if it is incomplete or fails its
+     * checksum, given that the log ends at {@code end}.
+     */
+    static int validSize(ByteBuffer log, long offset, long end) {
+        if (offset + PREFIX_BYTES > end) {
+            return -1;
+        }
+        int length = log.getInt((int) offset);
+        if (length <= 0 || offset + PREFIX_BYTES + length > end) {
+            return -1;
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(log.slice((int) offset + PREFIX_BYTES, length));
+        return (int) crc.getValue() == log.getInt((int) offset + Integer.BYTES) ? PREFIX_BYTES + length : -1;
+    }
+
+    static int size(ByteBuffer log, long offset) {
+        return PREFIX_BYTES + log.getInt((int) offset);
+    }
+
+    static byte op(ByteBuffer log, long offset) {
+        return log.get((int) offset + OP_OFFSET);
+    }
+
+    static long id(ByteBuffer log, long offset) {
+        return log.getLong((int) offset + ID_OFFSET);
+    }
+
+    static long version(ByteBuffer log, long offset) {
+        return log.getLong((int) offset + VERSION_OFFSET);
+    }
+
+    static CouponType type(ByteBuffer log, long offset) {
+        return TYPES[log.get((int) offset + TYPE_OFFSET)];
+    }
+
+    static Coupon decode(ByteBuffer log, long offset) {
+        int position = (int) offset + TYPE_OFFSET + 1;
+        double threshold = log.getDouble(position);
+        double discountPercent = log.getDouble(position + Double.BYTES);
+        position += Double.BYTES * 2;
+        long validFrom = log.getLong(position);
+        long validUntil = log.getLong(position + Long.BYTES);
+        long maxRedemptions = log.getLong(position + Long.BYTES * 2);
+        long maxRedemptionsPerCustomer = log.getLong(position + Long.BYTES * 3);
+        position += Long.BYTES * 4;
+        int repetitionLimit = log.getInt(position);
+        int productCount = log.getInt(position + Integer.BYTES);
+        position += Integer.BYTES * 2;
+
+        List<CouponProduct> products = new ArrayList<>(productCount);
+        for (int i = 0; i < productCount; i++) {
+            int quantity = log.getInt(position + Long.BYTES + 1);
+            products.add(CouponProduct.builder()
+                    .productId(log.getLong(position))
+                    .role(ROLES[log.get(position + Long.BYTES)])
+                    .quantity(quantity != NULL_INT ? quantity : null)
+                    .build());
+            position += Long.BYTES + 1 + Integer.BYTES;
+        }
+
+        byte[] details = new byte[log.getInt(position)];
+        log.get(position + Integer.BYTES, details);
+
+        return Coupon.builder()
+                .id(id(log, offset))
+                .version(version(log, offset))
+                .type(type(log, offset))
+                .details(new String(details, StandardCharsets.UTF_8))
+                .threshold(Double.isNaN(threshold) ? null : threshold)
+                .discountPercent(Double.isNaN(discountPercent) ? null : discountPercent)
+                .repetitionLimit(repetitionLimit != NULL_INT ? repetitionLimit : null)
+                .validFrom(validFrom != NULL_FROM ? Instant.ofEpochMilli(validFrom) : null)
+                .validUntil(validUntil != NULL_UNTIL ? Instant.ofEpochMilli(validUntil) : null)
+                .maxRedemptions(maxRedemptions != NULL_LONG ? maxRedemptions : null)
+                .maxRedemptionsPerCustomer(maxRedemptionsPerCustomer != NULL_LONG ? maxRedemptionsPerCustomer : null)
+                .products(products)
+                .build();
+    }
+
+    private static ByteBuffer seal(ByteBuffer record) {
+        CRC32C crc = new CRC32C();
+        crc.update(record.slice(PREFIX_BYTES, record.capacity() - PREFIX_BYTES));
+        record.putInt(Integer.BYTES, (int) crc.getValue());
+        return record.flip();
+    }
+}
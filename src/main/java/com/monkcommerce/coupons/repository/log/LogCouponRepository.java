@@ -0,0 +1,589 @@
+package com.monkcommerce.coupons.repository.log;
+
+import com.monkcommerce.coupons.model.Coupon;
+import com.monkcommerce.coupons.model.CouponProductRole;
+import com.monkcommerce.coupons.model.CouponType;
+import com.monkcommerce.coupons.repository.CouponRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Embedded coupon store: an append-only log of coupon mutations plus a memory-mapped id-to-offset
+ * {@link OffsetIndex}. Point reads are one index probe and one decode from the mapped log, with no
+ * locking. Writes are serialized, appended and, by default, fsynced before they return.
+ *
+ * <p>Inside a transaction, writes are checked against the log when they are made but only appended
+ * as the transaction commits, so a rollback leaves the log untouched. Reads within that transaction
+ * see the committed log, not its own pending writes.
+ *
+ * <p>On startup the log is scanned to rebuild the ordered id set; records past the point the index
+ * was last cleanly closed at are checksum-verified, and a torn tail left by a crash is truncated.
+ * Superseded and deleted records are dropped by periodic compaction, which rewrites the live
+ * records to a new log and swaps it in atomically.
+ *
+ * <p>The log is mapped as a single buffer, so it is limited to 2 GB. The mapping is grown ahead of the
+ * log in chunks rather than per append; the zeroed space past the last record is trimmed on close
+ * and read as the end of the log on recovery.
+ */
+@Slf4j
+@Repository
+@Profile("logstore")
+public class LogCouponRepository implements CouponRepository {
+
+    private static final String LOG_FILE = "coupons.log";
+    private static final String INDEX_FILE = "coupons.idx";
+    private static final String COMPACT_SUFFIX = ".compact";
+    private static final int LOG_MAGIC = 0x43504e4c;
+    private static final int LOG_FORMAT_VERSION = 3;
+    private static final int LOG_HEADER_BYTES = Integer.BYTES * 2;
+    private static final long MAP_CHUNK_BYTES = 1L << 20;
+    private static final long ABSENT = -1L;
+
+    @Value("${coupons.logstore.directory:data/coupons}")
+    private String directory;
+
+    @Value("${coupons.logstore.fsync:true}")
+    private boolean fsync;
+
+    @Value("${coupons.logstore.compaction-interval:10m}")
+    private Duration compactionInterval;
+
+    @Value("${coupons.logstore.compaction-garbage-ratio:0.5}")
+    private double compactionGarbageRatio;
+
+    private final ConcurrentSkipListMap<Long, CouponType> ids = new ConcurrentSkipListMap<>();
+    private volatile Segment segment;
+    private long nextId = 1;
+    private long liveBytes;
+    private ScheduledExecutorService compactor;
+
+    /**
+     * One log file and its index. Compaction replaces the whole segment; readers holding the old
+     * one keep reading its mappings, which stay valid after the files are replaced.
+     */
+    private static final class Segment {
+        private final FileChannel channel;
+        private final OffsetIndex index;
+        private volatile MappedByteBuffer view;
+        private long end;
+
+        private Segment(FileChannel channel, OffsetIndex index, long end) throws IOException {
+            this.channel = channel;
+            this.index = index;
+            this.end = end;
+            this.view = map(channel, mappedSize(end));
+        }
+    }
+
+    /**
+     * One staged mutation: a put when {@code type} is set, otherwise a delete. {@code expectedVersion}
+     * is the version the coupon had when the write was made, or {@link #ABSENT} for a new coupon.
+     */
+    private record Write(long id, CouponType type, long expectedVersion, ByteBuffer record) {
+
+        boolean isDelete() {
+            return type == null;
+        }
+    }
+
+    /**
+     * The writes of one transaction, bound to it as a resource and appended just before it commits.
+     */
+    private final class Staged implements TransactionSynchronization {
+        private final List<Write> writes = new ArrayList<>();
+        private final Map<Long, Long> versions = new HashMap<>();
+
+        private void add(Write write) {
+            writes.add(write);
+            versions.put(write.id(), write.isDelete() ? ABSENT : write.expectedVersion() + 1);
+        }
+
+        @Override
+        public void suspend() {
+            TransactionSynchronizationManager.unbindResource(LogCouponRepository.this);
+        }
+
+        @Override
+        public void resume() {
+            TransactionSynchronizationManager.bindResource(LogCouponRepository.this, this);
+        }
+
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            if (!writes.isEmpty()) {
+                apply(writes);
+            }
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(LogCouponRepository.this);
+        }
+    }
+
+    @PostConstruct
+    public synchronized void open() throws IOException {
+        Path dir = Path.of(directory);
+        Files.createDirectories(dir);
+        Files.deleteIfExists(dir.resolve(LOG_FILE + COMPACT_SUFFIX));
+        Files.deleteIfExists(dir.resolve(INDEX_FILE + COMPACT_SUFFIX));
+        segment = recover(dir.resolve(LOG_FILE), dir.resolve(INDEX_FILE));
+        log.info("Opened coupon log {} with {} coupons ({} of {} bytes live)",
+                dir.resolve(LOG_FILE), ids.size(), liveBytes, segment.end - LOG_HEADER_BYTES);
+
+        if (!compactionInterval.isZero() && !compactionInterval.isNegative()) {
+            compactor = Executors.newSingleThreadScheduledExecutor(
+                    Thread.ofPlatform().daemon().name("coupon-log-compaction").factory());
+            long interval = compactionInterval.toMillis();
+            compactor.scheduleWithFixedDelay(this::compactIfWorthwhile, interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        if (compactor != null) {
+            compactor.shutdownNow();
+        }
+        synchronized (this) {
+            Segment current = segment;
+            current.channel.truncate(current.end);
+            current.channel.force(true);
+            current.index.close(current.end);
+            current.channel.close();
+        }
+    }
+
+    @Override
+    public <S extends Coupon> S save(S coupon) {
+        return saveAll(List.of(coupon)).get(0);
+    }
+
+    @Override
+    public <S extends Coupon> S saveAndFlush(S coupon) {
+        return save(coupon);
+    }
+
+    @Override
+    public synchronized <S extends Coupon> List<S> saveAll(Iterable<S> coupons) {
+        Segment current = segment;
+        Staged staged = staged();
+        List<S> saved = new ArrayList<>();
+        List<Write> writes = new ArrayList<>();
+        for (S coupon : coupons) {
+            long expected = ABSENT;
+            if (coupon.getId() == null) {
+                coupon.setId(nextId++);
+                coupon.setVersion(0L);
+            } else {
+                long stored = version(current, staged, coupon.getId());
+                if (stored == ABSENT) {
+                    throw new OptimisticLockingFailureException("Coupon " + coupon.getId() + " does not exist");
+                }
+                if (coupon.getVersion() == null || coupon.getVersion() != stored) {
+                    throw new OptimisticLockingFailureException("Coupon " + coupon.getId() + " is at version "
+                            + stored + ", not " + coupon.getVersion());
+                }
+                expected = stored;
+                coupon.setVersion(stored + 1);
+            }
+            saved.add(coupon);
+            writes.add(new Write(coupon.getId(), coupon.getType(), expected, CouponCodec.put(coupon)));
+        }
+        write(staged, writes);
+        return saved;
+    }
+
+    @Override
+    public synchronized void delete(Coupon coupon) {
+        if (coupon.getId() == null) {
+            return;
+        }
+        Staged staged = staged();
+        long stored = version(segment, staged, coupon.getId());
+        if (stored != ABSENT) {
+            write(staged, List.of(new Write(coupon.getId(), null, stored, CouponCodec.delete(coupon.getId()))));
+        }
+    }
+
+    @Override
+    public Optional<Coupon> findById(Long id) {
+        Segment current = segment;
+        long offset = current.index.get(id);
+        return offset < 0 ? Optional.empty() : Optional.of(CouponCodec.decode(current.view, offset));
+    }
+
+    @Override
+    public long count() {
+        return ids.size();
+    }
+
+    /**
+     * Full scan: the log keeps no secondary indexes, and this query only serves database-only
+     * catalog mode.
+     */
+    @Override
+    public List<Coupon> findCandidates(Collection<Long> productIds, double cartTotal) {
+        Set<Long> products = new HashSet<>(productIds);
+        try (Stream<Coupon> coupons = streamAllByOrderByIdAsc()) {
+            return coupons.filter(coupon -> isCandidate(coupon, products, cartTotal)).toList();
+        }
+    }
+
+    @Override
+    public List<Coupon> findByTypeAndThresholdLessThanOrderByIdAsc(CouponType type, Double threshold) {
+        try (Stream<Coupon> coupons = streamByTypeOrderByIdAsc(type)) {
+            return coupons.filter(coupon -> coupon.getThreshold() != null && coupon.getThreshold() < threshold)
+                    .toList();
+        }
+    }
+
+    @Override
+    public List<Coupon> findAllByOrderByIdAsc() {
+        try (Stream<Coupon> coupons = streamAllByOrderByIdAsc()) {
+            return coupons.toList();
+        }
+    }
+
+    @Override
+    public List<Coupon> findByIdGreaterThanOrderByIdAsc(Long after, Limit limit) {
+        return load(ids.tailMap(after, false).keySet().stream(), limit);
+    }
+
+    @Override
+    public List<Coupon> findByTypeAndIdGreaterThanOrderByIdAsc(CouponType type, Long after, Limit limit) {
+        return load(ids.tailMap(after, false).entrySet().stream()
+                .filter(entry -> entry.getValue() == type)
+                .map(Map.Entry::getKey), limit);
+    }
+
+    @Override
+    public Stream<Coupon> streamAllByOrderByIdAsc() {
+        return ids.keySet().stream().map(this::findById).flatMap(Optional::stream);
+    }
+
+    @Override
+    public Stream<Coupon> streamByTypeOrderByIdAsc(CouponType type) {
+        return ids.entrySet().stream()
+                .filter(entry -> entry.getValue() == type)
+                .map(entry -> findById(entry.getKey()))
+                .flatMap(Optional::stream);
+    }
+
+    /**
+     * Rewrites the live records into a new log and index and swaps them in.
+     */
+    public synchronized void compact() throws IOException {
+        Segment old = segment;
+        Path dir = Path.of(directory);
+        Path compactLog = dir.resolve(LOG_FILE + COMPACT_SUFFIX);
+        Path compactIndex = dir.resolve(INDEX_FILE + COMPACT_SUFFIX);
+
+        FileChannel channel = FileChannel.open(compactLog, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        OffsetIndex index = OffsetIndex.create(compactIndex);
+        writeHeader(channel);
+        long position = LOG_HEADER_BYTES;
+        for (Long id : ids.keySet()) {
+            long offset = old.index.get(id);
+            int size = CouponCodec.size(old.view, offset);
+            writeFully(channel, old.view.slice((int) offset, size), position);
+            index.put(id, position);
+            position += size;
+        }
+        long lastId = nextId - 1;
+        if (lastId > 0 && !ids.containsKey(lastId)) {
+            // Keeps the highest id ever assigned in the log, so recovery never hands it out again.
+            position += writeFully(channel, CouponCodec.delete(lastId), position);
+        }
+        channel.force(true);
+
+        Files.move(compactLog, dir.resolve(LOG_FILE), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        Files.move(compactIndex, dir.resolve(INDEX_FILE), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        forceDirectory(dir);
+
+        long before = old.end;
+        segment = new Segment(channel, index, position);
+        liveBytes = liveBytes(segment.view, index);
+        old.index.close();
+        old.channel.close();
+        log.info("Compacted coupon log from {} to {} bytes", before, position);
+    }
+
+    synchronized long end() {
+        return segment.end;
+    }
+
+    synchronized double garbageRatio() {
+        long total = segment.end - LOG_HEADER_BYTES;
+        return total == 0 ? 0 : 1 - (double) liveBytes / total;
+    }
+
+    private void compactIfWorthwhile() {
+        try {
+            if (garbageRatio() >= compactionGarbageRatio) {
+                compact();
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Coupon log compaction failed", e);
+        }
+    }
+
+    private Segment recover(Path logFile, Path indexFile) throws IOException {
+        FileChannel channel = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        if (channel.size() == 0) {
+            writeHeader(channel);
+            channel.force(true);
+        }
+        long size = channel.size();
+        MappedByteBuffer view = map(channel, size);
+        if (size < LOG_HEADER_BYTES || view.getInt(0) != LOG_MAGIC || view.getInt(Integer.BYTES) != LOG_FORMAT_VERSION) {
+            channel.close();
+            throw new IOException("Not a coupon log: " + logFile);
+        }
+
+        OffsetIndex index = OffsetIndex.openIfClean(indexFile);
+        long trustedEnd = LOG_HEADER_BYTES;
+        if (index != null && index.indexedEnd() >= LOG_HEADER_BYTES && index.indexedEnd() <= size) {
+            trustedEnd = index.indexedEnd();
+        } else {
+            if (index != null) {
+                index.close();
+            }
+            log.info("Rebuilding coupon log index {} from the log", indexFile);
+            index = OffsetIndex.create(indexFile);
+        }
+
+        long position = LOG_HEADER_BYTES;
+        while (position < size) {
+            int recordSize = position < trustedEnd
+                    ? CouponCodec.size(view, position)
+                    : CouponCodec.validSize(view, position, size);
+            if (recordSize < 0) {
+                if (position + Integer.BYTES > size || view.getInt((int) position) != 0) {
+                    log.warn("Truncating torn coupon log tail at {} ({} bytes)", position, size - position);
+                }
+                channel.truncate(position);
+                channel.force(true);
+                break;
+            }
+
+            long id = CouponCodec.id(view, position);
+            if (CouponCodec.op(view, position) == CouponCodec.PUT) {
+                ids.put(id, CouponCodec.type(view, position));
+                if (position >= trustedEnd) {
+                    index.put(id, position);
+                }
+            } else {
+                ids.remove(id);
+                if (position >= trustedEnd) {
+                    index.remove(id);
+                }
+            }
+            nextId = Math.max(nextId, id + 1);
+            position += recordSize;
+        }
+
+        liveBytes = liveBytes(view, index);
+        return new Segment(channel, index, position);
+    }
+
+    private long liveBytes(ByteBuffer view, OffsetIndex index) {
+        long bytes = 0;
+        for (Long id : ids.keySet()) {
+            bytes += CouponCodec.size(view, index.get(id));
+        }
+        return bytes;
+    }
+
+    /**
+     * The transaction's staged writes, or {@code null} outside a transaction.
+     */
+    private Staged staged() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return null;
+        }
+        Staged staged = (Staged) TransactionSynchronizationManager.getResource(this);
+        if (staged == null) {
+            staged = new Staged();
+            TransactionSynchronizationManager.bindResource(this, staged);
+            TransactionSynchronizationManager.registerSynchronization(staged);
+        }
+        return staged;
+    }
+
+    private long version(Segment current, Staged staged, long id) {
+        if (staged != null && staged.versions.containsKey(id)) {
+            return staged.versions.get(id);
+        }
+        long offset = current.index.get(id);
+        return offset < 0 ? ABSENT : CouponCodec.version(current.view, offset);
+    }
+
+    private void write(Staged staged, List<Write> writes) {
+        if (staged == null) {
+            apply(writes);
+        } else {
+            writes.forEach(staged::add);
+        }
+    }
+
+    /**
+     * Appends {@code writes}, first checking each still expects the version in the log: another
+     * writer may have committed the same coupon since a transaction staged it.
+     */
+    private synchronized void apply(List<Write> writes) {
+        Segment current = segment;
+        Map<Long, Long> versions = new HashMap<>();
+        List<Write> applied = new ArrayList<>();
+        for (Write write : writes) {
+            Long pending = versions.get(write.id());
+            long stored = pending != null ? pending : version(current, null, write.id());
+            if (write.isDelete() && stored == ABSENT) {
+                continue;
+            }
+            if (stored != write.expectedVersion()) {
+                throw new OptimisticLockingFailureException("Coupon " + write.id()
+                        + " was changed or deleted before the transaction writing it committed");
+            }
+            versions.put(write.id(), write.isDelete() ? ABSENT : stored + 1);
+            applied.add(write);
+        }
+
+        long[] offsets = append(current, applied.stream().map(Write::record).toList());
+        for (int i = 0; i < applied.size(); i++) {
+            Write write = applied.get(i);
+            long previous = current.index.get(write.id());
+            if (previous >= 0) {
+                liveBytes -= CouponCodec.size(current.view, previous);
+            }
+            if (write.isDelete()) {
+                current.index.remove(write.id());
+                ids.remove(write.id());
+            } else {
+                liveBytes += write.record().limit();
+                put(current, write.id(), offsets[i]);
+                ids.put(write.id(), write.type());
+            }
+        }
+    }
+
+    private long[] append(Segment current, List<ByteBuffer> records) {
+        long[] offsets = new long[records.size()];
+        long position = current.end;
+        try {
+            for (int i = 0; i < records.size(); i++) {
+                offsets[i] = position;
+                position += writeFully(current.channel, records.get(i), position);
+            }
+            if (fsync) {
+                current.channel.force(false);
+            }
+            if (position > current.view.capacity()) {
+                current.view = map(current.channel, mappedSize(position));
+            }
+            current.end = position;
+        } catch (IOException e) {
+            throw new DataAccessResourceFailureException("Could not append to the coupon log", e);
+        }
+        return offsets;
+    }
+
+    private void put(Segment current, long id, long offset) {
+        try {
+            current.index.put(id, offset);
+        } catch (IOException e) {
+            throw new DataAccessResourceFailureException("Could not grow the coupon log index", e);
+        }
+    }
+
+    private List<Coupon> load(Stream<Long> couponIds, Limit limit) {
+        return couponIds
+                .map(this::findById)
+                .flatMap(Optional::stream)
+                .limit(limit.isLimited() ? limit.max() : Long.MAX_VALUE)
+                .toList();
+    }
+
+    private static boolean isCandidate(Coupon coupon, Set<Long> productIds, double cartTotal) {
+        if (coupon.getType() == CouponType.CART_WISE) {
+            return coupon.getThreshold() != null && coupon.getThreshold() < cartTotal;
+        }
+        if (coupon.getType() == CouponType.PRODUCT_SET) {
+            return true;
+        }
+        return coupon.getProducts().stream().anyMatch(product ->
+                (product.getRole() == CouponProductRole.TARGET || product.getRole() == CouponProductRole.BUY)
+                        && productIds.contains(product.getProductId()));
+    }
+
+    private static void writeHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(LOG_HEADER_BYTES).putInt(LOG_MAGIC).putInt(LOG_FORMAT_VERSION).flip();
+        writeFully(channel, header, 0);
+    }
+
+    private static int writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        int written = 0;
+        while (buffer.hasRemaining()) {
+            written += channel.write(buffer, position + written);
+        }
+        return written;
+    }
+
+    /**
+     * Room for a log ending at {@code end} plus as much again, at least one chunk, within the 2 GB a
+     * single mapping can cover.
+     */
+    private static long mappedSize(long end) {
+        return Math.max(end, Math.min(Math.max(2 * end, MAP_CHUNK_BYTES), Integer.MAX_VALUE));
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, long size) throws IOException {
+        if (channel.size() < size) {
+            writeFully(channel, ByteBuffer.allocate(1), size - 1);
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+    }
+
+    private static void forceDirectory(Path dir) {
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            log.debug("Could not fsync directory {}", dir, e);
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package com.monkcommerce.coupons.repository.log;
+
+import com.monkcommerce.coupons.rule.LongHashing;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Memory-mapped, open-addressing map from coupon id to log offset. Reads are lock-free optimistic
+ * reads; writes are serialized by the owning repository.
+ *
+ * <p>The header records how far into the log the table is known to be complete and whether it was
+ * closed cleanly. While open the table is marked dirty, so after a crash it is rebuilt from the log
+ * instead of trusted.
+ */
+final class OffsetIndex implements AutoCloseable {
+
+    private static final int MAGIC = 0x43504e49;
+    private static final int HEADER_BYTES = 32;
+    private static final int SLOT_BYTES = Long.BYTES * 2;
+    private static final int MIN_CAPACITY = 1024;
+    private static final long ABSENT = -1L;
+
+    private final FileChannel channel;
+    private final StampedLock lock = new StampedLock();
+    private volatile Table table;
+    private int used;
+
+    private record Table(MappedByteBuffer buffer, int mask) {
+    }
+
+    private OffsetIndex(FileChannel channel, Table table, int used) {
+        this.channel = channel;
+        this.table = table;
+        this.used = used;
+    }
+
+    /**
+     * Opens the index at {@code file}, returning {@code null} if it is missing, damaged or was not
+     * closed cleanly; the caller then rebuilds it with {@link #create(Path)}.
+     */
+    static OffsetIndex openIfClean(Path file) throws IOException {
+        if (!file.toFile().exists()) {
+            return null;
+        }
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = channel.size();
+        if (size < HEADER_BYTES) {
+            channel.close();
+            return null;
+        }
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        int capacity = buffer.getInt(16);
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != 1 || Integer.bitCount(capacity) != 1
+                || size != HEADER_BYTES + (long) capacity * SLOT_BYTES) {
+            channel.close();
+            return null;
+        }
+        OffsetIndex index = new OffsetIndex(channel, new Table(buffer, capacity - 1), buffer.getInt(20));
+        index.markDirty();
+        return index;
+    }
+
+    static OffsetIndex create(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        OffsetIndex index = new OffsetIndex(channel, allocate(channel, MIN_CAPACITY), 0);
+        index.markDirty();
+        return index;
+    }
+
+    /**
+     * Log position up to which this index was complete when it was last closed.
+     */
+    long indexedEnd() {
+        return table.buffer().getLong(8);
+    }
+
+    long get(long id) {
+        long stamp = lock.tryOptimisticRead();
+        long offset = find(table, id);
+        if (lock.validate(stamp)) {
+            return offset;
+        }
+        stamp = lock.readLock();
+        try {
+            return find(table, id);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    void put(long id, long offset) throws IOException {
+        long stamp = lock.writeLock();
+        try {
+            if ((used + 1) * 2L > table.mask() + 1L) {
+                grow();
+            }
+            Table current = table;
+            int slot = slot(current, id);
+            int position = HEADER_BYTES + slot * SLOT_BYTES;
+            if (current.buffer().getLong(position) == 0) {
+                used++;
+                current.buffer().putInt(20, used);
+            }
+            current.buffer().putLong(position + Long.BYTES, offset);
+            current.buffer().putLong(position, id);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Marks {@code id} absent. Its slot stays occupied so probe chains are not broken; ids are never
+     * reused, and the slot is dropped the next time the table grows or the log is compacted.
+     */
+    void remove(long id) {
+        long stamp = lock.writeLock();
+        try {
+            Table current = table;
+            int slot = slot(current, id);
+            int position = HEADER_BYTES + slot * SLOT_BYTES;
+            if (current.buffer().getLong(position) == id) {
+                current.buffer().putLong(position + Long.BYTES, ABSENT);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Closes the index without marking it clean, for when the log it describes is being replaced.
+     */
+    @Override
+    public void close() throws IOException {
+        close(-1);
+    }
+
+    /**
+     * Records that the index covers the log up to {@code logEnd}, marks it clean and closes it.
+     */
+    void close(long logEnd) throws IOException {
+        long stamp = lock.writeLock();
+        try {
+            MappedByteBuffer buffer = table.buffer();
+            if (logEnd >= 0) {
+                buffer.putLong(8, logEnd);
+                buffer.putInt(4, 1);
+            }
+            buffer.force();
+            channel.close();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private void markDirty() {
+        MappedByteBuffer buffer = table.buffer();
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, 0);
+        buffer.force();
+    }
+
+    private void grow() throws IOException {
+        Table old = table;
+        int oldCapacity = old.mask() + 1;
+        long[] ids = new long[oldCapacity];
+        long[] offsets = new long[oldCapacity];
+        int live = 0;
+        for (int slot = 0; slot < oldCapacity; slot++) {
+            int position = HEADER_BYTES + slot * SLOT_BYTES;
+            long id = old.buffer().getLong(position);
+            long offset = old.buffer().getLong(position + Long.BYTES);
+            if (id != 0 && offset != ABSENT) {
+                ids[live] = id;
+                offsets[live++] = offset;
+            }
+        }
+
+        int capacity = Math.max(oldCapacity, Integer.highestOneBit(Math.max(1, live * 4 - 1)) << 1);
+        long indexedEnd = old.buffer().getLong(8);
+        Table grown = allocate(channel, capacity);
+        grown.buffer().putInt(0, MAGIC);
+        grown.buffer().putLong(8, indexedEnd);
+        for (int i = 0; i < live; i++) {
+            int position = HEADER_BYTES + slot(grown, ids[i]) * SLOT_BYTES;
+            grown.buffer().putLong(position + Long.BYTES, offsets[i]);
+            grown.buffer().putLong(position, ids[i]);
+        }
+        used = live;
+        grown.buffer().putInt(20, used);
+        table = grown;
+    }
+
+    /**
+     * Maps a table of {@code capacity} empty slots over the start of the file. The file only ever
+     * grows, so mappings still held by optimistic readers stay valid; those readers fail validation
+     * and retry.
+     */
+    private static Table allocate(FileChannel channel, int capacity) throws IOException {
+        long size = HEADER_BYTES + (long) capacity * SLOT_BYTES;
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        for (int position = HEADER_BYTES; position < size; position += Long.BYTES) {
+            buffer.putLong(position, 0L);
+        }
+        buffer.putInt(16, capacity);
+        return new Table(buffer, capacity - 1);
+    }
+
+    private static long find(Table table, long id) {
+        int slot = LongHashing.hash(id) & table.mask();
+        while (true) {
+            int position = HEADER_BYTES + slot * SLOT_BYTES;
+            long key = table.buffer().getLong(position);
+            if (key == id) {
+                return table.buffer().getLong(position + Long.BYTES);
+            }
+            if (key == 0) {
+                return ABSENT;
+            }
+            slot = (slot + 1) & table.mask();
+        }
+    }
+
+    private static int slot(Table table, long id) {
+        int slot = LongHashing.hash(id) & table.mask();
+        while (true) {
+            long key = table.buffer().getLong(HEADER_BYTES + slot * SLOT_BYTES);
+            if (key == id || key == 0) {
+                return slot;
+            }
+            slot = (slot + 1) & table.mask();
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.monkcommerce.coupons.rule;
+
+import com.monkcommerce.coupons.model.CouponType;
+
+/**
+ * Buy/get product ids and quantities are kept in parallel primitive arrays; the arrays are owned
+ * by the rule and must not be modified after compilation.
+ */
+public record BxGyRule(long couponId,
+                       long version,
+                       long[] buyProductIds,
+                       int[] buyQuantities,
+                       long[] getProductIds,
+                       int[] getQuantities,
+                       int repetitionLimit,
+                       int buyQuantityNeeded,
+                       int getQuantityPerDeal) implements CouponRule {
+
+    @Override
+    public CouponType type() {
+        return CouponType.BXGY;
+    }
+}
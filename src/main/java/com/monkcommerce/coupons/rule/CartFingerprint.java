@@ -0,0 +1,83 @@
+package com.monkcommerce.coupons.rule;
+
+import com.monkcommerce.coupons.dto.Cart;
+import com.monkcommerce.coupons.dto.CartItem;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Identity of a cart for evaluation purposes. The canonical form ({@link #of(CartIndex)}) holds the
+ * cart total plus every product's lines, products in ascending id order and each product's lines in
+ * cart order; two carts with equal canonical fingerprints get identical evaluation results, however
+ * their products are interleaved. The ordered form ({@link #ordered(Cart)}) keeps every line in cart
+ * order, for results that are reported per line.
+ */
+public final class CartFingerprint {
+
+    private final long totalBits;
+    private final long[] lines;
+    private final int hash;
+
+    private CartFingerprint(long totalBits, long[] lines) {
+        this.totalBits = totalBits;
+        this.lines = lines;
+
+        long h = totalBits;
+        for (long value : lines) {
+            h = h * 0x9e3779b97f4a7c15L + value;
+        }
+        this.hash = LongHashing.hash(h);
+    }
+
+    public static CartFingerprint of(CartIndex cart) {
+        long[] products = new long[cart.productCount()];
+        for (int i = 0; i < products.length; i++) {
+            products[i] = cart.productAt(i);
+        }
+        Arrays.sort(products);
+
+        long[] lines = new long[cart.lineCount() * 3];
+        int size = 0;
+        for (long productId : products) {
+            for (int line = cart.firstLine(productId); line >= 0; line = cart.nextLine(line)) {
+                lines[size++] = productId;
+                lines[size++] = cart.lineQuantity(line);
+                lines[size++] = Double.doubleToLongBits(cart.linePrice(line));
+            }
+        }
+
+        return new CartFingerprint(Double.doubleToLongBits(cart.total()),
+                size == lines.length ? lines : Arrays.copyOf(lines, size));
+    }
+
+    public static CartFingerprint ordered(Cart cart) {
+        List<CartItem> items = cart.getItems();
+        long[] lines = new long[items.size() * 3];
+        double total = 0;
+        int size = 0;
+        for (CartItem item : items) {
+            lines[size++] = item.getProductId() != null ? item.getProductId() : 0L;
+            lines[size++] = ((long) item.getQuantity() << 1) | (item.getProductId() == null ? 1 : 0);
+            lines[size++] = Double.doubleToLongBits(item.getPrice());
+            total += item.getPrice() * item.getQuantity();
+        }
+        return new CartFingerprint(Double.doubleToLongBits(total), lines);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof CartFingerprint other)) {
+            return false;
+        }
+        return hash == other.hash && totalBits == other.totalBits && Arrays.equals(lines, other.lines);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+}
@@ -0,0 +1,383 @@
+package com.monkcommerce.coupons.rule;
+
+import com.monkcommerce.coupons.dto.Cart;
+import com.monkcommerce.coupons.dto.CartItem;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Primitive view of a cart. Lines are aggregated per product in a long-keyed open-addressing
+ * table, and the lines of each product stay reachable in cart order through an index chain.
+ * Lookups allocate nothing.
+ *
+ * <p>{@link #of(Cart)} builds a read-only index once per request. An index started with
+ * {@link #empty()} can instead be edited line by line, and each edit only touches the aggregates
+ * of the products it changes; cart sessions keep one per cart. The total is summed over the lines
+ * again on each edit, in cart order, so it matches a freshly built index exactly.
+ */
+public final class CartIndex {
+
+    private static final int NO_LINE = -1;
+    private static final int MIN_CAPACITY = 8;
+
+    private int[] lineQuantities;
+    private double[] linePrices;
+    private int[] nextLines;
+    private int lineCount;
+
+    private long[] keys;
+    private int[] firstLines;
+    private int[] quantities;
+    private double[] values;
+    private int mask;
+
+    private long[] productIds;
+    private int productCount;
+    private double total;
+
+    // Editable indexes only: each line's product and order, the lines at each cart position, and
+    // the slots freed by removals, chained through nextLines.
+    private long[] lineProducts;
+    private long[] lineOrders;
+    private int[] cartLines;
+    private int usedLines;
+    private int freeLine = NO_LINE;
+    private long nextOrder;
+
+    private CartIndex() {
+        this.lineQuantities = new int[MIN_CAPACITY];
+        this.linePrices = new double[MIN_CAPACITY];
+        this.nextLines = new int[MIN_CAPACITY];
+        this.lineProducts = new long[MIN_CAPACITY];
+        this.lineOrders = new long[MIN_CAPACITY];
+        this.cartLines = new int[MIN_CAPACITY];
+        this.productIds = new long[MIN_CAPACITY];
+        allocateTable(MIN_CAPACITY * 2);
+    }
+
+    private CartIndex(List<CartItem> items) {
+        int lineCount = items.size();
+        this.lineCount = lineCount;
+        this.lineQuantities = new int[lineCount];
+        this.linePrices = new double[lineCount];
+        this.nextLines = new int[lineCount];
+
+        int capacity = Integer.highestOneBit(Math.max(4, lineCount * 2 - 1)) << 1;
+        this.keys = new long[capacity];
+        this.firstLines = new int[capacity];
+        this.quantities = new int[capacity];
+        this.values = new double[capacity];
+        this.mask = capacity - 1;
+        Arrays.fill(firstLines, NO_LINE);
+
+        int[] lastLines = new int[capacity];
+        long[] distinct = new long[lineCount];
+        int products = 0;
+        double cartTotal = 0;
+
+        for (int line = 0; line < lineCount; line++) {
+            CartItem item = items.get(line);
+            lineQuantities[line] = item.getQuantity();
+            linePrices[line] = item.getPrice();
+            nextLines[line] = NO_LINE;
+
+            double lineValue = item.getPrice() * item.getQuantity();
+            cartTotal += lineValue;
+
+            if (item.getProductId() == null) {
+                continue;
+            }
+            long productId = item.getProductId();
+            int slot = probe(productId);
+            if (firstLines[slot] == NO_LINE) {
+                keys[slot] = productId;
+                firstLines[slot] = line;
+                distinct[products++] = productId;
+            } else {
+                nextLines[lastLines[slot]] = line;
+            }
+            lastLines[slot] = line;
+            quantities[slot] += item.getQuantity();
+            values[slot] += lineValue;
+        }
+
+        this.productIds = distinct;
+        this.productCount = products;
+        this.total = cartTotal;
+    }
+
+    public static CartIndex of(Cart cart) {
+        return new CartIndex(cart.getItems());
+    }
+
+    /**
+     * An empty cart that can be edited with {@link #add}, {@link #set} and {@link #remove}.
+     */
+    public static CartIndex empty() {
+        return new CartIndex();
+    }
+
+    public double total() {
+        return total;
+    }
+
+    public int lineCount() {
+        return lineCount;
+    }
+
+    public int productCount() {
+        return productCount;
+    }
+
+    /**
+     * Distinct product id at position {@code i}, in order of first appearance in the cart, or for an
+     * edited cart in the order the products were added.
+     */
+    public long productAt(int i) {
+        return productIds[i];
+    }
+
+    public boolean contains(long productId) {
+        return firstLines[probe(productId)] != NO_LINE;
+    }
+
+    public int quantity(long productId) {
+        return quantities[probe(productId)];
+    }
+
+    public double value(long productId) {
+        return values[probe(productId)];
+    }
+
+    /**
+     * First cart line holding the product, or {@code -1}. Follow with {@link #nextLine(int)}.
+     */
+    public int firstLine(long productId) {
+        return firstLines[probe(productId)];
+    }
+
+    public int nextLine(int line) {
+        return nextLines[line];
+    }
+
+    public int lineQuantity(int line) {
+        return lineQuantities[line];
+    }
+
+    public double linePrice(int line) {
+        return linePrices[line];
+    }
+
+    /**
+     * Appends a line to the end of the cart.
+     */
+    public void add(long productId, int quantity, double price) {
+        checkEditable();
+        int line = allocateLine();
+        lineOrders[line] = nextOrder++;
+        if (lineCount == cartLines.length) {
+            cartLines = Arrays.copyOf(cartLines, lineCount * 2);
+        }
+        cartLines[lineCount++] = line;
+        fill(line, productId, quantity, price);
+        link(line);
+        total = sumLines();
+    }
+
+    /**
+     * Replaces the line at cart position {@code position}.
+     */
+    public void set(int position, long productId, int quantity, double price) {
+        checkEditable();
+        int line = cartLines[Objects.checkIndex(position, lineCount)];
+        unlink(line);
+        fill(line, productId, quantity, price);
+        link(line);
+        total = sumLines();
+    }
+
+    /**
+     * Removes the line at cart position {@code position}; later lines move up one position.
+     */
+    public void remove(int position) {
+        checkEditable();
+        int line = cartLines[Objects.checkIndex(position, lineCount)];
+        unlink(line);
+        System.arraycopy(cartLines, position + 1, cartLines, position, lineCount - position - 1);
+        lineCount--;
+        nextLines[line] = freeLine;
+        freeLine = line;
+        total = sumLines();
+    }
+
+    private void checkEditable() {
+        if (cartLines == null) {
+            throw new IllegalStateException("Only an index started with CartIndex.empty() can be edited");
+        }
+    }
+
+    private int allocateLine() {
+        if (freeLine != NO_LINE) {
+            int line = freeLine;
+            freeLine = nextLines[line];
+            return line;
+        }
+        if (usedLines == lineQuantities.length) {
+            int capacity = usedLines * 2;
+            lineQuantities = Arrays.copyOf(lineQuantities, capacity);
+            linePrices = Arrays.copyOf(linePrices, capacity);
+            nextLines = Arrays.copyOf(nextLines, capacity);
+            lineProducts = Arrays.copyOf(lineProducts, capacity);
+            lineOrders = Arrays.copyOf(lineOrders, capacity);
+        }
+        return usedLines++;
+    }
+
+    private void fill(int line, long productId, int quantity, double price) {
+        lineProducts[line] = productId;
+        lineQuantities[line] = quantity;
+        linePrices[line] = price;
+    }
+
+    /**
+     * Threads the line into its product's chain by cart order, adding the product if it is new.
+     */
+    private void link(int line) {
+        long productId = lineProducts[line];
+        int slot = probe(productId);
+        if (firstLines[slot] == NO_LINE) {
+            if ((productCount + 1) * 2 > mask + 1) {
+                allocateTable((mask + 1) * 2);
+                slot = probe(productId);
+            }
+            keys[slot] = productId;
+            firstLines[slot] = line;
+            nextLines[line] = NO_LINE;
+            if (productCount == productIds.length) {
+                productIds = Arrays.copyOf(productIds, productCount * 2);
+            }
+            productIds[productCount++] = productId;
+        } else {
+            int previous = NO_LINE;
+            int next = firstLines[slot];
+            while (next != NO_LINE && lineOrders[next] < lineOrders[line]) {
+                previous = next;
+                next = nextLines[next];
+            }
+            nextLines[line] = next;
+            if (previous == NO_LINE) {
+                firstLines[slot] = line;
+            } else {
+                nextLines[previous] = line;
+            }
+        }
+        aggregate(slot);
+    }
+
+    /**
+     * Takes the line out of its product's chain, dropping the product with its last line.
+     */
+    private void unlink(int line) {
+        long productId = lineProducts[line];
+        int slot = probe(productId);
+        if (firstLines[slot] == line) {
+            firstLines[slot] = nextLines[line];
+        } else {
+            int previous = firstLines[slot];
+            while (nextLines[previous] != line) {
+                previous = nextLines[previous];
+            }
+            nextLines[previous] = nextLines[line];
+        }
+        if (firstLines[slot] != NO_LINE) {
+            aggregate(slot);
+            return;
+        }
+
+        int position = 0;
+        while (productIds[position] != productId) {
+            position++;
+        }
+        System.arraycopy(productIds, position + 1, productIds, position, productCount - position - 1);
+        productCount--;
+        removeSlot(slot);
+    }
+
+    private void aggregate(int slot) {
+        int quantity = 0;
+        double value = 0;
+        for (int line = firstLines[slot]; line != NO_LINE; line = nextLines[line]) {
+            quantity += lineQuantities[line];
+            value += linePrices[line] * lineQuantities[line];
+        }
+        quantities[slot] = quantity;
+        values[slot] = value;
+    }
+
+    private double sumLines() {
+        double sum = 0;
+        for (int position = 0; position < lineCount; position++) {
+            int line = cartLines[position];
+            sum += linePrices[line] * lineQuantities[line];
+        }
+        return sum;
+    }
+
+    /**
+     * Empties {@code slot}, shifting later entries of its probe run back so none becomes unreachable.
+     */
+    private void removeSlot(int slot) {
+        int hole = slot;
+        for (int next = (hole + 1) & mask; firstLines[next] != NO_LINE; next = (next + 1) & mask) {
+            int home = LongHashing.hash(keys[next]) & mask;
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                firstLines[hole] = firstLines[next];
+                quantities[hole] = quantities[next];
+                values[hole] = values[next];
+                hole = next;
+            }
+        }
+        firstLines[hole] = NO_LINE;
+        quantities[hole] = 0;
+        values[hole] = 0;
+    }
+
+    /**
+     * Allocates an empty table of {@code capacity} slots and moves any current products into it.
+     */
+    private void allocateTable(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldFirstLines = firstLines;
+        int[] oldQuantities = quantities;
+        double[] oldValues = values;
+        keys = new long[capacity];
+        firstLines = new int[capacity];
+        quantities = new int[capacity];
+        values = new double[capacity];
+        mask = capacity - 1;
+        Arrays.fill(firstLines, NO_LINE);
+        if (oldKeys == null) {
+            return;
+        }
+        for (int old = 0; old < oldKeys.length; old++) {
+            if (oldFirstLines[old] != NO_LINE) {
+                int slot = probe(oldKeys[old]);
+                keys[slot] = oldKeys[old];
+                firstLines[slot] = oldFirstLines[old];
+                quantities[slot] = oldQuantities[old];
+                values[slot] = oldValues[old];
+            }
+        }
+    }
+
+    private int probe(long productId) {
+        int slot = LongHashing.hash(productId) & mask;
+        while (firstLines[slot] != NO_LINE && keys[slot] != productId) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+}
@@ -0,0 +1,11 @@
+package com.monkcommerce.coupons.rule;
+
+import com.monkcommerce.coupons.model.CouponType;
+
+public record CartWiseRule(long couponId, long version, double threshold, double percent) implements CouponRule {
+
+    @Override
+    public CouponType type() {
+        return CouponType.CART_WISE;
+    }
+}
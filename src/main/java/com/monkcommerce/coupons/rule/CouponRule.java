@@ -0,0 +1,15 @@
+package com.monkcommerce.coupons.rule;
+
+import com.monkcommerce.coupons.model.CouponType;
+
+/**
+ * Immutable, pre-validated form of a coupon's {@code details}, compiled once per coupon version.
+ */
+public sealed interface CouponRule permits CartWiseRule, ProductWiseRule, BxGyRule, ProductSetRule {
+
+    long couponId();
+
+    long version();
+
+    CouponType type();
+}
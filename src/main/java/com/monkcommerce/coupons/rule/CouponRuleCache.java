@@ -0,0 +1,40 @@
+package com.monkcommerce.coupons.rule;
+
+import com.monkcommerce.coupons.model.Coupon;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compiled rules keyed by coupon id. An entry is reused only while its version matches the
+ * coupon's persisted version, so a stale rule is never evaluated after an update.
+ */
+@Component
+@RequiredArgsConstructor
+public class CouponRuleCache {
+
+    private final RuleCompiler ruleCompiler;
+    private final Map<Long, CouponRule> rules = new ConcurrentHashMap<>();
+
+    public CouponRule get(Coupon coupon) {
+        long version = coupon.getVersion() != null ? coupon.getVersion() : 0L;
+        CouponRule rule = rules.get(coupon.getId());
+        if (rule != null && rule.version() == version) {
+            return rule;
+        }
+        return put(coupon);
+    }
+
+    public CouponRule put(Coupon coupon) {
+        CouponRule rule = ruleCompiler.compile(coupon);
+        rules.merge(coupon.getId(), rule,
+                (existing, compiled) -> existing.version() > compiled.version() ? existing : compiled);
+        return rule;
+    }
+
+    public void evict(Long couponId) {
+        rules.remove(couponId);
+    }
+}
@@ -0,0 +1,12 @@
+package com.monkcommerce.coupons.rule;
+
+public class InvalidCouponDetailsException extends RuntimeException {
+
+    public InvalidCouponDetailsException(String message) {
+        super(message);
+    }
+
+    public InvalidCouponDetailsException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,19 @@
+package com.monkcommerce.coupons.rule;
+
+public final class LongHashing {
+
+    private LongHashing() {
+    }
+
+    /**
+     * Murmur3 finalizer; spreads sequential ids across the low bits used by power-of-two tables.
+     */
+    public static int hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+}
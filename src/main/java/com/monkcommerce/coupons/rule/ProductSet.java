@@ -0,0 +1,72 @@
+package com.monkcommerce.coupons.rule;
+
+import java.util.Arrays;
+
+/**
+ * Immutable set of product ids held as one sorted array of distinct longs: eight bytes per
+ * product, no boxing, and a binary search per lookup. A lookup outside the smallest and largest
+ * id is rejected without searching.
+ */
+public final class ProductSet {
+
+    private static final long OBJECT_BYTES = 16;
+    private static final long ARRAY_HEADER_BYTES = 16;
+
+    private final long[] ids;
+
+    private ProductSet(long[] ids) {
+        this.ids = ids;
+    }
+
+    public static ProductSet of(long... productIds) {
+        long[] sorted = productIds.clone();
+        Arrays.sort(sorted);
+        int size = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (size == 0 || sorted[size - 1] != sorted[i]) {
+                sorted[size++] = sorted[i];
+            }
+        }
+        return new ProductSet(size == sorted.length ? sorted : Arrays.copyOf(sorted, size));
+    }
+
+    public boolean contains(long productId) {
+        return ids.length > 0
+                && productId >= ids[0]
+                && productId <= ids[ids.length - 1]
+                && Arrays.binarySearch(ids, productId) >= 0;
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    public long get(int i) {
+        return ids[i];
+    }
+
+    /**
+     * The ids in ascending order. The array is owned by the set and must not be modified.
+     */
+    public long[] ids() {
+        return ids;
+    }
+
+    /**
+     * Heap held by the set, counting the object and array headers of a 64-bit JVM with
+     * compressed references.
+     */
+    public long memoryBytes() {
+        return OBJECT_BYTES + ARRAY_HEADER_BYTES + (long) ids.length * Long.BYTES;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof ProductSet set && Arrays.equals(ids, set.ids);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(ids);
+    }
+}
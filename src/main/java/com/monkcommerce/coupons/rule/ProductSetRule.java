@@ -0,0 +1,23 @@
+package com.monkcommerce.coupons.rule;
+
+import com.monkcommerce.coupons.model.CouponType;
+
+public record ProductSetRule(long couponId, long version, ProductSet products, double percent) implements CouponRule {
+
+    @Override
+    public CouponType type() {
+        return CouponType.PRODUCT_SET;
+    }
+
+    /**
+     * Whether any product in {@code cart} is in the set, probing the set once per cart product.
+     */
+    public boolean coversAny(CartIndex cart) {
+        for (int i = 0; i < cart.productCount(); i++) {
+            if (products.contains(cart.productAt(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
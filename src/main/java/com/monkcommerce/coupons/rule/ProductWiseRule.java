@@ -0,0 +1,11 @@
+package com.monkcommerce.coupons.rule;
+
+import com.monkcommerce.coupons.model.CouponType;
+
+public record ProductWiseRule(long couponId, long version, long productId, double percent) implements CouponRule {
+
+    @Override
+    public CouponType type() {
+        return CouponType.PRODUCT_WISE;
+    }
+}
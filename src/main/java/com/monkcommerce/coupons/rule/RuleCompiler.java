@@ -0,0 +1,234 @@
+package com.monkcommerce.coupons.rule;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.monkcommerce.coupons.model.Coupon;
+import com.monkcommerce.coupons.model.CouponProduct;
+import com.monkcommerce.coupons.model.CouponProductRole;
+import com.monkcommerce.coupons.model.CouponType;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Component
+public class RuleCompiler {
+
+    /**
+     * Rejects anything after the details object, so details that compile are always exactly one
+     * JSON object and can be written into responses verbatim.
+     */
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .enable(DeserializationFeature.FAIL_ON_TRAILING_TOKENS);
+
+    public CouponRule compile(Coupon coupon) {
+        long id = coupon.getId() != null ? coupon.getId() : 0L;
+        long version = coupon.getVersion() != null ? coupon.getVersion() : 0L;
+        return compile(id, version, coupon.getType(), coupon.getDetails());
+    }
+
+    public CouponRule compile(long couponId, long version, CouponType type, String detailsJson) {
+        if (type == null) {
+            throw new InvalidCouponDetailsException("Coupon type is required");
+        }
+        if (detailsJson == null) {
+            throw new InvalidCouponDetailsException("Coupon details are required");
+        }
+
+        JsonNode details;
+        try {
+            details = objectMapper.readTree(detailsJson);
+        } catch (JsonProcessingException e) {
+            throw new InvalidCouponDetailsException("Coupon details are not valid JSON", e);
+        }
+        if (details == null || !details.isObject()) {
+            throw new InvalidCouponDetailsException("Coupon details must be a JSON object");
+        }
+
+        return switch (type) {
+            case CART_WISE -> new CartWiseRule(couponId, version,
+                    nonNegative(details, "threshold"),
+                    percent(details, "discount"));
+            case PRODUCT_WISE -> new ProductWiseRule(couponId, version,
+                    productId(details, "product_id"),
+                    percent(details, "discount"));
+            case BXGY -> compileBxGy(couponId, version, details);
+            case PRODUCT_SET -> new ProductSetRule(couponId, version,
+                    productSet(details, "product_ids"),
+                    percent(details, "discount"));
+        };
+    }
+
+    /**
+     * Re-serializes {@code detailsJson} in compact form, for details that arrive as text rather than
+     * from a serialized object.
+     */
+    public String canonicalize(String detailsJson) {
+        if (detailsJson == null) {
+            throw new InvalidCouponDetailsException("Coupon details are required");
+        }
+        try {
+            return objectMapper.readTree(detailsJson).toString();
+        } catch (JsonProcessingException e) {
+            throw new InvalidCouponDetailsException("Coupon details are not valid JSON", e);
+        }
+    }
+
+    /**
+     * Copies the compiled rule into the coupon's structured columns and product rows, replacing
+     * whatever the coupon held before, so the database can prefilter candidates without parsing
+     * {@code details}. PRODUCT_SET coupons get no product rows: their sets can be large, and they
+     * are matched against the cart after compiling.
+     */
+    public void normalize(Coupon coupon, CouponRule rule) {
+        coupon.setThreshold(null);
+        coupon.setDiscountPercent(null);
+        coupon.setRepetitionLimit(null);
+        List<CouponProduct> products = new ArrayList<>();
+
+        switch (rule) {
+            case CartWiseRule cartWise -> {
+                coupon.setThreshold(cartWise.threshold());
+                coupon.setDiscountPercent(cartWise.percent());
+            }
+            case ProductWiseRule productWise -> {
+                coupon.setDiscountPercent(productWise.percent());
+                products.add(product(productWise.productId(), CouponProductRole.TARGET, null));
+            }
+            case BxGyRule bxGy -> {
+                coupon.setRepetitionLimit(bxGy.repetitionLimit());
+                for (int i = 0; i < bxGy.buyProductIds().length; i++) {
+                    products.add(product(bxGy.buyProductIds()[i], CouponProductRole.BUY, bxGy.buyQuantities()[i]));
+                }
+                for (int i = 0; i < bxGy.getProductIds().length; i++) {
+                    products.add(product(bxGy.getProductIds()[i], CouponProductRole.GET, bxGy.getQuantities()[i]));
+                }
+            }
+            case ProductSetRule productSet -> coupon.setDiscountPercent(productSet.percent());
+        }
+
+        if (coupon.getProducts() == null) {
+            coupon.setProducts(products);
+        } else {
+            coupon.getProducts().clear();
+            coupon.getProducts().addAll(products);
+        }
+    }
+
+    private CouponProduct product(long productId, CouponProductRole role, Integer quantity) {
+        return CouponProduct.builder()
+                .productId(productId)
+                .role(role)
+                .quantity(quantity)
+                .build();
+    }
+
+    private BxGyRule compileBxGy(long couponId, long version, JsonNode details) {
+        JsonNode buyProducts = array(details, "buy_products");
+        JsonNode getProducts = array(details, "get_products");
+        int repetitionLimit = positiveInt(details, "repetition_limit");
+
+        long[] buyProductIds = new long[buyProducts.size()];
+        int[] buyQuantities = new int[buyProducts.size()];
+        int buyQuantityNeeded = 0;
+        for (int i = 0; i < buyProducts.size(); i++) {
+            JsonNode product = buyProducts.get(i);
+            buyProductIds[i] = productId(product, "product_id");
+            buyQuantities[i] = positiveInt(product, "quantity");
+            buyQuantityNeeded = addQuantity(buyQuantityNeeded, buyQuantities[i], "buy_products");
+        }
+
+        long[] getProductIds = new long[getProducts.size()];
+        int[] getQuantities = new int[getProducts.size()];
+        int getQuantityPerDeal = 0;
+        for (int i = 0; i < getProducts.size(); i++) {
+            JsonNode product = getProducts.get(i);
+            getProductIds[i] = productId(product, "product_id");
+            getQuantities[i] = positiveInt(product, "quantity");
+            getQuantityPerDeal = addQuantity(getQuantityPerDeal, getQuantities[i], "get_products");
+        }
+
+        return new BxGyRule(couponId, version, buyProductIds, buyQuantities, getProductIds, getQuantities,
+                repetitionLimit, buyQuantityNeeded, getQuantityPerDeal);
+    }
+
+    private static int addQuantity(int total, int quantity, String name) {
+        try {
+            return Math.addExact(total, quantity);
+        } catch (ArithmeticException e) {
+            throw new InvalidCouponDetailsException(
+                    "Quantities in '" + name + "' must add up to at most " + Integer.MAX_VALUE, e);
+        }
+    }
+
+    private ProductSet productSet(JsonNode node, String name) {
+        JsonNode value = array(node, name);
+        long[] productIds = new long[value.size()];
+        for (int i = 0; i < productIds.length; i++) {
+            JsonNode productId = value.get(i);
+            if (!productId.canConvertToLong() || !productId.isIntegralNumber()) {
+                throw new InvalidCouponDetailsException("Field '" + name + "' must only hold integer product ids");
+            }
+            productIds[i] = productId.longValue();
+        }
+        return ProductSet.of(productIds);
+    }
+
+    private JsonNode field(JsonNode node, String name) {
+        JsonNode value = node == null ? null : node.get(name);
+        if (value == null || value.isNull()) {
+            throw new InvalidCouponDetailsException("Missing required field '" + name + "'");
+        }
+        return value;
+    }
+
+    private double number(JsonNode node, String name) {
+        JsonNode value = field(node, name);
+        if (!value.isNumber()) {
+            throw new InvalidCouponDetailsException("Field '" + name + "' must be a number");
+        }
+        return value.doubleValue();
+    }
+
+    private double nonNegative(JsonNode node, String name) {
+        double value = number(node, name);
+        if (!(value >= 0) || Double.isInfinite(value)) {
+            throw new InvalidCouponDetailsException("Field '" + name + "' must be a non-negative number");
+        }
+        return value;
+    }
+
+    private double percent(JsonNode node, String name) {
+        double value = number(node, name);
+        if (!(value >= 0 && value <= 100)) {
+            throw new InvalidCouponDetailsException("Field '" + name + "' must be a percentage between 0 and 100");
+        }
+        return value;
+    }
+
+    private long productId(JsonNode node, String name) {
+        JsonNode value = field(node, name);
+        if (!value.canConvertToLong() || !value.isIntegralNumber()) {
+            throw new InvalidCouponDetailsException("Field '" + name + "' must be an integer product id");
+        }
+        return value.longValue();
+    }
+
+    private int positiveInt(JsonNode node, String name) {
+        JsonNode value = field(node, name);
+        if (!value.isIntegralNumber() || !value.canConvertToInt() || value.intValue() <= 0) {
+            throw new InvalidCouponDetailsException("Field '" + name + "' must be a positive integer");
+        }
+        return value.intValue();
+    }
+
+    private JsonNode array(JsonNode node, String name) {
+        JsonNode value = field(node, name);
+        if (!value.isArray() || value.isEmpty()) {
+            throw new InvalidCouponDetailsException("Field '" + name + "' must be a non-empty array");
+        }
+        return value;
+    }
+}
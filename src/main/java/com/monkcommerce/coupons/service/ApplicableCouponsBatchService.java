@@ -0,0 +1,55 @@
+package com.monkcommerce.coupons.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.monkcommerce.coupons.catalog.CatalogSnapshot;
+import com.monkcommerce.coupons.catalog.CouponCatalog;
+import com.monkcommerce.coupons.dto.Cart;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * Streams applicable-coupon results for a batch of carts. Carts are read one at a time from either
+ * a JSON array or newline-delimited JSON, and each response is written and flushed as soon as it is
+ * computed, so neither side buffers the batch.
+ */
+@Service
+@RequiredArgsConstructor
+public class ApplicableCouponsBatchService {
+
+    private final CouponService couponService;
+    private final CouponCatalog couponCatalog;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    public long evaluate(InputStream carts, OutputStream responses) throws IOException {
+        CatalogSnapshot snapshot = couponCatalog.isEnabled() ? couponCatalog.snapshot() : null;
+        long count = 0;
+
+        try (MappingIterator<Cart> reader = objectMapper.readerFor(Cart.class).readValues(carts);
+             SequenceWriter writer = objectMapper.writer()
+                     .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+                     .withRootValueSeparator("\n")
+                     .writeValues(responses)) {
+            while (reader.hasNextValue()) {
+                Cart cart = reader.nextValue();
+                if (cart == null || cart.getItems() == null) {
+                    cart = Cart.builder().items(List.of()).build();
+                }
+                writer.write(couponService.getApplicableCoupons(snapshot, cart));
+                count++;
+            }
+        }
+        if (count > 0) {
+            responses.write('\n');
+        }
+        responses.flush();
+        return count;
+    }
+}
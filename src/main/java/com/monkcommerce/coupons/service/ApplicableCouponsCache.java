@@ -0,0 +1,66 @@
+package com.monkcommerce.coupons.service;
+
+import com.monkcommerce.coupons.dto.ApplicableCouponsResponse;
+import com.monkcommerce.coupons.metrics.CouponMetrics;
+import com.monkcommerce.coupons.rule.CartFingerprint;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.function.Supplier;
+
+/**
+ * Applicable-coupon results keyed by cart fingerprint and catalog version. Every catalog write
+ * bumps the version, so stale entries are never read again and simply age out; nothing is
+ * invalidated by key.
+ */
+@Component
+@RequiredArgsConstructor
+public class ApplicableCouponsCache {
+
+    private final CouponMetrics metrics;
+
+    @Value("${coupons.cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${coupons.cache.maximum-size:10000}")
+    private long maximumSize;
+
+    @Value("${coupons.cache.expire-after-write:5m}")
+    private Duration expireAfterWrite;
+
+    private Cache<Key, ApplicableCouponsResponse> cache;
+
+    @PostConstruct
+    void start() {
+        cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build();
+        metrics.monitorCache(cache, "coupons.applicable");
+    }
+
+    public ApplicableCouponsResponse get(long catalogVersion, CartFingerprint cart,
+            Supplier<ApplicableCouponsResponse> evaluate) {
+        if (!enabled) {
+            return evaluate.get();
+        }
+
+        Key key = new Key(catalogVersion, cart);
+        ApplicableCouponsResponse cached = cache.getIfPresent(key);
+        if (cached != null) {
+            return cached;
+        }
+        ApplicableCouponsResponse response = evaluate.get();
+        cache.put(key, response);
+        return response;
+    }
+
+    private record Key(long catalogVersion, CartFingerprint cart) {
+    }
+}
@@ -0,0 +1,6 @@
+package com.monkcommerce.coupons.service;
+
+public enum BulkFormat {
+    NDJSON,
+    CSV
+}
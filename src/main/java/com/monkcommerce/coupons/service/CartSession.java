@@ -0,0 +1,54 @@
+package com.monkcommerce.coupons.service;
+
+import com.monkcommerce.coupons.dto.CartItem;
+import com.monkcommerce.coupons.rule.CartIndex;
+import com.monkcommerce.coupons.rule.CouponRule;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * Server-side state of one cart session: its lines, their per-product aggregates and the coupons
+ * currently applicable to them, as of {@link #catalogVersion}. Not thread-safe; callers synchronize
+ * on the session.
+ */
+final class CartSession {
+
+    static final long NOT_EVALUATED = -1L;
+
+    final String id;
+    final List<CartItem> lines = new ArrayList<>();
+    final TreeMap<Long, Applicable> applicable = new TreeMap<>();
+    final CartIndex cart = CartIndex.empty();
+    long catalogVersion = NOT_EVALUATED;
+
+    /**
+     * An applicable coupon and its discount when last evaluated. CART_WISE discounts follow the
+     * total, so they are recomputed on read rather than kept current here.
+     */
+    record Applicable(CouponRule rule, double discount) {
+    }
+
+    CartSession(String id) {
+        this.id = id;
+    }
+
+    void add(CartItem line) {
+        lines.add(line);
+        cart.add(line.getProductId(), line.getQuantity(), line.getPrice());
+    }
+
+    /**
+     * Replaces the line at {@code index} and returns the one it replaced.
+     */
+    CartItem set(int index, CartItem line) {
+        cart.set(index, line.getProductId(), line.getQuantity(), line.getPrice());
+        return lines.set(index, line);
+    }
+
+    CartItem remove(int index) {
+        cart.remove(index);
+        return lines.remove(index);
+    }
+}
@@ -0,0 +1,218 @@
+package com.monkcommerce.coupons.service;
+
+import com.monkcommerce.coupons.catalog.CatalogSnapshot;
+import com.monkcommerce.coupons.catalog.CouponCatalog;
+import com.monkcommerce.coupons.dto.ApplicableCoupon;
+import com.monkcommerce.coupons.dto.Cart;
+import com.monkcommerce.coupons.dto.CartItem;
+import com.monkcommerce.coupons.dto.CartSessionResponse;
+import com.monkcommerce.coupons.metrics.CouponMetrics;
+import com.monkcommerce.coupons.rule.CartWiseRule;
+import com.monkcommerce.coupons.rule.CouponRule;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * Stateful carts. Each edit re-evaluates only the coupons it can affect: those keyed by the
+ * products whose lines changed, and CART_WISE coupons whose threshold the total crossed. The
+ * response carries the coupons that became applicable or stopped being applicable. A session whose
+ * catalog version is out of date, and every session in database-only mode, is re-evaluated in
+ * full instead.
+ *
+ * <p>Sessions live in a bounded cache and expire after {@code coupons.sessions.idle-timeout}
+ * without access.
+ */
+@Service
+@RequiredArgsConstructor
+public class CartSessionService {
+
+    private static final long[] NO_PRODUCTS = new long[0];
+
+    private final CouponCatalog couponCatalog;
+    private final CouponEvaluationEngine evaluationEngine;
+    private final DiscountService discountService;
+    private final CouponMetrics metrics;
+
+    @Value("${coupons.sessions.maximum-size:100000}")
+    private long maximumSize;
+
+    @Value("${coupons.sessions.idle-timeout:30m}")
+    private Duration idleTimeout;
+
+    private Cache<String, CartSession> sessions;
+
+    @PostConstruct
+    void start() {
+        sessions = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterAccess(idleTimeout)
+                .recordStats()
+                .build();
+        metrics.monitorCache(sessions, "coupons.sessions");
+    }
+
+    public CartSessionResponse create(Cart cart) {
+        List<CartItem> items = cart != null && cart.getItems() != null ? cart.getItems() : List.of();
+        CartSession session = new CartSession(UUID.randomUUID().toString());
+        synchronized (session) {
+            for (CartItem item : items) {
+                session.add(line(item));
+            }
+            CartSessionResponse response = refresh(session, NO_PRODUCTS, 0);
+            sessions.put(session.id, session);
+            return response;
+        }
+    }
+
+    /**
+     * Current state of the session, brought up to date with the catalog first.
+     */
+    public CartSessionResponse get(String sessionId) {
+        return edit(sessionId, session -> NO_PRODUCTS);
+    }
+
+    public CartSessionResponse addItem(String sessionId, CartItem item) {
+        CartItem line = line(item);
+        return edit(sessionId, session -> {
+            session.add(line);
+            return new long[] {line.getProductId()};
+        });
+    }
+
+    public CartSessionResponse updateItem(String sessionId, int index, CartItem item) {
+        CartItem line = line(item);
+        return edit(sessionId, session -> {
+            CartItem previous = session.set(checkIndex(session, index), line);
+            return new long[] {previous.getProductId(), line.getProductId()};
+        });
+    }
+
+    public CartSessionResponse removeItem(String sessionId, int index) {
+        return edit(sessionId, session -> new long[] {session.remove(checkIndex(session, index)).getProductId()});
+    }
+
+    public void delete(String sessionId) {
+        if (sessions.asMap().remove(sessionId) == null) {
+            throw notFound(sessionId);
+        }
+    }
+
+    private CartSessionResponse edit(String sessionId, Function<CartSession, long[]> change) {
+        CartSession session = sessions.getIfPresent(sessionId);
+        if (session == null) {
+            throw notFound(sessionId);
+        }
+        synchronized (session) {
+            double previousTotal = session.cart.total();
+            return refresh(session, change.apply(session), previousTotal);
+        }
+    }
+
+    private CartSessionResponse refresh(CartSession session, long[] changedProducts, double previousTotal) {
+        long start = System.nanoTime();
+        CatalogSnapshot snapshot = couponCatalog.isEnabled() ? couponCatalog.snapshot() : null;
+        boolean full = snapshot == null || snapshot.version() != session.catalogVersion;
+
+        List<CouponRule> rules = snapshot == null
+                ? couponCatalog.findCandidates(session.cart)
+                : full
+                        ? snapshot.index().candidates(session.cart)
+                        : snapshot.index().affected(changedProducts, previousTotal, session.cart.total());
+        double[] discounts = evaluationEngine.evaluate(rules, session.cart);
+
+        TreeMap<Long, CartSession.Applicable> previous = new TreeMap<>();
+        if (full) {
+            previous.putAll(session.applicable);
+            session.applicable.clear();
+        }
+        List<ApplicableCoupon> added = new ArrayList<>();
+        List<Long> removed = new ArrayList<>();
+        for (int i = 0; i < rules.size(); i++) {
+            CouponRule rule = rules.get(i);
+            if (discounts[i] > 0) {
+                CartSession.Applicable before = full
+                        ? previous.remove(rule.couponId())
+                        : session.applicable.get(rule.couponId());
+                session.applicable.put(rule.couponId(), new CartSession.Applicable(rule, discounts[i]));
+                if (before == null) {
+                    added.add(toApplicableCoupon(rule, discounts[i]));
+                }
+            } else if (!full && session.applicable.remove(rule.couponId()) != null) {
+                removed.add(rule.couponId());
+            }
+        }
+        removed.addAll(previous.keySet());
+        removed.sort(null);
+        session.catalogVersion = snapshot != null ? snapshot.version() : 0L;
+        metrics.recordSessionRecompute(full, System.nanoTime() - start, rules.size());
+
+        return CartSessionResponse.builder()
+                .sessionId(session.id)
+                .items(List.copyOf(session.lines))
+                .totalPrice(session.cart.total())
+                .catalogVersion(session.catalogVersion)
+                .applicableCoupons(applicableCoupons(session))
+                .added(added)
+                .removed(removed)
+                .build();
+    }
+
+    private List<ApplicableCoupon> applicableCoupons(CartSession session) {
+        List<ApplicableCoupon> applicableCoupons = new ArrayList<>(session.applicable.size());
+        for (CartSession.Applicable applicable : session.applicable.values()) {
+            double discount = applicable.rule() instanceof CartWiseRule
+                    ? discountService.calculateDiscount(applicable.rule(), session.cart)
+                    : applicable.discount();
+            applicableCoupons.add(toApplicableCoupon(applicable.rule(), discount));
+        }
+        return applicableCoupons;
+    }
+
+    private static ApplicableCoupon toApplicableCoupon(CouponRule rule, double discount) {
+        return ApplicableCoupon.builder()
+                .couponId(rule.couponId())
+                .type(rule.type().toString())
+                .discount(discount)
+                .build();
+    }
+
+    private static CartItem line(CartItem item) {
+        if (item == null || item.getProductId() == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "productId is required");
+        }
+        if (item.getQuantity() < 1 || item.getPrice() < 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "quantity must be at least 1 and price must not be negative");
+        }
+        return CartItem.builder()
+                .productId(item.getProductId())
+                .quantity(item.getQuantity())
+                .price(item.getPrice())
+                .build();
+    }
+
+    private static int checkIndex(CartSession session, int index) {
+        if (index < 0 || index >= session.lines.size()) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND,
+                    "Cart session " + session.id + " has no line " + index);
+        }
+        return index;
+    }
+
+    private static ResponseStatusException notFound(String sessionId) {
+        return new ResponseStatusException(HttpStatus.NOT_FOUND, "Cart session not found: " + sessionId);
+    }
+}
@@ -0,0 +1,312 @@
+package com.monkcommerce.coupons.service;
+
+import com.monkcommerce.coupons.catalog.CatalogEntry;
+import com.monkcommerce.coupons.catalog.CouponCatalog;
+import com.monkcommerce.coupons.dto.BulkImportError;
+import com.monkcommerce.coupons.dto.BulkImportResponse;
+import com.monkcommerce.coupons.dto.CouponResponse;
+import com.monkcommerce.coupons.model.Coupon;
+import com.monkcommerce.coupons.model.CouponType;
+import com.monkcommerce.coupons.repository.CouponRepository;
+import com.monkcommerce.coupons.rule.InvalidCouponDetailsException;
+import com.monkcommerce.coupons.rule.RuleCompiler;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Streams coupons in and out in bulk. Imports are validated line by line and persisted in JDBC
+ * batches, one transaction per batch, so a bad line or a rejected batch never aborts the load. Each
+ * batch transaction has its own persistence context, so nothing accumulates across batches. The
+ * committed batches are published to the catalog as one generation when the import ends, rather
+ * than rebuilding the index once per batch.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class CouponBulkService {
+
+    private static final String CSV_HEADER = "type,details";
+
+    private final CouponRepository couponRepository;
+    private final RuleCompiler ruleCompiler;
+    private final CouponCatalog couponCatalog;
+    private final CouponChangeService changeService;
+    private final TransactionTemplate transactionTemplate;
+    private final EntityManager entityManager;
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .registerModule(new SimpleModule().addSerializer(Instant.class, ToStringSerializer.instance));
+
+    @Value("${coupons.bulk.batch-size:500}")
+    private int batchSize;
+
+    @Value("${coupons.bulk.max-reported-errors:1000}")
+    private int maxReportedErrors;
+
+    public BulkImportResponse importCoupons(InputStream in, BulkFormat format) throws IOException {
+        long start = System.nanoTime();
+        ImportResult result = new ImportResult();
+        List<Coupon> batch = new ArrayList<>(batchSize);
+        List<Long> batchLines = new ArrayList<>(batchSize);
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        long lineNumber = 0;
+        String line;
+        try {
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank() || (format == BulkFormat.CSV && lineNumber == 1 && isCsvHeader(line))) {
+                    continue;
+                }
+
+                try {
+                    batch.add(parse(line, format));
+                    batchLines.add(lineNumber);
+                } catch (InvalidCouponDetailsException e) {
+                    result.fail(lineNumber, e.getMessage());
+                }
+
+                if (batch.size() >= batchSize) {
+                    persist(batch, batchLines, result);
+                }
+            }
+            if (!batch.isEmpty()) {
+                persist(batch, batchLines, result);
+            }
+        } finally {
+            // Whatever was committed is published, even if reading the rest of the input failed.
+            if (couponCatalog.isEnabled() && !result.committed.isEmpty()) {
+                couponCatalog.upsert(result.committed);
+            }
+        }
+
+        long elapsedNanos = System.nanoTime() - start;
+        return BulkImportResponse.builder()
+                .imported(result.imported)
+                .failed(result.failed)
+                .errors(result.errors)
+                .elapsedMillis(elapsedNanos / 1_000_000)
+                .rowsPerSecond(rowsPerSecond(result.imported, elapsedNanos))
+                .build();
+    }
+
+    @Transactional(readOnly = true)
+    public long exportCoupons(CouponType type, BulkFormat format, OutputStream out) throws IOException {
+        try (Stream<Coupon> coupons = type == null
+                ? couponRepository.streamAllByOrderByIdAsc()
+                : couponRepository.streamByTypeOrderByIdAsc(type)) {
+            Iterator<Coupon> iterator = coupons.iterator();
+            return format == BulkFormat.CSV ? writeCsv(iterator, out) : writeNdjson(iterator, out);
+        }
+    }
+
+    private void persist(List<Coupon> batch, List<Long> batchLines, ImportResult result) {
+        try {
+            List<CatalogEntry> entries = transactionTemplate.execute(status -> {
+                List<Coupon> saved = couponRepository.saveAll(batch);
+                changeService.recordAll(saved.stream().map(Coupon::getId).toList(), false);
+                return couponCatalog.compile(saved);
+            });
+            result.committed.addAll(entries);
+            result.imported += batch.size();
+        } catch (RuntimeException e) {
+            log.warn("Bulk import batch of {} coupons starting at line {} was rejected: {}",
+                    batch.size(), batchLines.get(0), e.getMessage());
+            for (long line : batchLines) {
+                result.fail(line, "Batch rejected: " + e.getMessage());
+            }
+        }
+        batch.clear();
+        batchLines.clear();
+    }
+
+    private Coupon parse(String line, BulkFormat format) {
+        CouponType type;
+        String detailsJson;
+        Instant validFrom = null;
+        Instant validUntil = null;
+        Long maxRedemptions = null;
+        Long maxRedemptionsPerCustomer = null;
+        if (format == BulkFormat.CSV) {
+            int comma = line.indexOf(',');
+            if (comma < 0) {
+                throw new InvalidCouponDetailsException("Expected '" + CSV_HEADER + "' columns");
+            }
+            type = parseType(line.substring(0, comma).strip());
+            detailsJson = ruleCompiler.canonicalize(unquoteCsv(line.substring(comma + 1).strip()));
+        } else {
+            JsonNode node;
+            try {
+                node = objectMapper.readTree(line);
+            } catch (JsonProcessingException e) {
+                throw new InvalidCouponDetailsException("Line is not valid JSON", e);
+            }
+            if (node == null || !node.isObject()) {
+                throw new InvalidCouponDetailsException("Line must be a JSON object");
+            }
+            type = parseType(node.path("type").asText(null));
+            JsonNode details = node.get("details");
+            detailsJson = details != null && !details.isNull() ? details.toString() : null;
+            validFrom = parseInstant(node, "validFrom");
+            validUntil = parseInstant(node, "validUntil");
+            if (validFrom != null && validUntil != null && !validUntil.isAfter(validFrom)) {
+                throw new InvalidCouponDetailsException("validUntil must be after validFrom");
+            }
+            maxRedemptions = parseLimit(node, "maxRedemptions");
+            maxRedemptionsPerCustomer = parseLimit(node, "maxRedemptionsPerCustomer");
+        }
+
+        Coupon coupon = Coupon.builder()
+                .type(type)
+                .details(detailsJson)
+                .validFrom(validFrom)
+                .validUntil(validUntil)
+                .maxRedemptions(maxRedemptions)
+                .maxRedemptionsPerCustomer(maxRedemptionsPerCustomer)
+                .build();
+        ruleCompiler.normalize(coupon, ruleCompiler.compile(0L, 0L, type, detailsJson));
+        return coupon;
+    }
+
+    private CouponType parseType(String value) {
+        if (value == null || value.isEmpty()) {
+            throw new InvalidCouponDetailsException("Coupon type is required");
+        }
+        try {
+            return CouponType.valueOf(value);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidCouponDetailsException("Unknown coupon type: " + value);
+        }
+    }
+
+    private Instant parseInstant(JsonNode node, String field) {
+        String value = node.path(field).asText(null);
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        try {
+            return Instant.parse(value).truncatedTo(ChronoUnit.MILLIS);
+        } catch (DateTimeParseException e) {
+            throw new InvalidCouponDetailsException(field + " is not an ISO-8601 instant: " + value);
+        }
+    }
+
+    private Long parseLimit(JsonNode node, String field) {
+        JsonNode value = node.get(field);
+        if (value == null || value.isNull()) {
+            return null;
+        }
+        if (!value.canConvertToLong() || !value.isIntegralNumber() || value.asLong() < 1) {
+            throw new InvalidCouponDetailsException(field + " must be a whole number of at least 1");
+        }
+        return value.asLong();
+    }
+
+    private long writeNdjson(Iterator<Coupon> coupons, OutputStream out) throws IOException {
+        long count = 0;
+        try (SequenceWriter writer = objectMapper.writer()
+                .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+                .withRootValueSeparator("\n")
+                .writeValues(out)) {
+            while (coupons.hasNext()) {
+                Coupon coupon = coupons.next();
+                writer.write(CouponResponse.builder()
+                        .id(coupon.getId())
+                        .type(coupon.getType())
+                        .details(coupon.getDetails())
+                        .validFrom(coupon.getValidFrom())
+                        .validUntil(coupon.getValidUntil())
+                        .maxRedemptions(coupon.getMaxRedemptions())
+                        .maxRedemptionsPerCustomer(coupon.getMaxRedemptionsPerCustomer())
+                        .build());
+                entityManager.detach(coupon);
+                count++;
+            }
+        }
+        if (count > 0) {
+            out.write('\n');
+        }
+        out.flush();
+        return count;
+    }
+
+    private long writeCsv(Iterator<Coupon> coupons, OutputStream out) throws IOException {
+        long count = 0;
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        writer.write(CSV_HEADER);
+        writer.write('\n');
+        while (coupons.hasNext()) {
+            Coupon coupon = coupons.next();
+            writer.write(coupon.getType().name());
+            writer.write(',');
+            writer.write(quoteCsv(coupon.getDetails()));
+            writer.write('\n');
+            entityManager.detach(coupon);
+            count++;
+        }
+        writer.flush();
+        return count;
+    }
+
+    private static boolean isCsvHeader(String line) {
+        return line.strip().replace(" ", "").equalsIgnoreCase(CSV_HEADER);
+    }
+
+    private static String quoteCsv(String value) {
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    private static String unquoteCsv(String value) {
+        if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+            return value.substring(1, value.length() - 1).replace("\"\"", "\"");
+        }
+        return value;
+    }
+
+    private static double rowsPerSecond(long rows, long elapsedNanos) {
+        return elapsedNanos > 0 ? rows * 1_000_000_000.0 / elapsedNanos : 0;
+    }
+
+    private final class ImportResult {
+        private long imported;
+        private long failed;
+        private final List<BulkImportError> errors = new ArrayList<>();
+        private final List<CatalogEntry> committed = new ArrayList<>();
+
+        private void fail(long line, String message) {
+            failed++;
+            if (errors.size() < maxReportedErrors) {
+                errors.add(new BulkImportError(line, message));
+            }
+        }
+    }
+}
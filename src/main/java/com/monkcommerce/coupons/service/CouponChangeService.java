@@ -0,0 +1,226 @@
+package com.monkcommerce.coupons.service;
+
+import com.monkcommerce.coupons.catalog.CouponCatalog;
+import com.monkcommerce.coupons.model.Coupon;
+import com.monkcommerce.coupons.model.CouponChange;
+import com.monkcommerce.coupons.model.CouponChangeFeed;
+import com.monkcommerce.coupons.repository.CouponChangeFeedRepository;
+import com.monkcommerce.coupons.repository.CouponChangeRepository;
+import com.monkcommerce.coupons.repository.CouponRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Versioned feed of coupon mutations, shared by every instance through the database.
+ *
+ * <p>Each mutation takes the next catalog version from the locked {@link CouponChangeFeed} row in
+ * the writer's transaction, so versions are committed in order and a reader that has seen version
+ * {@code v} has seen every change up to it. Instances poll the feed and apply the deltas to their
+ * catalog, falling back to a full reload when the versions they need have been compacted away.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class CouponChangeService {
+
+    public static final int MAX_PAGE_SIZE = 1000;
+
+    private final CouponChangeRepository changeRepository;
+    private final CouponChangeFeedRepository feedRepository;
+    private final CouponRepository couponRepository;
+    private final CouponCatalog couponCatalog;
+    private final TransactionTemplate transactionTemplate;
+    private final EntityManager entityManager;
+
+    @Value("${coupons.changes.poll-interval:1s}")
+    private Duration pollInterval;
+
+    @Value("${coupons.changes.retention:24h}")
+    private Duration retention;
+
+    @Value("${coupons.changes.compaction-interval:10m}")
+    private Duration compactionInterval;
+
+    private Clock clock = Clock.systemUTC();
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Changes after {@code since}, with each coupon's latest state. {@code version} is the version
+     * to ask for next; when {@code reset} is set the feed no longer reaches back to {@code since}
+     * and the caller must reload everything.
+     */
+    public record CouponChanges(long since, long version, boolean reset, boolean hasMore,
+                                List<Coupon> upserts, List<Long> deleted) {
+    }
+
+    @PostConstruct
+    void start() {
+        if (feedRepository.findById(CouponChangeFeed.ID).isEmpty()) {
+            try {
+                transactionTemplate.executeWithoutResult(status ->
+                        entityManager.persist(new CouponChangeFeed(CouponChangeFeed.ID, 0L, 0L)));
+            } catch (RuntimeException e) {
+                if (feedRepository.findById(CouponChangeFeed.ID).isEmpty()) {
+                    throw e;
+                }
+            }
+        }
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().daemon().name("coupon-changes").factory());
+        if (couponCatalog.isEnabled() && isPositive(pollInterval)) {
+            long interval = pollInterval.toMillis();
+            scheduler.scheduleWithFixedDelay(this::pollQuietly, interval, interval, TimeUnit.MILLISECONDS);
+        }
+        if (isPositive(compactionInterval)) {
+            long interval = compactionInterval.toMillis();
+            scheduler.scheduleWithFixedDelay(this::compactQuietly, interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    void stop() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Records that {@code couponId} was upserted or deleted, as part of the caller's transaction.
+     */
+    public void record(long couponId, boolean deleted) {
+        recordAll(List.of(couponId), deleted);
+    }
+
+    public void recordAll(List<Long> couponIds, boolean deleted) {
+        if (couponIds.isEmpty()) {
+            return;
+        }
+        CouponChangeFeed feed = feedRepository.lockById(CouponChangeFeed.ID)
+                .orElseThrow(() -> new IllegalStateException("Coupon change feed is not initialized"));
+        long version = feed.getVersion();
+        for (Long couponId : couponIds) {
+            // Versions are assigned here, so persist directly rather than have save() look each one up.
+            entityManager.persist(CouponChange.builder()
+                    .version(++version)
+                    .couponId(couponId)
+                    .deleted(deleted)
+                    .changedAt(clock.instant())
+                    .build());
+        }
+        feed.setVersion(version);
+    }
+
+    public CouponChanges changesSince(long since, int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        return transactionTemplate.execute(status -> {
+            List<CouponChange> changes = changeRepository.findByVersionGreaterThanOrderByVersionAsc(
+                    since, Limit.of(limit + 1));
+            // Read after the changes, so a compaction that removed some of them is noticed.
+            CouponChangeFeed feed = feedRepository.findById(CouponChangeFeed.ID)
+                    .orElse(new CouponChangeFeed(CouponChangeFeed.ID, 0L, 0L));
+            if (since < feed.getCompactedVersion() || since > feed.getVersion()) {
+                return new CouponChanges(since, feed.getVersion(), true, false, List.of(), List.of());
+            }
+
+            boolean hasMore = changes.size() > limit;
+            if (hasMore) {
+                changes = changes.subList(0, limit);
+            }
+            Map<Long, Boolean> latest = new LinkedHashMap<>();
+            for (CouponChange change : changes) {
+                latest.remove(change.getCouponId());
+                latest.put(change.getCouponId(), change.isDeleted());
+            }
+
+            List<Coupon> upserts = new ArrayList<>();
+            List<Long> deleted = new ArrayList<>();
+            latest.forEach((couponId, isDeleted) -> {
+                Optional<Coupon> coupon = isDeleted ? Optional.empty() : couponRepository.findById(couponId);
+                if (coupon.isPresent()) {
+                    upserts.add(coupon.get());
+                } else {
+                    deleted.add(couponId);
+                }
+            });
+            long version = changes.isEmpty() ? since : changes.get(changes.size() - 1).getVersion();
+            return new CouponChanges(since, version, false, hasMore, upserts, deleted);
+        });
+    }
+
+    /**
+     * Brings the catalog up to the latest version in the feed.
+     */
+    public synchronized void poll() {
+        CouponChanges changes;
+        do {
+            long since = couponCatalog.feedVersion();
+            changes = changesSince(since, MAX_PAGE_SIZE);
+            if (changes.reset()) {
+                log.info("Catalog at change version {} is behind the compacted feed, reloading", since);
+                couponCatalog.reload();
+                return;
+            }
+            couponCatalog.applyChanges(changes.upserts(), changes.deleted(), changes.version());
+        } while (changes.hasMore());
+    }
+
+    /**
+     * Drops changes older than the retention period. Readers still behind them are told to reload.
+     */
+    public void compact() {
+        Long through = changeRepository.findLastVersionBefore(clock.instant().minus(retention));
+        if (through == null) {
+            return;
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            CouponChangeFeed feed = feedRepository.lockById(CouponChangeFeed.ID).orElseThrow();
+            if (through > feed.getCompactedVersion()) {
+                feed.setCompactedVersion(through);
+                int removed = changeRepository.deleteThrough(through);
+                log.info("Compacted {} coupon changes through version {}", removed, through);
+            }
+        });
+    }
+
+    private void pollQuietly() {
+        try {
+            poll();
+        } catch (RuntimeException e) {
+            log.warn("Could not poll the coupon change feed: {}", e.getMessage());
+        }
+    }
+
+    private void compactQuietly() {
+        try {
+            compact();
+        } catch (RuntimeException e) {
+            log.warn("Could not compact the coupon change feed: {}", e.getMessage());
+        }
+    }
+
+    private static boolean isPositive(Duration duration) {
+        return !duration.isZero() && !duration.isNegative();
+    }
+}
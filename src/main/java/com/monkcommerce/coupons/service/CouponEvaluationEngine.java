@@ -0,0 +1,261 @@
+package com.monkcommerce.coupons.service;
+
+import com.monkcommerce.coupons.dto.ApplicableCoupon;
+import com.monkcommerce.coupons.dto.CouponExplanation;
+import com.monkcommerce.coupons.metrics.CouponMetrics;
+import com.monkcommerce.coupons.rule.CartIndex;
+import com.monkcommerce.coupons.rule.CouponRule;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Evaluates candidate coupons against a cart. Below {@code parallel-threshold} candidates the work
+ * runs on the calling thread; above it the candidates are split into chunks on a bounded fork-join
+ * pool. Each discount is written to its candidate's slot, so the result order never depends on the
+ * execution order.
+ */
+@Component
+@RequiredArgsConstructor
+public class CouponEvaluationEngine {
+
+    /**
+     * Best coupon first: higher discount wins, ties go to the lower coupon id.
+     */
+    public static final Comparator<ApplicableCoupon> BEST_FIRST =
+            Comparator.comparingDouble(ApplicableCoupon::getDiscount).reversed()
+                    .thenComparing(ApplicableCoupon::getCouponId);
+
+    private final DiscountService discountService;
+    private final CouponMetrics metrics;
+
+    @Value("${coupons.evaluation.parallel-threshold:4096}")
+    private int parallelThreshold;
+
+    @Value("${coupons.evaluation.chunk-size:1024}")
+    private int chunkSize;
+
+    @Value("${coupons.evaluation.parallelism:0}")
+    private int parallelism;
+
+    private ForkJoinPool pool;
+
+    @PostConstruct
+    void start() {
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        pool = new ForkJoinPool(threads);
+    }
+
+    @PreDestroy
+    void stop() {
+        pool.shutdown();
+    }
+
+    public List<ApplicableCoupon> applicableCoupons(List<CouponRule> candidates, CartIndex cart) {
+        double[] discounts = evaluate(candidates, cart);
+
+        List<ApplicableCoupon> applicableCoupons = new ArrayList<>();
+        for (int i = 0; i < discounts.length; i++) {
+            if (discounts[i] > 0) {
+                CouponRule rule = candidates.get(i);
+                applicableCoupons.add(ApplicableCoupon.builder()
+                        .couponId(rule.couponId())
+                        .type(rule.type().toString())
+                        .discount(discounts[i])
+                        .build());
+            }
+        }
+        return applicableCoupons;
+    }
+
+    /**
+     * Returns the {@code k} best applicable coupons in {@link #BEST_FIRST} order. Candidates are
+     * visited in descending order of their discount upper bound, and the scan stops once no remaining
+     * bound can beat the current k-th best, so the result equals a full scan followed by a sort.
+     * Coupons whose bound is exact are not evaluated a second time.
+     */
+    public List<ApplicableCoupon> topApplicableCoupons(List<CouponRule> candidates, CartIndex cart, int k) {
+        long start = System.nanoTime();
+        int size = candidates.size();
+        double[] bounds = new double[size];
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            bounds[i] = discountService.upperBound(candidates.get(i), cart);
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(bounds[b], bounds[a]));
+
+        PriorityQueue<ApplicableCoupon> best = new PriorityQueue<>(Math.min(k, size) + 1, BEST_FIRST.reversed());
+        for (int i : order) {
+            double bound = bounds[i];
+            if (bound <= 0 || (best.size() == k && bound < best.peek().getDiscount())) {
+                break;
+            }
+
+            CouponRule rule = candidates.get(i);
+            double discount = discountService.isExactBound(rule) ? bound : evaluateOne(rule, cart);
+            if (discount > 0) {
+                best.add(ApplicableCoupon.builder()
+                        .couponId(rule.couponId())
+                        .type(rule.type().toString())
+                        .discount(discount)
+                        .build());
+                if (best.size() > k) {
+                    best.poll();
+                }
+            }
+        }
+
+        List<ApplicableCoupon> result = new ArrayList<>(best);
+        result.sort(BEST_FIRST);
+        metrics.recordScan(true, System.nanoTime() - start);
+        return result;
+    }
+
+    /**
+     * Explains how {@link #applicableCoupons}, or {@link #topApplicableCoupons} when {@code top} is
+     * given, handles each candidate, in candidate order. Every candidate is timed on the calling
+     * thread. This is a separate path so the evaluation paths above carry no explain overhead.
+     */
+    public List<CouponExplanation> explain(List<CouponRule> candidates, CartIndex cart, Integer top) {
+        int size = candidates.size();
+        CouponExplanation[] explanations = new CouponExplanation[size];
+        if (top == null) {
+            for (int i = 0; i < size; i++) {
+                explanations[i] = explainOne(candidates.get(i), cart, null);
+            }
+            return Arrays.asList(explanations);
+        }
+
+        double[] bounds = new double[size];
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            bounds[i] = discountService.upperBound(candidates.get(i), cart);
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(bounds[b], bounds[a]));
+
+        PriorityQueue<Double> best = new PriorityQueue<>(Math.min(top, size) + 1);
+        boolean pruning = false;
+        for (int i : order) {
+            CouponRule rule = candidates.get(i);
+            double bound = bounds[i];
+            pruning |= bound <= 0 || (best.size() == top && bound < best.peek());
+            if (!pruning) {
+                explanations[i] = explainOne(rule, cart, bound);
+                if (explanations[i].getDiscount() > 0) {
+                    best.add(explanations[i].getDiscount());
+                    if (best.size() > top) {
+                        best.poll();
+                    }
+                }
+                continue;
+            }
+
+            DiscountService.Rejection rejection = bound <= 0
+                    ? discountService.rejection(rule, cart)
+                    : new DiscountService.Rejection(CouponExplanation.Reason.OUTRANKED,
+                            "Upper bound " + bound + " is below the top " + top + " discount " + best.peek());
+            explanations[i] = CouponExplanation.builder()
+                    .couponId(rule.couponId())
+                    .type(rule.type().toString())
+                    .path(CouponExplanation.Path.BOUND_PRUNED)
+                    .upperBound(bound)
+                    .rejection(rejection.reason())
+                    .detail(rejection.detail())
+                    .build();
+        }
+        return Arrays.asList(explanations);
+    }
+
+    private CouponExplanation explainOne(CouponRule rule, CartIndex cart, Double bound) {
+        CouponExplanation.CouponExplanationBuilder explanation = CouponExplanation.builder()
+                .couponId(rule.couponId())
+                .type(rule.type().toString())
+                .path(CouponExplanation.Path.EVALUATED)
+                .upperBound(bound);
+        long start = System.nanoTime();
+        try {
+            double discount = discountService.calculateDiscount(rule, cart);
+            explanation.evaluationNanos(System.nanoTime() - start).discount(discount);
+            if (discount <= 0) {
+                DiscountService.Rejection rejection = discountService.rejection(rule, cart);
+                explanation.rejection(rejection.reason()).detail(rejection.detail());
+            }
+        } catch (RuntimeException e) {
+            explanation.evaluationNanos(System.nanoTime() - start)
+                    .rejection(CouponExplanation.Reason.EVALUATION_FAILED)
+                    .detail(e.getClass().getSimpleName() + ": " + e.getMessage());
+        }
+        return explanation.build();
+    }
+
+    public double[] evaluate(List<CouponRule> candidates, CartIndex cart) {
+        long start = System.nanoTime();
+        double[] discounts = new double[candidates.size()];
+        if (candidates.size() < parallelThreshold) {
+            evaluateRange(candidates, cart, discounts, 0, candidates.size());
+        } else {
+            pool.invoke(new EvaluateTask(candidates, cart, discounts, 0, candidates.size()));
+        }
+        metrics.recordScan(false, System.nanoTime() - start);
+        return discounts;
+    }
+
+    private void evaluateRange(List<CouponRule> candidates, CartIndex cart, double[] discounts, int from, int to) {
+        for (int i = from; i < to; i++) {
+            discounts[i] = evaluateOne(candidates.get(i), cart);
+        }
+    }
+
+    /**
+     * A rule that throws is counted and treated as not applicable so one bad coupon cannot fail the
+     * whole request.
+     */
+    private double evaluateOne(CouponRule rule, CartIndex cart) {
+        try {
+            return discountService.calculateDiscount(rule, cart);
+        } catch (RuntimeException e) {
+            metrics.recordEvaluationFailure(rule, e);
+            return 0;
+        }
+    }
+
+    private final class EvaluateTask extends RecursiveAction {
+
+        private final List<CouponRule> candidates;
+        private final CartIndex cart;
+        private final double[] discounts;
+        private final int from;
+        private final int to;
+
+        private EvaluateTask(List<CouponRule> candidates, CartIndex cart, double[] discounts, int from, int to) {
+            this.candidates = candidates;
+            this.cart = cart;
+            this.discounts = discounts;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= chunkSize) {
+                evaluateRange(candidates, cart, discounts, from, to);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new EvaluateTask(candidates, cart, discounts, from, mid),
+                    new EvaluateTask(candidates, cart, discounts, mid, to));
+        }
+    }
+}
@@ -1,14 +1,28 @@
 package com.monkcommerce.coupons.service;
 
+import com.monkcommerce.coupons.catalog.CatalogEntry;
+import com.monkcommerce.coupons.catalog.CatalogSnapshot;
+import com.monkcommerce.coupons.catalog.CouponCatalog;
 import com.monkcommerce.coupons.dto.ApplicableCoupon;
 import com.monkcommerce.coupons.dto.ApplicableCouponsResponse;
 import com.monkcommerce.coupons.dto.ApplyCouponResponse;
 import com.monkcommerce.coupons.dto.Cart;
+import com.monkcommerce.coupons.dto.CouponChangesResponse;
+import com.monkcommerce.coupons.dto.CouponExplanation;
 import com.monkcommerce.coupons.dto.CouponResponse;
 import com.monkcommerce.coupons.dto.CreateCouponRequest;
+import com.monkcommerce.coupons.dto.EvaluationExplanation;
 import com.monkcommerce.coupons.dto.UpdatedCart;
+import com.monkcommerce.coupons.metrics.CouponMetrics;
 import com.monkcommerce.coupons.model.Coupon;
+import com.monkcommerce.coupons.model.CouponType;
 import com.monkcommerce.coupons.repository.CouponRepository;
+import com.monkcommerce.coupons.rule.CartFingerprint;
+import com.monkcommerce.coupons.rule.CartIndex;
+import com.monkcommerce.coupons.rule.CouponRule;
+import com.monkcommerce.coupons.rule.InvalidCouponDetailsException;
+import com.monkcommerce.coupons.rule.ProductSetRule;
+import com.monkcommerce.coupons.rule.RuleCompiler;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -16,9 +30,14 @@ import org.springframework.http.HttpStatus;
 import org.springframework.web.server.ResponseStatusException;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 
@@ -26,34 +45,56 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class CouponService {
 
+    private static final int MAX_PAGE_SIZE = 1000;
+
     private final CouponRepository couponRepository;
     private final DiscountService discountService;
+    private final CouponEvaluationEngine evaluationEngine;
+    private final CouponMetrics metrics;
+    private final RuleCompiler ruleCompiler;
+    private final CouponCatalog couponCatalog;
+    private final ApplicableCouponsCache resultCache;
+    private final EvaluationCoalescer coalescer;
+    private final RedemptionService redemptionService;
+    private final CouponChangeService changeService;
     private final ObjectMapper objectMapper = new ObjectMapper();
 
+    @Transactional
     public CouponResponse createCoupon(CreateCouponRequest request) {
         String detailsJson = convertDetailsToJson(request.getDetails());
+        CouponRule rule = validateDetails(request.getType(), detailsJson);
 
         Coupon coupon = Coupon.builder()
                 .type(request.getType())
                 .details(detailsJson)
                 .build();
+        ruleCompiler.normalize(coupon, rule);
+        applyValidity(coupon, request);
+        applyLimits(coupon, request);
 
         Coupon saved = couponRepository.save(coupon);
+        changeService.record(saved.getId(), false);
+        couponCatalog.upsertAfterCommit(saved);
 
-        return CouponResponse.builder()
-                .id(saved.getId())
-                .type(saved.getType())
-                .details(convertJsonToObject(saved.getDetails()))
-                .build();
+        CouponResponse response = toResponse(saved);
+        response.setProductSetBytes(productSetBytes(rule));
+        return response;
     }
 
     public List<CouponResponse> getAllCoupons() {
-        return couponRepository.findAll().stream()
-                .map(c -> CouponResponse.builder()
-                        .id(c.getId())
-                        .type(c.getType())
-                        .details(convertJsonToObject(c.getDetails()))
-                        .build())
+        return couponCatalog.entries().stream()
+                .map(this::toResponse)
+                .collect(Collectors.toList());
+    }
+
+    public List<CouponResponse> getCoupons(long after, int limit, CouponType type) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+
+        return couponCatalog.page(after, limit, type).stream()
+                .map(this::toResponse)
                 .collect(Collectors.toList());
     }
 
@@ -65,83 +106,305 @@ public class CouponService {
         }
     }
 
-    private Object convertJsonToObject(String json) {
+    private CouponRule validateDetails(CouponType type, String detailsJson) {
         try {
-            return objectMapper.readValue(json, Object.class);
-        } catch (JsonProcessingException e) {
-            return json;
+            return ruleCompiler.compile(0L, 0L, type, detailsJson);
+        } catch (InvalidCouponDetailsException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
         }
     }
 
-    public CouponResponse getCouponById(Long id) {
-        Coupon coupon = couponRepository.findById(id)
-                .orElseThrow(() -> new RuntimeException("Coupon not found with id: " + id));
+    /**
+     * Copies the validity window onto {@code coupon}, truncated to the millisecond precision the
+     * catalog keeps.
+     */
+    private void applyValidity(Coupon coupon, CreateCouponRequest request) {
+        Instant validFrom = request.getValidFrom() != null
+                ? request.getValidFrom().truncatedTo(ChronoUnit.MILLIS) : null;
+        Instant validUntil = request.getValidUntil() != null
+                ? request.getValidUntil().truncatedTo(ChronoUnit.MILLIS) : null;
+        if (validFrom != null && validUntil != null && !validUntil.isAfter(validFrom)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "validUntil must be after validFrom");
+        }
+        coupon.setValidFrom(validFrom);
+        coupon.setValidUntil(validUntil);
+    }
+
+    private void applyLimits(Coupon coupon, CreateCouponRequest request) {
+        if ((request.getMaxRedemptions() != null && request.getMaxRedemptions() < 1)
+                || (request.getMaxRedemptionsPerCustomer() != null && request.getMaxRedemptionsPerCustomer() < 1)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Redemption limits must be at least 1");
+        }
+        coupon.setMaxRedemptions(request.getMaxRedemptions());
+        coupon.setMaxRedemptionsPerCustomer(request.getMaxRedemptionsPerCustomer());
+    }
 
+    private CouponResponse toResponse(CatalogEntry entry) {
+        return CouponResponse.builder()
+                .id(entry.id())
+                .type(entry.type())
+                .details(entry.details())
+                .validFrom(entry.validFromInstant())
+                .validUntil(entry.validUntilInstant())
+                .maxRedemptions(entry.maxRedemptionsOrNull())
+                .maxRedemptionsPerCustomer(entry.maxRedemptionsPerCustomerOrNull())
+                .productSetBytes(productSetBytes(entry.rule()))
+                .build();
+    }
+
+    private static Long productSetBytes(CouponRule rule) {
+        return rule instanceof ProductSetRule productSet ? productSet.products().memoryBytes() : null;
+    }
+
+    private CouponResponse toResponse(Coupon coupon) {
         return CouponResponse.builder()
                 .id(coupon.getId())
                 .type(coupon.getType())
-                .details(convertJsonToObject(coupon.getDetails()))
+                .details(coupon.getDetails())
+                .validFrom(coupon.getValidFrom())
+                .validUntil(coupon.getValidUntil())
+                .maxRedemptions(coupon.getMaxRedemptions())
+                .maxRedemptionsPerCustomer(coupon.getMaxRedemptionsPerCustomer())
                 .build();
     }
 
+    public CouponResponse getCouponById(Long id) {
+        CatalogEntry entry = couponCatalog.find(id)
+                .orElseThrow(() -> new RuntimeException("Coupon not found with id: " + id));
+
+        return toResponse(entry);
+    }
+
+    @Transactional
     public CouponResponse updateCoupon(Long id, CreateCouponRequest request) {
         Coupon coupon = couponRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("Coupon not found with id: " + id));
 
         String detailsJson = convertDetailsToJson(request.getDetails());
+        CouponRule rule = validateDetails(request.getType(), detailsJson);
 
         coupon.setType(request.getType());
         coupon.setDetails(detailsJson);
+        ruleCompiler.normalize(coupon, rule);
+        applyValidity(coupon, request);
+        applyLimits(coupon, request);
 
-        Coupon updated = couponRepository.save(coupon);
+        Coupon updated = couponRepository.saveAndFlush(coupon);
+        changeService.record(updated.getId(), false);
+        couponCatalog.upsertAfterCommit(updated);
 
-        return CouponResponse.builder()
-                .id(updated.getId())
-                .type(updated.getType())
-                .details(convertJsonToObject(updated.getDetails()))
-                .build();
+        CouponResponse response = toResponse(updated);
+        response.setProductSetBytes(productSetBytes(rule));
+        return response;
     }
 
+    @Transactional
     public void deleteCoupon(Long id) {
         Coupon coupon = couponRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("Coupon not found with id: " + id));
 
         couponRepository.delete(coupon);
+        changeService.record(id, true);
+        couponCatalog.removeAfterCommit(id);
+        redemptionService.removeAfterCommit(id);
+    }
+
+    public CouponChangesResponse getChanges(long since, int limit) {
+        CouponChangeService.CouponChanges changes = changeService.changesSince(since, limit);
+        return CouponChangesResponse.builder()
+                .since(changes.since())
+                .version(changes.version())
+                .reset(changes.reset())
+                .hasMore(changes.hasMore())
+                .upserts(changes.upserts().stream().map(this::toResponse).collect(Collectors.toList()))
+                .deleted(changes.deleted())
+                .build();
     }
 
 
     public ApplicableCouponsResponse getApplicableCoupons(Cart cart) {
-        List<Coupon> allCoupons = couponRepository.findAll();
-        List<ApplicableCoupon> applicableCoupons = new ArrayList<>();
+        return getApplicableCoupons(null, cart);
+    }
 
-        for (Coupon coupon : allCoupons) {
-            double discount = discountService.calculateDiscount(coupon, cart);
-            if (discount > 0) {
+    /**
+     * Evaluates the cart against {@code pinned}, or against the catalog's snapshot for this cart
+     * when {@code pinned} is null. Results are cached per catalog version while the catalog is
+     * held in memory.
+     */
+    public ApplicableCouponsResponse getApplicableCoupons(CatalogSnapshot pinned, Cart cart) {
+        long start = System.nanoTime();
+        ApplicableCouponsResponse response = findApplicableCoupons(pinned, CartIndex.of(cart));
+        metrics.recordApplicable(System.nanoTime() - start, response.getApplicableCoupons().size());
+        return response;
+    }
+
+    private ApplicableCouponsResponse findApplicableCoupons(CatalogSnapshot pinned, CartIndex cartIndex) {
+        if (!couponCatalog.isEnabled()) {
+            return evaluateApplicableCoupons(0L, couponCatalog.findCandidates(cartIndex), cartIndex);
+        }
+
+        CatalogSnapshot snapshot = pinned != null ? pinned : couponCatalog.snapshot();
+        CartFingerprint fingerprint = CartFingerprint.of(cartIndex);
+        return resultCache.get(snapshot.version(), fingerprint,
+                () -> coalescer.execute(snapshot.version(), EvaluationCoalescer.ALL_COUPONS, fingerprint,
+                        () -> evaluateApplicableCoupons(snapshot.version(), snapshot.index().candidates(cartIndex),
+                                cartIndex)));
+    }
+
+    private ApplicableCouponsResponse evaluateApplicableCoupons(long catalogVersion, List<CouponRule> candidates,
+            CartIndex cartIndex) {
+        metrics.recordCandidates(candidates.size());
+        return ApplicableCouponsResponse.builder()
+                .applicableCoupons(evaluationEngine.applicableCoupons(candidates, cartIndex))
+                .catalogVersion(catalogVersion)
+                .build();
+    }
+
+    public ApplicableCouponsResponse getTopApplicableCoupons(Cart cart, int top) {
+        if (top < 1) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "top must be at least 1");
+        }
+
+        CartIndex cartIndex = CartIndex.of(cart);
+        CatalogSnapshot snapshot = couponCatalog.isEnabled() ? couponCatalog.snapshot() : null;
+        List<CouponRule> candidates = snapshot != null
+                ? snapshot.index().candidates(cartIndex)
+                : couponCatalog.findCandidates(cartIndex);
+
+        return ApplicableCouponsResponse.builder()
+                .applicableCoupons(evaluationEngine.topApplicableCoupons(candidates, cartIndex, top))
+                .catalogVersion(snapshot != null ? snapshot.version() : 0L)
+                .build();
+    }
+
+    /**
+     * Evaluates the cart as {@link #getApplicableCoupons(Cart)}, or {@link #getTopApplicableCoupons}
+     * when {@code top} is given, without the result cache or coalescing, and explains what happened
+     * to every coupon in the snapshot: how long it took, which path it went down and why it was
+     * left out.
+     */
+    public ApplicableCouponsResponse explainApplicableCoupons(Cart cart, Integer top) {
+        if (top != null && top < 1) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "top must be at least 1");
+        }
+
+        CartIndex cartIndex = CartIndex.of(cart);
+        CatalogSnapshot snapshot = couponCatalog.snapshotFor(cartIndex);
+        long start = System.nanoTime();
+        List<CouponRule> candidates = snapshot.index().candidates(cartIndex);
+        long indexNanos = System.nanoTime() - start;
+        start = System.nanoTime();
+        List<CouponExplanation> evaluated = evaluationEngine.explain(candidates, cartIndex, top);
+        long evaluationNanos = System.nanoTime() - start;
+
+        List<ApplicableCoupon> applicableCoupons = new ArrayList<>();
+        for (CouponExplanation explanation : evaluated) {
+            if (explanation.getDiscount() > 0) {
                 applicableCoupons.add(ApplicableCoupon.builder()
-                        .couponId(coupon.getId())
-                        .type(coupon.getType().toString())
-                        .discount(discount)
+                        .couponId(explanation.getCouponId())
+                        .type(explanation.getType())
+                        .discount(explanation.getDiscount())
                         .build());
             }
         }
+        if (top != null) {
+            applicableCoupons.sort(CouponEvaluationEngine.BEST_FIRST);
+            applicableCoupons = applicableCoupons.subList(0, Math.min(top, applicableCoupons.size()));
+        }
 
         return ApplicableCouponsResponse.builder()
                 .applicableCoupons(applicableCoupons)
+                .catalogVersion(snapshot.version())
+                .explain(EvaluationExplanation.builder()
+                        .indexNanos(indexNanos)
+                        .evaluationNanos(evaluationNanos)
+                        .candidates(candidates.size())
+                        .coupons(withIndexMisses(snapshot, cartIndex, evaluated))
+                        .build())
                 .build();
     }
 
+    /**
+     * Merges the explanations of the evaluated candidates with one for every other coupon in the
+     * snapshot, all ordered by coupon id.
+     */
+    private List<CouponExplanation> withIndexMisses(CatalogSnapshot snapshot, CartIndex cart,
+            List<CouponExplanation> evaluated) {
+        List<CouponExplanation> coupons = new ArrayList<>(snapshot.size());
+        int next = 0;
+        for (CatalogEntry entry : snapshot.entries()) {
+            if (next < evaluated.size() && evaluated.get(next).getCouponId() == entry.id()) {
+                coupons.add(evaluated.get(next++));
+                continue;
+            }
+            DiscountService.Rejection rejection = snapshot.isActive(entry.id())
+                    ? discountService.rejection(entry.rule(), cart)
+                    : new DiscountService.Rejection(CouponExplanation.Reason.NOT_ACTIVE,
+                            "Outside its validity window"
+                                    + (entry.validFromInstant() != null ? " from " + entry.validFromInstant() : "")
+                                    + (entry.validUntilInstant() != null ? " until " + entry.validUntilInstant() : ""));
+            coupons.add(CouponExplanation.builder()
+                    .couponId(entry.id())
+                    .type(entry.type().toString())
+                    .path(CouponExplanation.Path.INDEX_MISS)
+                    .rejection(rejection.reason())
+                    .detail(rejection.detail())
+                    .build());
+        }
+        return coupons;
+    }
+
+    public Optional<ApplicableCoupon> getBestCoupon(Cart cart) {
+        return getTopApplicableCoupons(cart, 1).getApplicableCoupons().stream().findFirst();
+    }
+
     public ApplyCouponResponse applyCoupon(Long id, Cart cart) {
+        return applyCoupon(id, cart, null);
+    }
+
+    /**
+     * Applies coupon {@code id} to {@code cart} and, if it gives a discount, counts one redemption
+     * by {@code customerId} against the coupon's limits.
+     */
+    public ApplyCouponResponse applyCoupon(Long id, Cart cart, String customerId) {
         if (cart == null || cart.getItems() == null) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Cart or cart.items is missing");
         }
 
-        Coupon coupon = couponRepository.findById(id)
-            .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Coupon not found with id: " + id));
+        CatalogSnapshot snapshot = couponCatalog.snapshot();
+        Optional<CatalogEntry> found = couponCatalog.isEnabled()
+                ? Optional.ofNullable(snapshot.get(id))
+                : couponCatalog.find(id);
+        CatalogEntry entry = found
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Coupon not found with id: " + id));
+        boolean active = couponCatalog.isEnabled()
+                ? snapshot.isActive(id)
+                : entry.isActiveAt(couponCatalog.currentTimeMillis());
+        if (!active) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Coupon " + id + " is not active");
+        }
 
-        UpdatedCart updatedCart = discountService.applyDiscount(coupon, cart);
+        RedemptionService.Redemption redemption = redemptionService.reserve(entry, customerId);
+        Supplier<UpdatedCart> apply = () -> metrics.recordApply(entry.type(),
+                () -> discountService.applyDiscount(entry.rule(), cart));
+        UpdatedCart updatedCart;
+        try {
+            updatedCart = couponCatalog.isEnabled()
+                    ? coalescer.execute(snapshot.version(), id, CartFingerprint.ordered(cart), apply)
+                    : apply.get();
+        } catch (RuntimeException e) {
+            redemption.release();
+            throw e;
+        }
+        if (updatedCart.getTotalDiscount() > 0) {
+            redemption.commit();
+        } else {
+            redemption.release();
+        }
 
         return ApplyCouponResponse.builder()
             .updatedCart(updatedCart)
+            .catalogVersion(snapshot.version())
             .build();
     }
 
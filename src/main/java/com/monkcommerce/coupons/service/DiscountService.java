@@ -1,96 +1,179 @@
 package com.monkcommerce.coupons.service;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.monkcommerce.coupons.dto.Cart;
 import com.monkcommerce.coupons.dto.CartItem;
+import com.monkcommerce.coupons.dto.CouponExplanation;
 import com.monkcommerce.coupons.dto.UpdatedCart;
 import com.monkcommerce.coupons.model.Coupon;
+import com.monkcommerce.coupons.rule.BxGyRule;
+import com.monkcommerce.coupons.rule.CartIndex;
+import com.monkcommerce.coupons.rule.CartWiseRule;
+import com.monkcommerce.coupons.rule.CouponRule;
+import com.monkcommerce.coupons.rule.CouponRuleCache;
+import com.monkcommerce.coupons.rule.ProductSetRule;
+import com.monkcommerce.coupons.rule.ProductWiseRule;
+import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 
 @Service
+@RequiredArgsConstructor
 public class DiscountService {
 
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    private static final double BOUND_SLACK = 1 + 1e-9;
+
+    private final CouponRuleCache ruleCache;
+
+    public record Rejection(CouponExplanation.Reason reason, String detail) {
+    }
 
     public double calculateDiscount(Coupon coupon, Cart cart) {
-        try {
-            Map<String, Object> details = objectMapper.readValue(coupon.getDetails(), Map.class);
-            
-            switch (coupon.getType()) {
-                case CART_WISE:
-                    return calculateCartWiseDiscount(details, cart);
-                case PRODUCT_WISE:
-                    return calculateProductWiseDiscount(details, cart);
-                case BXGY:
-                    return calculateBxGyDiscount(details, cart);
-                default:
-                    return 0;
+        return calculateDiscount(ruleCache.get(coupon), CartIndex.of(cart));
+    }
+
+    public UpdatedCart applyDiscount(Coupon coupon, Cart cart) {
+        return applyDiscount(ruleCache.get(coupon), cart);
+    }
+
+    public double calculateDiscount(CouponRule rule, Cart cart) {
+        return calculateDiscount(rule, CartIndex.of(cart));
+    }
+
+    public double calculateDiscount(CouponRule rule, CartIndex cart) {
+        return switch (rule) {
+            case CartWiseRule cartWise -> calculateCartWiseDiscount(cartWise, cart);
+            case ProductWiseRule productWise -> calculateProductWiseDiscount(productWise, cart);
+            case BxGyRule bxGy -> calculateBxGyDiscount(bxGy, cart);
+            case ProductSetRule productSet -> calculateProductSetDiscount(productSet, cart);
+        };
+    }
+
+    public UpdatedCart applyDiscount(CouponRule rule, Cart cart) {
+        CartIndex index = CartIndex.of(cart);
+        return switch (rule) {
+            case CartWiseRule cartWise -> createUpdatedCart(cart, index, calculateCartWiseDiscount(cartWise, index));
+            case ProductWiseRule productWise -> applyProductWiseDiscount(productWise, cart, index);
+            case BxGyRule bxGy -> applyBxGyDiscount(bxGy, cart, index);
+            case ProductSetRule productSet -> applyProductSetDiscount(productSet, cart, index);
+        };
+    }
+
+    /**
+     * Returns a value that is never below {@link #calculateDiscount(CouponRule, CartIndex)} for the
+     * same cart. For BXGY rules it is cheaper to compute, as the buy condition is not checked; for
+     * every other type it is the exact discount.
+     */
+    public double upperBound(CouponRule rule, CartIndex cart) {
+        return switch (rule) {
+            case CartWiseRule cartWise -> calculateCartWiseDiscount(cartWise, cart);
+            case ProductWiseRule productWise -> calculateProductWiseDiscount(productWise, cart);
+            case BxGyRule bxGy -> bxGyUpperBound(bxGy, cart);
+            case ProductSetRule productSet -> calculateProductSetDiscount(productSet, cart);
+        };
+    }
+
+    /**
+     * Whether {@link #upperBound} is the discount itself for {@code rule}, so callers that computed
+     * the bound need not evaluate the rule again.
+     */
+    public boolean isExactBound(CouponRule rule) {
+        return !(rule instanceof BxGyRule);
+    }
+
+    /**
+     * Why {@code rule} gives no discount on {@code cart}. Only meant for explaining a zero result,
+     * so it re-checks the rule's conditions rather than adding bookkeeping to the discount path.
+     */
+    public Rejection rejection(CouponRule rule, CartIndex cart) {
+        return switch (rule) {
+            case CartWiseRule cartWise -> cart.total() > cartWise.threshold()
+                    ? zeroDiscount(cartWise.percent())
+                    : new Rejection(CouponExplanation.Reason.THRESHOLD_NOT_MET,
+                            "Cart total " + cart.total() + " is not above threshold " + cartWise.threshold());
+            case ProductWiseRule productWise -> cart.quantity(productWise.productId()) > 0
+                    ? zeroDiscount(productWise.percent())
+                    : new Rejection(CouponExplanation.Reason.PRODUCT_NOT_IN_CART,
+                            "Product " + productWise.productId() + " is not in the cart");
+            case BxGyRule bxGy -> bxGyRejection(bxGy, cart);
+            case ProductSetRule productSet -> productSetRejection(productSet, cart);
+        };
+    }
+
+    private Rejection bxGyRejection(BxGyRule rule, CartIndex cart) {
+        if (dealsApplicable(rule, cart) <= 0) {
+            return new Rejection(CouponExplanation.Reason.BUY_QUANTITY_NOT_MET,
+                    "Cart has fewer than " + rule.buyQuantityNeeded() + " of the buy products");
+        }
+        for (long productId : rule.getProductIds()) {
+            if (cart.quantity(productId) > 0) {
+                return new Rejection(CouponExplanation.Reason.ZERO_DISCOUNT, "The get products in the cart are free");
             }
-        } catch (Exception e) {
-            return 0;
         }
+        return new Rejection(CouponExplanation.Reason.GET_PRODUCT_NOT_IN_CART, "None of the get products is in the cart");
     }
 
-    public UpdatedCart applyDiscount(Coupon coupon, Cart cart) {
-        try {
-            Map<String, Object> details = objectMapper.readValue(coupon.getDetails(), Map.class);
-            
-            switch (coupon.getType()) {
-                case CART_WISE:
-                    return applyCartWiseDiscount(details, cart);
-                case PRODUCT_WISE:
-                    return applyProductWiseDiscount(details, cart);
-                case BXGY:
-                    return applyBxGyDiscount(details, cart);
-                default:
-                    return createUpdatedCart(cart, 0);
+    private Rejection productSetRejection(ProductSetRule rule, CartIndex cart) {
+        if (rule.coversAny(cart)) {
+            return zeroDiscount(rule.percent());
+        }
+        return new Rejection(CouponExplanation.Reason.PRODUCT_NOT_IN_CART,
+                "None of the " + rule.products().size() + " products is in the cart");
+    }
+
+    private static Rejection zeroDiscount(double percent) {
+        return new Rejection(CouponExplanation.Reason.ZERO_DISCOUNT,
+                percent > 0 ? "Discounted value is zero" : "Discount is " + percent + "%");
+    }
+
+    private double bxGyUpperBound(BxGyRule rule, CartIndex cart) {
+        double getItemsValue = 0;
+        double maxGetPrice = 0;
+        for (long productId : rule.getProductIds()) {
+            for (int line = cart.firstLine(productId); line >= 0; line = cart.nextLine(line)) {
+                if (cart.lineQuantity(line) > 0) {
+                    getItemsValue += cart.lineQuantity(line) * cart.linePrice(line);
+                    maxGetPrice = Math.max(maxGetPrice, cart.linePrice(line));
+                }
             }
-        } catch (Exception e) {
-            return createUpdatedCart(cart, 0);
         }
+
+        double maxFreeValue = (double) rule.repetitionLimit() * rule.getQuantityPerDeal() * maxGetPrice;
+        return Math.min(getItemsValue, maxFreeValue) * BOUND_SLACK;
     }
 
-    private double calculateCartWiseDiscount(Map<String, Object> details, Cart cart) {
-        double threshold = ((Number) details.get("threshold")).doubleValue();
-        double discountPercent = ((Number) details.get("discount")).doubleValue();
-        
-        double cartTotal = cart.getItems().stream()
-                .mapToDouble(item -> item.getPrice() * item.getQuantity())
-                .sum();
-        
-        if (cartTotal > threshold) {
-            return (cartTotal * discountPercent) / 100;
+    private double calculateCartWiseDiscount(CartWiseRule rule, CartIndex cart) {
+        double cartTotal = cart.total();
+
+        if (cartTotal > rule.threshold()) {
+            return (cartTotal * rule.percent()) / 100;
         }
         return 0;
     }
 
-    private UpdatedCart applyCartWiseDiscount(Map<String, Object> details, Cart cart) {
-        double discount = calculateCartWiseDiscount(details, cart);
-        return createUpdatedCart(cart, discount);
+    private double calculateProductWiseDiscount(ProductWiseRule rule, CartIndex cart) {
+        return (cart.value(rule.productId()) * rule.percent()) / 100;
     }
 
-    private double calculateProductWiseDiscount(Map<String, Object> details, Cart cart) {
-        long productId = ((Number) details.get("product_id")).longValue();
-        double discountPercent = ((Number) details.get("discount")).doubleValue();
-        
-        return cart.getItems().stream()
-                .filter(item -> item.getProductId().equals(productId))
-                .mapToDouble(item -> (item.getPrice() * item.getQuantity() * discountPercent) / 100)
-                .sum();
+    /**
+     * One set lookup per distinct product in the cart, so the cost follows the cart, not the set.
+     */
+    private double calculateProductSetDiscount(ProductSetRule rule, CartIndex cart) {
+        double value = 0;
+        for (int i = 0; i < cart.productCount(); i++) {
+            long productId = cart.productAt(i);
+            if (rule.products().contains(productId)) {
+                value += cart.value(productId);
+            }
+        }
+        return (value * rule.percent()) / 100;
     }
 
-    private UpdatedCart applyProductWiseDiscount(Map<String, Object> details, Cart cart) {
-        long productId = ((Number) details.get("product_id")).longValue();
-        double discountPercent = ((Number) details.get("discount")).doubleValue();
-        
+    private UpdatedCart applyProductSetDiscount(ProductSetRule rule, Cart cart, CartIndex index) {
         List<CartItem> updatedItems = new ArrayList<>();
         double totalDiscount = 0;
-        
+
         for (CartItem item : cart.getItems()) {
             CartItem newItem = CartItem.builder()
                     .productId(item.getProductId())
@@ -98,20 +181,52 @@ public class DiscountService {
                     .price(item.getPrice())
                     .totalDiscount(0)
                     .build();
-            
-            if (item.getProductId().equals(productId)) {
+
+            if (item.getProductId() != null && rule.products().contains(item.getProductId())) {
+                double itemDiscount = (item.getPrice() * item.getQuantity() * rule.percent()) / 100;
+                newItem.setTotalDiscount(itemDiscount);
+                totalDiscount += itemDiscount;
+            }
+
+            updatedItems.add(newItem);
+        }
+
+        double totalPrice = index.total();
+
+        return UpdatedCart.builder()
+                .items(updatedItems)
+                .totalPrice(totalPrice)
+                .totalDiscount(totalDiscount)
+                .finalPrice(totalPrice - totalDiscount)
+                .build();
+    }
+
+    private UpdatedCart applyProductWiseDiscount(ProductWiseRule rule, Cart cart, CartIndex index) {
+        long productId = rule.productId();
+        double discountPercent = rule.percent();
+
+        List<CartItem> updatedItems = new ArrayList<>();
+        double totalDiscount = 0;
+
+        for (CartItem item : cart.getItems()) {
+            CartItem newItem = CartItem.builder()
+                    .productId(item.getProductId())
+                    .quantity(item.getQuantity())
+                    .price(item.getPrice())
+                    .totalDiscount(0)
+                    .build();
+
+            if (item.getProductId() != null && item.getProductId() == productId) {
                 double itemDiscount = (item.getPrice() * item.getQuantity() * discountPercent) / 100;
                 newItem.setTotalDiscount(itemDiscount);
                 totalDiscount += itemDiscount;
             }
-            
+
             updatedItems.add(newItem);
         }
-        
-        double totalPrice = cart.getItems().stream()
-                .mapToDouble(item -> item.getPrice() * item.getQuantity())
-                .sum();
-        
+
+        double totalPrice = index.total();
+
         return UpdatedCart.builder()
                 .items(updatedItems)
                 .totalPrice(totalPrice)
@@ -120,91 +235,51 @@ public class DiscountService {
                 .build();
     }
 
-    private double calculateBxGyDiscount(Map<String, Object> details, Cart cart) {
-        List<Map<String, Object>> buyProducts = (List<Map<String, Object>>) details.get("buy_products");
-        List<Map<String, Object>> getProducts = (List<Map<String, Object>>) details.get("get_products");
-        int repetitionLimit = ((Number) details.get("repetition_limit")).intValue();
-        
-        int buyQuantityNeeded = buyProducts.stream()
-                .mapToInt(p -> ((Number) p.get("quantity")).intValue())
-                .sum();
-        
-        int buyItemsInCart = 0;
-        for (Map<String, Object> buyProduct : buyProducts) {
-            long productId = ((Number) buyProduct.get("product_id")).longValue();
-            buyItemsInCart += cart.getItems().stream()
-                    .filter(item -> item.getProductId().equals(productId))
-                    .mapToInt(CartItem::getQuantity)
-                    .sum();
+    private int dealsApplicable(BxGyRule rule, CartIndex cart) {
+        long buyItemsInCart = 0;
+        for (long productId : rule.buyProductIds()) {
+            buyItemsInCart += cart.quantity(productId);
         }
-        
-        int dealsApplicable = Math.min(buyItemsInCart / buyQuantityNeeded, repetitionLimit);
-        
-        if (dealsApplicable == 0) {
+
+        return (int) Math.min(buyItemsInCart / rule.buyQuantityNeeded(), rule.repetitionLimit());
+    }
+
+    private double calculateBxGyDiscount(BxGyRule rule, CartIndex cart) {
+        int dealsApplicable = dealsApplicable(rule, cart);
+
+        if (dealsApplicable <= 0) {
             return 0;
         }
-        
-        int getQuantityPerDeal = getProducts.stream()
-                .mapToInt(p -> ((Number) p.get("quantity")).intValue())
-                .sum();
-        
-        int totalFreeItems = dealsApplicable * getQuantityPerDeal;
-        
+
+        long totalFreeItems = (long) dealsApplicable * rule.getQuantityPerDeal();
+
         double discount = 0;
-        int remainingFreeItems = totalFreeItems;
-        
-        for (Map<String, Object> getProduct : getProducts) {
-            if (remainingFreeItems == 0) break;
-            
-            long productId = ((Number) getProduct.get("product_id")).longValue();
-            
-            for (CartItem item : cart.getItems()) {
-                if (item.getProductId().equals(productId) && remainingFreeItems > 0) {
-                    int freeQty = Math.min(item.getQuantity(), remainingFreeItems);
-                    discount += freeQty * item.getPrice();
-                    remainingFreeItems -= freeQty;
-                }
+        long remainingFreeItems = totalFreeItems;
+
+        for (long productId : rule.getProductIds()) {
+            for (int line = cart.firstLine(productId); line >= 0 && remainingFreeItems > 0; line = cart.nextLine(line)) {
+                int freeQty = (int) Math.min(cart.lineQuantity(line), remainingFreeItems);
+                discount += freeQty * cart.linePrice(line);
+                remainingFreeItems -= freeQty;
             }
         }
-        
+
         return discount;
     }
 
-    private UpdatedCart applyBxGyDiscount(Map<String, Object> details, Cart cart) {
-        double discount = calculateBxGyDiscount(details, cart);
-        
-        List<Map<String, Object>> getProducts = (List<Map<String, Object>>) details.get("get_products");
-        List<Map<String, Object>> buyProducts = (List<Map<String, Object>>) details.get("buy_products");
-        int repetitionLimit = ((Number) details.get("repetition_limit")).intValue();
-        
-        int buyQuantityNeeded = buyProducts.stream()
-                .mapToInt(p -> ((Number) p.get("quantity")).intValue())
-                .sum();
-        
-        int buyItemsInCart = 0;
-        for (Map<String, Object> buyProduct : buyProducts) {
-            long productId = ((Number) buyProduct.get("product_id")).longValue();
-            buyItemsInCart += cart.getItems().stream()
-                    .filter(item -> item.getProductId().equals(productId))
-                    .mapToInt(CartItem::getQuantity)
-                    .sum();
-        }
-        
-        int dealsApplicable = Math.min(buyItemsInCart / buyQuantityNeeded, repetitionLimit);
-        
-        if (dealsApplicable == 0) {
-            return createUpdatedCart(cart, 0);
+    private UpdatedCart applyBxGyDiscount(BxGyRule rule, Cart cart, CartIndex index) {
+        int dealsApplicable = dealsApplicable(rule, index);
+
+        if (dealsApplicable <= 0) {
+            return createUpdatedCart(cart, index, 0);
         }
-        
-        int getQuantityPerDeal = getProducts.stream()
-                .mapToInt(p -> ((Number) p.get("quantity")).intValue())
-                .sum();
-        
-        int totalFreeItems = dealsApplicable * getQuantityPerDeal;
-        
+
+        double discount = calculateBxGyDiscount(rule, index);
+        long totalFreeItems = (long) dealsApplicable * rule.getQuantityPerDeal();
+
         List<CartItem> updatedItems = new ArrayList<>();
-        int remainingFreeItems = totalFreeItems;
-        
+        long remainingFreeItems = totalFreeItems;
+
         for (CartItem item : cart.getItems()) {
             CartItem newItem = CartItem.builder()
                     .productId(item.getProductId())
@@ -212,24 +287,20 @@ public class DiscountService {
                     .price(item.getPrice())
                     .totalDiscount(0)
                     .build();
-            
-            for (Map<String, Object> getProduct : getProducts) {
-                long getProductId = ((Number) getProduct.get("product_id")).longValue();
-                
-                if (item.getProductId().equals(getProductId) && remainingFreeItems > 0) {
-                    int freeQty = Math.min(item.getQuantity(), remainingFreeItems);
+
+            for (long getProductId : rule.getProductIds()) {
+                if (item.getProductId() != null && item.getProductId() == getProductId && remainingFreeItems > 0) {
+                    int freeQty = (int) Math.min(item.getQuantity(), remainingFreeItems);
                     newItem.setTotalDiscount(freeQty * item.getPrice());
                     remainingFreeItems -= freeQty;
                 }
             }
-            
+
             updatedItems.add(newItem);
         }
-        
-        double totalPrice = cart.getItems().stream()
-                .mapToDouble(item -> item.getPrice() * item.getQuantity())
-                .sum();
-        
+
+        double totalPrice = index.total();
+
         return UpdatedCart.builder()
                 .items(updatedItems)
                 .totalPrice(totalPrice)
@@ -238,7 +309,7 @@ public class DiscountService {
                 .build();
     }
 
-    private UpdatedCart createUpdatedCart(Cart cart, double totalDiscount) {
+    private UpdatedCart createUpdatedCart(Cart cart, CartIndex index, double totalDiscount) {
         List<CartItem> items = cart.getItems().stream()
                 .map(item -> CartItem.builder()
                         .productId(item.getProductId())
@@ -247,11 +318,9 @@ public class DiscountService {
                         .totalDiscount(0)
                         .build())
                 .toList();
-        
-        double totalPrice = cart.getItems().stream()
-                .mapToDouble(item -> item.getPrice() * item.getQuantity())
-                .sum();
-        
+
+        double totalPrice = index.total();
+
         return UpdatedCart.builder()
                 .items(items)
                 .totalPrice(totalPrice)
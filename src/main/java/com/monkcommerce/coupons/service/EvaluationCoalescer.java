@@ -0,0 +1,84 @@
+package com.monkcommerce.coupons.service;
+
+import com.monkcommerce.coupons.metrics.CouponMetrics;
+import com.monkcommerce.coupons.rule.CartFingerprint;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Single-flight execution of identical evaluations. The first request for a (catalog version,
+ * coupon, cart) key evaluates; requests arriving while it runs wait for its result. A waiter that
+ * times out evaluates on its own instead of failing.
+ */
+@Component
+@RequiredArgsConstructor
+public class EvaluationCoalescer {
+
+    /**
+     * Coupon id used in keys for evaluations against every applicable coupon.
+     */
+    public static final long ALL_COUPONS = -1L;
+
+    private final CouponMetrics metrics;
+    private final ConcurrentHashMap<Key, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+    @Value("${coupons.coalescing.enabled:true}")
+    private boolean enabled;
+
+    @Value("${coupons.coalescing.timeout:2s}")
+    private Duration timeout;
+
+    @SuppressWarnings("unchecked")
+    public <T> T execute(long catalogVersion, long couponId, CartFingerprint cart, Supplier<T> evaluation) {
+        if (!enabled) {
+            return evaluation.get();
+        }
+
+        Key key = new Key(catalogVersion, couponId, cart);
+        CompletableFuture<Object> flight = new CompletableFuture<>();
+        CompletableFuture<Object> leader = inFlight.putIfAbsent(key, flight);
+        if (leader == null) {
+            try {
+                T result = evaluation.get();
+                flight.complete(result);
+                return result;
+            } catch (RuntimeException | Error e) {
+                flight.completeExceptionally(e);
+                throw e;
+            } finally {
+                inFlight.remove(key, flight);
+            }
+        }
+
+        metrics.recordCoalesced(couponId != ALL_COUPONS);
+        try {
+            return (T) leader.get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            metrics.recordCoalescingTimeout();
+            return evaluation.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return evaluation.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private record Key(long catalogVersion, long couponId, CartFingerprint cart) {
+    }
+}
@@ -0,0 +1,267 @@
+package com.monkcommerce.coupons.service;
+
+import com.monkcommerce.coupons.catalog.CatalogEntry;
+import com.monkcommerce.coupons.rule.LongHashing;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Redemption count for one coupon, or one customer of a coupon, held to a limit.
+ *
+ * <p>The unused part of the limit is split into tokens across padded stripes, and a reservation
+ * takes one token with a CAS on the caller's stripe, moving on to the other stripes only when its
+ * own is empty. Tokens are only ever taken by CAS from a non-zero stripe, so concurrent
+ * reservations can never exceed the limit, and threads redeeming one hot coupon rarely contend on
+ * the same cache line. A reservation is committed, which counts it, or released, which returns its
+ * token.
+ *
+ * <p>Changing the limit retires the current stripes: each is drained by swapping in a marker, and
+ * the new set starts with the drained tokens plus the difference between the limits. A token
+ * released to a retired set finds the marker and goes to the current set instead, so tokens are
+ * neither lost nor created by a change. Reservations waiting on a retired set step out of the
+ * in-flight count until the new set is up. Only a limit set on an unlimited counter is derived
+ * from the counts, as the limit minus everything in flight and committed.
+ *
+ * <p>The counter also tracks how much of its count has been flushed, and when it was last used, so
+ * an idle counter with nothing left to write can be evicted and loaded again on next use.
+ */
+final class RedemptionCounter {
+
+    private static final int PAD = 8;
+    private static final long RETIRED = Long.MIN_VALUE;
+    private static final long TOUCH_GRANULARITY_NANOS = 1_000_000_000L;
+
+    private final int stripes;
+    private final LongAdder committed = new LongAdder();
+    private final LongAdder inFlight = new LongAdder();
+    private volatile long limit = CatalogEntry.NO_LIMIT;
+    private volatile Budget budget;
+    private volatile long flushed;
+    private volatile long lastUsedNanos = System.nanoTime();
+    private volatile boolean evicted;
+
+    /**
+     * One generation of tokens. {@code retired} is set before the stripes are drained, so a
+     * reservation that finds them empty knows to look for the next generation. A budget below zero,
+     * after a limit was lowered past what is already taken, is held as a debt on the first stripe,
+     * which released tokens pay off before any can be taken again.
+     */
+    static final class Budget {
+        private final AtomicLongArray cells;
+        private final int mask;
+        private volatile boolean retired;
+
+        private Budget(int stripes, long remaining) {
+            this.cells = new AtomicLongArray(stripes * PAD);
+            this.mask = stripes - 1;
+            long share = Math.max(0, remaining) / stripes;
+            for (int i = 0; i < stripes; i++) {
+                cells.set(i * PAD, share);
+            }
+            cells.addAndGet(0, remaining - share * stripes);
+        }
+
+        /**
+         * A budget that is retired from the start, holding the place of the next one while it is
+         * worked out.
+         */
+        private static Budget closed() {
+            Budget closed = new Budget(1, 0);
+            closed.retire();
+            return closed;
+        }
+
+        /**
+         * Takes one token, starting at the stripe for {@code probe}; returns the stripe it came
+         * from, or {@code -1} if every stripe is empty.
+         */
+        private int take(int probe) {
+            for (int i = 0; i <= mask; i++) {
+                int stripe = (probe + i) & mask;
+                long tokens = cells.get(stripe * PAD);
+                while (tokens > 0) {
+                    if (cells.compareAndSet(stripe * PAD, tokens, tokens - 1)) {
+                        return stripe;
+                    }
+                    tokens = cells.get(stripe * PAD);
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Returns a token to {@code stripe}, or returns {@code false} if the stripe has been drained.
+         */
+        private boolean giveBack(int stripe) {
+            long tokens = cells.get(stripe * PAD);
+            while (tokens != RETIRED) {
+                if (cells.compareAndSet(stripe * PAD, tokens, tokens + 1)) {
+                    return true;
+                }
+                tokens = cells.get(stripe * PAD);
+            }
+            return false;
+        }
+
+        /**
+         * Drains every stripe and returns the tokens left, which is negative while in debt.
+         */
+        private long retire() {
+            retired = true;
+            long remaining = 0;
+            for (int i = 0; i <= mask; i++) {
+                remaining += cells.getAndSet(i * PAD, RETIRED);
+            }
+            return remaining;
+        }
+    }
+
+    /**
+     * A counter holding {@code redeemed} earlier redemptions, e.g. as recovered from the database.
+     */
+    RedemptionCounter(int stripes, long redeemed) {
+        if (Integer.bitCount(stripes) != 1) {
+            throw new IllegalArgumentException("Stripes must be a power of two");
+        }
+        this.stripes = stripes;
+        committed.add(redeemed);
+        this.flushed = redeemed;
+    }
+
+    long limit() {
+        return limit;
+    }
+
+    long committed() {
+        return committed.sum();
+    }
+
+    long flushed() {
+        return flushed;
+    }
+
+    /**
+     * Records that the count up to {@code total} has been written. Only the flusher calls this.
+     */
+    void markFlushed(long total) {
+        flushed = total;
+    }
+
+    /**
+     * Records a use at {@code nowNanos}. The write is skipped while the last one is recent, so a
+     * hot counter is not written on every redemption.
+     */
+    void touch(long nowNanos) {
+        if (nowNanos - lastUsedNanos > TOUCH_GRANULARITY_NANOS) {
+            lastUsedNanos = nowNanos;
+        }
+    }
+
+    boolean isIdleSince(long nanos) {
+        return lastUsedNanos - nanos < 0;
+    }
+
+    /**
+     * Marks the counter evicted if nothing is in flight and everything committed has been flushed.
+     * A reservation taken concurrently either stops the eviction, or sees {@link #isEvicted()} and
+     * is retried on a freshly loaded counter.
+     */
+    boolean evict() {
+        evicted = true;
+        if (inFlight.sum() == 0 && committed.sum() == flushed) {
+            return true;
+        }
+        evicted = false;
+        return false;
+    }
+
+    boolean isEvicted() {
+        return evicted;
+    }
+
+    /**
+     * Moves the counter to {@code newLimit}; redemptions already committed or in flight count
+     * against it. Limit changes are rare, so they are serialized.
+     */
+    synchronized void setLimit(long newLimit) {
+        if (newLimit == limit) {
+            return;
+        }
+        Budget old = budget;
+        long remaining;
+        if (old != null) {
+            remaining = old.retire() + (newLimit - limit);
+        } else {
+            budget = Budget.closed();
+            // Reservations join inFlight before reading the budget and commits leave it only after
+            // counting, so reading it first can count a racing commit twice but never miss one.
+            long held = inFlight.sum();
+            remaining = newLimit - held - committed.sum();
+        }
+        limit = newLimit;
+        budget = newLimit == CatalogEntry.NO_LIMIT ? null : new Budget(stripes, remaining);
+    }
+
+    /**
+     * Reserves one redemption, or returns {@code null} when the limit has been reached.
+     */
+    Reservation reserve() {
+        inFlight.increment();
+        int probe = LongHashing.hash(Thread.currentThread().threadId());
+        while (true) {
+            Budget current = budget;
+            if (current == null) {
+                return new Reservation(this, null, -1);
+            }
+            int stripe = current.take(probe);
+            if (stripe >= 0) {
+                return new Reservation(this, current, stripe);
+            }
+            inFlight.decrement();
+            if (!current.retired) {
+                return null;
+            }
+            // The limit is changing; wait outside the in-flight count for the next budget.
+            while (budget == current) {
+                Thread.onSpinWait();
+            }
+            inFlight.increment();
+        }
+    }
+
+    /**
+     * Returns a released token to {@code from}, or to whichever budget replaced it. Reservations
+     * taken while unlimited were counted against the budget that followed, so theirs goes there too.
+     */
+    private void giveBack(Budget from, int stripe) {
+        if (from != null && from.giveBack(stripe)) {
+            return;
+        }
+        while (true) {
+            Budget current = budget;
+            if (current == null || current.giveBack(0)) {
+                return;
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * One reserved redemption and where its token came from ({@code budget} is {@code null} when
+     * the counter was unlimited). Exactly one of {@link #commit()} or {@link #release()} must be
+     * called.
+     */
+    record Reservation(RedemptionCounter counter, Budget budget, int stripe) {
+
+        void commit() {
+            counter.committed.increment();
+            counter.inFlight.decrement();
+        }
+
+        void release() {
+            counter.giveBack(budget, stripe);
+            counter.inFlight.decrement();
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package com.monkcommerce.coupons.service;
+
+import com.monkcommerce.coupons.catalog.CatalogEntry;
+import com.monkcommerce.coupons.metrics.CouponMetrics;
+import com.monkcommerce.coupons.model.CouponRedemption;
+import com.monkcommerce.coupons.repository.CouponRedemptionRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Enforces per-coupon and per-customer redemption limits in memory. Every redemption of a coupon is
+ * counted; redemptions by customer are only counted for coupons with a per-customer limit.
+ *
+ * <p>Counters are loaded from the database on first use and evicted once idle for
+ * {@code coupons.redemptions.idle-timeout} with nothing left to write, so memory follows the
+ * coupons and customers actually redeeming rather than every row ever written.
+ *
+ * <p>Counts are written behind: committed redemptions mark their counters dirty, and a background
+ * flush adds what each dirty counter committed since its last flush to the database row, in one
+ * transaction. Writing increments lets instances sharing the database add up their redemptions;
+ * a failed flush leaves the flushed marks where they were, so it is simply retried. Redemptions
+ * committed after the last flush before a crash are not recovered.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class RedemptionService {
+
+    private static final String ALL_CUSTOMERS = "";
+    private static final int MAX_STRIPES = 64;
+
+    private final CouponRedemptionRepository redemptionRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final CouponMetrics metrics;
+
+    @Value("${coupons.redemptions.flush-interval:1s}")
+    private Duration flushInterval;
+
+    @Value("${coupons.redemptions.idle-timeout:10m}")
+    private Duration idleTimeout;
+
+    private final Map<CouponRedemption.Key, RedemptionCounter> counters = new ConcurrentHashMap<>();
+    private final Map<CouponRedemption.Key, RedemptionCounter> dirty = new ConcurrentHashMap<>();
+    private final int couponStripes = Math.min(MAX_STRIPES,
+            Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 2 - 1)));
+    private ScheduledExecutorService flusher;
+
+    /**
+     * A redemption reserved against every limit that applies to it. Commit it once the coupon has
+     * been applied, or release it if it wasn't.
+     */
+    public final class Redemption {
+
+        private final CouponRedemption.Key couponKey;
+        private final RedemptionCounter.Reservation coupon;
+        private final CouponRedemption.Key customerKey;
+        private final RedemptionCounter.Reservation customer;
+
+        private Redemption(CouponRedemption.Key couponKey, RedemptionCounter.Reservation coupon,
+                CouponRedemption.Key customerKey, RedemptionCounter.Reservation customer) {
+            this.couponKey = couponKey;
+            this.coupon = coupon;
+            this.customerKey = customerKey;
+            this.customer = customer;
+        }
+
+        public void commit() {
+            coupon.commit();
+            dirty.put(couponKey, coupon.counter());
+            if (customer != null) {
+                customer.commit();
+                dirty.put(customerKey, customer.counter());
+            }
+            metrics.recordRedemption(true, true);
+        }
+
+        public void release() {
+            coupon.release();
+            if (customer != null) {
+                customer.release();
+            }
+            metrics.recordRedemption(true, false);
+        }
+    }
+
+    @PostConstruct
+    void start() {
+        if (!flushInterval.isZero() && !flushInterval.isNegative()) {
+            flusher = Executors.newSingleThreadScheduledExecutor(
+                    Thread.ofPlatform().daemon().name("redemption-flush").factory());
+            long interval = flushInterval.toMillis();
+            flusher.scheduleWithFixedDelay(this::flush, interval, interval, TimeUnit.MILLISECONDS);
+            if (!idleTimeout.isZero() && !idleTimeout.isNegative()) {
+                long sweep = Math.max(interval, idleTimeout.toMillis() / 2);
+                flusher.scheduleWithFixedDelay(this::evictIdle, sweep, sweep, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        if (flusher != null) {
+            flusher.shutdown();
+            flusher.awaitTermination(10, TimeUnit.SECONDS);
+        }
+        flush();
+    }
+
+    /**
+     * Reserves one redemption of {@code entry} by {@code customerId}.
+     *
+     * @throws ResponseStatusException 400 if the coupon has a per-customer limit and no customer is
+     *                                 given, 409 if a limit has been reached
+     */
+    public Redemption reserve(CatalogEntry entry, String customerId) {
+        boolean perCustomer = entry.maxRedemptionsPerCustomer() != CatalogEntry.NO_LIMIT;
+        if (perCustomer && (customerId == null || customerId.isBlank())) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "customerId is required to redeem coupon " + entry.id());
+        }
+
+        CouponRedemption.Key couponKey = new CouponRedemption.Key(entry.id(), ALL_CUSTOMERS);
+        RedemptionCounter.Reservation coupon = reserve(couponKey, entry.maxRedemptions());
+        if (coupon == null) {
+            metrics.recordRedemption(false, false);
+            throw new ResponseStatusException(HttpStatus.CONFLICT,
+                    "Coupon " + entry.id() + " has reached its redemption limit");
+        }
+        if (!perCustomer) {
+            return new Redemption(couponKey, coupon, null, null);
+        }
+
+        CouponRedemption.Key customerKey = new CouponRedemption.Key(entry.id(), customerId);
+        RedemptionCounter.Reservation customer = reserve(customerKey, entry.maxRedemptionsPerCustomer());
+        if (customer == null) {
+            coupon.release();
+            metrics.recordRedemption(false, false);
+            throw new ResponseStatusException(HttpStatus.CONFLICT,
+                    "Customer " + customerId + " has reached the redemption limit of coupon " + entry.id());
+        }
+        return new Redemption(couponKey, coupon, customerKey, customer);
+    }
+
+    /**
+     * Committed redemptions of {@code couponId}, in total or by one customer when
+     * {@code customerId} is given.
+     */
+    public long redeemed(long couponId, String customerId) {
+        return counter(new CouponRedemption.Key(couponId, customerId != null ? customerId : ALL_CUSTOMERS))
+                .committed();
+    }
+
+    /**
+     * Deletes the flushed counts of {@code couponId} with the surrounding transaction and drops its
+     * counters once it commits.
+     */
+    public void removeAfterCommit(long couponId) {
+        redemptionRepository.deleteByCouponId(couponId);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            forget(couponId);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                forget(couponId);
+            }
+        });
+    }
+
+    private synchronized void forget(long couponId) {
+        dirty.keySet().removeIf(key -> key.getCouponId() == couponId);
+        counters.keySet().removeIf(key -> key.getCouponId() == couponId);
+    }
+
+    /**
+     * Reserves against the counter for {@code key} at {@code limit}. A counter evicted while the
+     * reservation was being taken gets its token back, and the reservation is retried once the
+     * evicted counter has left the map.
+     */
+    private RedemptionCounter.Reservation reserve(CouponRedemption.Key key, long limit) {
+        while (true) {
+            RedemptionCounter counter = counter(key);
+            if (counter.limit() != limit) {
+                counter.setLimit(limit);
+            }
+            RedemptionCounter.Reservation reservation = counter.reserve();
+            if (reservation == null || !counter.isEvicted()) {
+                return reservation;
+            }
+            reservation.release();
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * The counter for {@code key}, loaded from its flushed count if it is not in memory.
+     */
+    private RedemptionCounter counter(CouponRedemption.Key key) {
+        RedemptionCounter counter = counters.get(key);
+        if (counter == null) {
+            long redeemed = redemptionRepository.findById(key).map(CouponRedemption::getRedeemed).orElse(0L);
+            RedemptionCounter loaded = new RedemptionCounter(
+                    ALL_CUSTOMERS.equals(key.getCustomerId()) ? couponStripes : 1, redeemed);
+            counter = counters.putIfAbsent(key, loaded);
+            if (counter == null) {
+                counter = loaded;
+            }
+        }
+        counter.touch(System.nanoTime());
+        return counter;
+    }
+
+    /**
+     * Adds what every dirty counter has committed since its last flush to its database row.
+     */
+    synchronized void flush() {
+        if (dirty.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        Map<CouponRedemption.Key, RedemptionCounter> flushing = new HashMap<>();
+        for (Iterator<Map.Entry<CouponRedemption.Key, RedemptionCounter>> entries = dirty.entrySet().iterator();
+                entries.hasNext(); ) {
+            Map.Entry<CouponRedemption.Key, RedemptionCounter> entry = entries.next();
+            entries.remove();
+            flushing.put(entry.getKey(), entry.getValue());
+        }
+        Map<CouponRedemption.Key, Long> totals = new HashMap<>();
+        flushing.forEach((key, counter) -> totals.put(key, counter.committed()));
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                List<CouponRedemption> created = new ArrayList<>();
+                flushing.forEach((key, counter) -> {
+                    long delta = totals.get(key) - counter.flushed();
+                    if (delta > 0
+                            && redemptionRepository.addRedeemed(key.getCouponId(), key.getCustomerId(), delta) == 0) {
+                        created.add(new CouponRedemption(key, delta));
+                    }
+                });
+                redemptionRepository.saveAll(created);
+            });
+        } catch (RuntimeException e) {
+            flushing.forEach(dirty::putIfAbsent);
+            log.warn("Could not flush {} redemption counts, will retry: {}", flushing.size(), e.getMessage());
+            return;
+        }
+        flushing.forEach((key, counter) -> counter.markFlushed(totals.get(key)));
+        metrics.recordRedemptionFlush(System.nanoTime() - start);
+    }
+
+    /**
+     * Drops counters unused for the idle timeout that have nothing in flight or left to flush.
+     */
+    synchronized void evictIdle() {
+        long cutoff = System.nanoTime() - idleTimeout.toNanos();
+        int evicted = 0;
+        for (Map.Entry<CouponRedemption.Key, RedemptionCounter> entry : counters.entrySet()) {
+            RedemptionCounter counter = entry.getValue();
+            if (counter.isIdleSince(cutoff) && counter.evict()) {
+                counters.remove(entry.getKey(), counter);
+                evicted++;
+            }
+        }
+        if (evicted > 0) {
+            log.debug("Evicted {} idle redemption counters, {} remain", evicted, counters.size());
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.monkcommerce.coupons.admission;
+
+import com.monkcommerce.coupons.metrics.CouponMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AdmissionControlFilterTests {
+
+    private AdmissionControlFilter filter;
+    private ConcurrencyLimiter limiter;
+
+    @BeforeEach
+    void setUp() {
+        filter = new AdmissionControlFilter(new CouponMetrics(new SimpleMeterRegistry()));
+        ReflectionTestUtils.setField(filter, "enabled", true);
+        ReflectionTestUtils.setField(filter, "limit", 1);
+        ReflectionTestUtils.setField(filter, "queueSize", 0);
+        ReflectionTestUtils.setField(filter, "queueTimeout", Duration.ZERO);
+        ReflectionTestUtils.setField(filter, "minLimit", 1);
+        ReflectionTestUtils.setField(filter, "maxLimit", 1);
+        ReflectionTestUtils.setField(filter, "retryAfter", Duration.ofSeconds(2));
+        filter.start();
+        limiter = (ConcurrencyLimiter) ReflectionTestUtils.getField(filter, "limiter");
+    }
+
+    @Test
+    void shedsEvaluationsOverTheLimitWithRetryAfter() throws Exception {
+        assertThat(limiter.acquire()).isEqualTo(ConcurrencyLimiter.Admission.ADMITTED);
+
+        for (String path : new String[] {"/applicable-coupons", "/applicable-coupons/best", "/apply-coupon/7"}) {
+            MockFilterChain chain = new MockFilterChain();
+            MockHttpServletResponse response = send(request("POST", path), chain);
+
+            assertThat(response.getStatus()).as(path).isEqualTo(503);
+            assertThat(response.getHeader(HttpHeaders.RETRY_AFTER)).as(path).isEqualTo("2");
+            assertThat(chain.getRequest()).as(path).isNull();
+        }
+    }
+
+    @Test
+    void letsEverythingElseThroughWhateverTheLoad() throws Exception {
+        assertThat(limiter.acquire()).isEqualTo(ConcurrencyLimiter.Admission.ADMITTED);
+
+        MockHttpServletRequest[] requests = {
+                request("GET", "/applicable-coupons"),
+                request("POST", "/applicable-coupons/batch"),
+                request("POST", "/coupons"),
+                request("GET", "/apply-coupon/7"),
+                request("POST", "/apply-coupon")
+        };
+        for (MockHttpServletRequest request : requests) {
+            MockFilterChain chain = new MockFilterChain();
+            MockHttpServletResponse response = send(request, chain);
+
+            assertThat(response.getStatus()).as(request.getRequestURI()).isEqualTo(200);
+            assertThat(chain.getRequest()).as(request.getRequestURI()).isSameAs(request);
+        }
+    }
+
+    @Test
+    void matchesPathsBelowTheContextPath() throws Exception {
+        assertThat(limiter.acquire()).isEqualTo(ConcurrencyLimiter.Admission.ADMITTED);
+
+        MockHttpServletRequest request = request("POST", "/api/applicable-coupons");
+        request.setContextPath("/api");
+
+        assertThat(send(request, new MockFilterChain()).getStatus()).isEqualTo(503);
+    }
+
+    @Test
+    void releasesTheSlotWhenTheRequestCompletesOrFails() throws Exception {
+        MockFilterChain chain = new MockFilterChain();
+        assertThat(send(request("POST", "/applicable-coupons"), chain).getStatus()).isEqualTo(200);
+        assertThat(chain.getRequest()).isNotNull();
+        assertThat(limiter.inFlight()).isZero();
+
+        MockFilterChain failing = new MockFilterChain(new HttpServlet() {
+            @Override
+            protected void doPost(HttpServletRequest request, HttpServletResponse response) {
+                throw new IllegalStateException("evaluation failed");
+            }
+        });
+        assertThatThrownBy(() -> send(request("POST", "/apply-coupon/7"), failing))
+                .isInstanceOf(IllegalStateException.class);
+        assertThat(limiter.inFlight()).isZero();
+    }
+
+    @Test
+    void doesNothingWhenDisabled() throws Exception {
+        AdmissionControlFilter disabled = new AdmissionControlFilter(new CouponMetrics(new SimpleMeterRegistry()));
+        disabled.start();
+
+        MockFilterChain chain = new MockFilterChain();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        disabled.doFilter(request("POST", "/applicable-coupons"), response, chain);
+
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(chain.getRequest()).isNotNull();
+    }
+
+    private MockHttpServletResponse send(MockHttpServletRequest request, MockFilterChain chain)
+            throws ServletException, IOException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, chain);
+        return response;
+    }
+
+    private static MockHttpServletRequest request(String method, String path) {
+        return new MockHttpServletRequest(method, path);
+    }
+}
@@ -0,0 +1,123 @@
+package com.monkcommerce.coupons.admission;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ConcurrencyLimiterTests {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(10);
+
+    @Test
+    void queuesUpToItsSizeAndShedsTheRest() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(2, 1, Duration.ofSeconds(10), false, 1, 2);
+        assertThat(limiter.acquire()).isEqualTo(ConcurrencyLimiter.Admission.ADMITTED);
+        assertThat(limiter.acquire()).isEqualTo(ConcurrencyLimiter.Admission.ADMITTED);
+
+        CompletableFuture<ConcurrencyLimiter.Admission> waiter = CompletableFuture.supplyAsync(() -> {
+            try {
+                return limiter.acquire();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        while (limiter.queued() == 0) {
+            Thread.onSpinWait();
+        }
+        assertThat(limiter.acquire()).isEqualTo(ConcurrencyLimiter.Admission.QUEUE_FULL);
+
+        limiter.release(ConcurrencyLimiter.NO_SAMPLE);
+        assertThat(waiter.get(5, TimeUnit.SECONDS)).isEqualTo(ConcurrencyLimiter.Admission.ADMITTED);
+        assertThat(limiter.inFlight()).isEqualTo(2);
+        assertThat(limiter.queued()).isZero();
+    }
+
+    @Test
+    void givesUpWaitingAfterTheQueueTimeout() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 4, Duration.ofMillis(20), false, 1, 1);
+        limiter.acquire();
+
+        long start = System.nanoTime();
+        assertThat(limiter.acquire()).isEqualTo(ConcurrencyLimiter.Admission.TIMED_OUT);
+        assertThat(System.nanoTime() - start).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(20));
+        assertThat(limiter.queued()).isZero();
+
+        limiter.release(ConcurrencyLimiter.NO_SAMPLE);
+        assertThat(limiter.acquire()).isEqualTo(ConcurrencyLimiter.Admission.ADMITTED);
+    }
+
+    @Test
+    void adaptiveLimitGrowsWhileLatencyHoldsAndShrinksWhenItRises() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(20, 0, Duration.ZERO, true, 10, 100);
+        saturate(limiter, FAST, 200);
+        assertThat(limiter.limit()).isEqualTo(100);
+
+        saturate(limiter, SLOW, 3);
+        assertThat(limiter.limit()).isBetween(10, 80);
+    }
+
+    @Test
+    void adaptiveLimitDoesNotGrowWhileMostOfItIsUnused() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(20, 0, Duration.ZERO, true, 10, 100);
+        for (int i = 0; i < 50 * ConcurrencyLimiter.WINDOW_SAMPLES; i++) {
+            limiter.acquire();
+            limiter.release(FAST);
+        }
+        assertThat(limiter.limit()).isEqualTo(20);
+    }
+
+    @Test
+    void neverAdmitsMoreThanTheLimitAcrossThreads() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(4, 8, Duration.ofSeconds(10), false, 4, 4);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 32; t++) {
+            threads.add(Thread.ofPlatform().start(() -> {
+                for (int i = 0; i < 2_000; i++) {
+                    try {
+                        if (limiter.acquire() != ConcurrencyLimiter.Admission.ADMITTED) {
+                            continue;
+                        }
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    Thread.onSpinWait();
+                    running.decrementAndGet();
+                    limiter.release(ConcurrencyLimiter.NO_SAMPLE);
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertThat(peak.get()).isBetween(1, 4);
+        assertThat(limiter.inFlight()).isZero();
+        assertThat(limiter.queued()).isZero();
+    }
+
+    /**
+     * Fills every slot, then releases them all with {@code rttNanos}, {@code rounds} times.
+     */
+    private static void saturate(ConcurrencyLimiter limiter, long rttNanos, int rounds) throws InterruptedException {
+        for (int round = 0; round < rounds; round++) {
+            int slots = limiter.limit();
+            for (int i = 0; i < slots; i++) {
+                assertThat(limiter.acquire()).isEqualTo(ConcurrencyLimiter.Admission.ADMITTED);
+            }
+            for (int i = 0; i < slots; i++) {
+                limiter.release(rttNanos);
+            }
+        }
+    }
+}
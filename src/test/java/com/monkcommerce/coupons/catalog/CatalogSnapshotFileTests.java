@@ -0,0 +1,77 @@
+package com.monkcommerce.coupons.catalog;
+
+import com.monkcommerce.coupons.rule.BxGyRule;
+import com.monkcommerce.coupons.rule.CartWiseRule;
+import com.monkcommerce.coupons.rule.ProductSet;
+import com.monkcommerce.coupons.rule.ProductSetRule;
+import com.monkcommerce.coupons.rule.ProductWiseRule;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CatalogSnapshotFileTests {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void roundTripsEveryRuleTypeAndItsDetails() throws IOException {
+        CatalogSnapshot snapshot = snapshot();
+        Path file = directory.resolve("catalog.snap");
+
+        CatalogSnapshotFile.write(snapshot, file);
+        CatalogSnapshot read = CatalogSnapshotFile.read(file, 0L);
+
+        assertThat(read.version()).isEqualTo(snapshot.version());
+        assertThat(read.nextBoundary()).isEqualTo(1_000L);
+        assertThat(List.copyOf(read.entries()))
+                .usingRecursiveFieldByFieldElementComparator()
+                .containsExactlyElementsOf(snapshot.entries());
+    }
+
+    @Test
+    void rejectsAFileWithADamagedBody() throws IOException {
+        Path file = directory.resolve("catalog.snap");
+        CatalogSnapshotFile.write(snapshot(), file);
+
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length - 3] ^= 0x01;
+        Files.write(file, bytes);
+
+        assertThatThrownBy(() -> CatalogSnapshotFile.read(file, 0L))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("checksum");
+    }
+
+    @Test
+    void rejectsATruncatedFile() throws IOException {
+        Path file = directory.resolve("catalog.snap");
+        CatalogSnapshotFile.write(snapshot(), file);
+
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 10));
+
+        assertThatThrownBy(() -> CatalogSnapshotFile.read(file, 0L)).isInstanceOf(IOException.class);
+    }
+
+    private CatalogSnapshot snapshot() {
+        return CatalogSnapshot.of(42L, List.of(
+                new CatalogEntry(new CartWiseRule(1L, 0L, 100, 10),
+                        "{\"threshold\":100,\"discount\":10}"),
+                new CatalogEntry(new ProductWiseRule(2L, 3L, 7L, 20),
+                        "{\"product_id\":7,\"discount\":20,\"note\":\"café\"}", 1_000L, 2_000L, 50L, 2L),
+                new CatalogEntry(new BxGyRule(3L, 1L,
+                        new long[]{1L, 2L}, new int[]{2, 1}, new long[]{9L}, new int[]{1}, 3, 3, 1),
+                        "{\"buy_products\":[],\"get_products\":[],\"repetition_limit\":3}"),
+                new CatalogEntry(new ProductSetRule(4L, 2L, ProductSet.of(30L, 10L, 20L), 15),
+                        "{\"product_ids\":[30,10,20],\"discount\":15}")), 0L);
+    }
+}
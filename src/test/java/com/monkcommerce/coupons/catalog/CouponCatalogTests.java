@@ -0,0 +1,101 @@
+package com.monkcommerce.coupons.catalog;
+
+import com.monkcommerce.coupons.metrics.CouponMetrics;
+import com.monkcommerce.coupons.model.Coupon;
+import com.monkcommerce.coupons.model.CouponType;
+import com.monkcommerce.coupons.rule.CouponRuleCache;
+import com.monkcommerce.coupons.rule.RuleCompiler;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CouponCatalogTests {
+
+    private CouponCatalog catalog;
+
+    @BeforeEach
+    void setUp() {
+        catalog = new CouponCatalog(null, new CouponRuleCache(new RuleCompiler()),
+                new CouponMetrics(new SimpleMeterRegistry()), null);
+        ReflectionTestUtils.setField(catalog, "enabled", true);
+        ReflectionTestUtils.setField(catalog, "validityTick", Duration.ofSeconds(1));
+    }
+
+    @AfterEach
+    void clearSynchronization() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void publishesNewGenerationsWithoutChangingOldOnes() {
+        catalog.upsertAfterCommit(coupon(1L, 0L, 10));
+        CatalogSnapshot first = catalog.snapshot();
+
+        catalog.upsertAfterCommit(coupon(2L, 0L, 20));
+        catalog.removeAfterCommit(1L);
+        CatalogSnapshot third = catalog.snapshot();
+
+        assertThat(first.entries()).extracting(CatalogEntry::id).containsExactly(1L);
+        assertThat(third.entries()).extracting(CatalogEntry::id).containsExactly(2L);
+        assertThat(third.version()).isEqualTo(first.version() + 2);
+    }
+
+    @Test
+    void publishesOnlyOnceTheTransactionCommits() {
+        TransactionSynchronizationManager.initSynchronization();
+        catalog.upsertAllAfterCommit(List.of(coupon(1L, 0L, 10), coupon(2L, 0L, 20)));
+        assertThat(catalog.snapshot().size()).isZero();
+
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        assertThat(catalog.snapshot().entries()).extracting(CatalogEntry::id).containsExactly(1L, 2L);
+        long version = catalog.snapshot().version();
+        TransactionSynchronizationManager.clearSynchronization();
+
+        TransactionSynchronizationManager.initSynchronization();
+        catalog.upsertAfterCommit(coupon(3L, 0L, 30));
+        TransactionSynchronizationManager.clearSynchronization();
+        assertThat(catalog.snapshot().get(3L)).isNull();
+        assertThat(catalog.snapshot().version()).isEqualTo(version);
+    }
+
+    @Test
+    void keepsTheNewerRuleWhenCommitsPublishOutOfOrder() {
+        TransactionSynchronizationManager.initSynchronization();
+        catalog.upsertAfterCommit(coupon(1L, 1L, 10));
+        catalog.upsertAfterCommit(coupon(1L, 2L, 20));
+        List<TransactionSynchronization> publishes = TransactionSynchronizationManager.getSynchronizations();
+        publishes.get(1).afterCommit();
+        publishes.get(0).afterCommit();
+        TransactionSynchronizationManager.clearSynchronization();
+
+        assertThat(catalog.snapshot().get(1L).rule().version()).isEqualTo(2L);
+        assertThat(catalog.snapshot().get(1L).details()).contains("\"discount\":20");
+
+        catalog.applyChanges(List.of(coupon(1L, 1L, 10)), List.of(), 5L);
+        assertThat(catalog.snapshot().get(1L).rule().version()).isEqualTo(2L);
+        assertThat(catalog.feedVersion()).isEqualTo(5L);
+
+        catalog.applyChanges(List.of(coupon(1L, 3L, 30)), List.of(), 6L);
+        assertThat(catalog.snapshot().get(1L).details()).contains("\"discount\":30");
+    }
+
+    private static Coupon coupon(long id, long version, int discount) {
+        return Coupon.builder()
+                .id(id)
+                .version(version)
+                .type(CouponType.CART_WISE)
+                .details("{\"threshold\":0,\"discount\":" + discount + "}")
+                .build();
+    }
+}
@@ -0,0 +1,181 @@
+package com.monkcommerce.coupons.catalog;
+
+import com.monkcommerce.coupons.dto.Cart;
+import com.monkcommerce.coupons.dto.CartItem;
+import com.monkcommerce.coupons.metrics.CouponMetrics;
+import com.monkcommerce.coupons.rule.BxGyRule;
+import com.monkcommerce.coupons.rule.CartIndex;
+import com.monkcommerce.coupons.rule.CartWiseRule;
+import com.monkcommerce.coupons.rule.CouponRule;
+import com.monkcommerce.coupons.rule.CouponRuleCache;
+import com.monkcommerce.coupons.rule.ProductSet;
+import com.monkcommerce.coupons.rule.ProductSetRule;
+import com.monkcommerce.coupons.rule.ProductWiseRule;
+import com.monkcommerce.coupons.rule.RuleCompiler;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CouponCatalogValidityTests {
+
+    private static final int PRODUCT_RANGE = 30;
+
+    private final MutableClock clock = new MutableClock(1_000L);
+    private final CartIndex cart = CartIndex.of(new Cart(List.of(new CartItem(1L, 1, 500, 0))));
+    private CouponCatalog catalog;
+
+    @BeforeEach
+    void setUp() {
+        catalog = new CouponCatalog(null, new CouponRuleCache(new RuleCompiler()),
+                new CouponMetrics(new SimpleMeterRegistry()), null);
+        ReflectionTestUtils.setField(catalog, "enabled", true);
+        ReflectionTestUtils.setField(catalog, "clock", clock);
+        ReflectionTestUtils.setField(catalog, "validityTick", Duration.ofMillis(100));
+        catalog.upsert(List.of(
+                new CatalogEntry(new CartWiseRule(1L, 0L, 0, 10), "{}"),
+                new CatalogEntry(new CartWiseRule(2L, 0L, 0, 20), "{}", 5_000L, 9_000L)));
+    }
+
+    @Test
+    void readersSeeACouponExactlyAtItsBoundaries() {
+        assertThat(couponIds()).containsExactly(1L);
+        assertThat(catalog.snapshot().nextBoundary()).isEqualTo(5_000L);
+
+        clock.set(4_999L);
+        assertThat(couponIds()).containsExactly(1L);
+
+        clock.set(5_000L);
+        assertThat(couponIds()).containsExactlyInAnyOrder(1L, 2L);
+        assertThat(catalog.snapshot().isActive(2L)).isTrue();
+        assertThat(catalog.snapshot().nextBoundary()).isEqualTo(9_000L);
+
+        clock.set(9_000L);
+        assertThat(couponIds()).containsExactly(1L);
+        assertThat(catalog.snapshot().get(2L)).isNotNull();
+        assertThat(catalog.snapshot().nextBoundary()).isEqualTo(Long.MAX_VALUE);
+    }
+
+    @Test
+    void tickerPublishesANewGenerationWhenABoundaryComesDue() {
+        long version = catalog.snapshot().version();
+
+        clock.set(4_900L);
+        catalog.tick();
+        assertThat(publishedSnapshot().version()).isEqualTo(version);
+
+        clock.set(5_000L);
+        catalog.tick();
+        assertThat(publishedSnapshot().version()).isEqualTo(version + 1);
+        assertThat(publishedSnapshot().activeCount()).isEqualTo(2);
+
+        clock.set(9_050L);
+        catalog.tick();
+        assertThat(publishedSnapshot().version()).isEqualTo(version + 2);
+        assertThat(publishedSnapshot().activeCount()).isEqualTo(1);
+    }
+
+    @Test
+    void movingTheIndexForwardMatchesRebuildingItAtEachInstant() {
+        Random random = new Random(5);
+        List<CatalogEntry> entries = new ArrayList<>();
+        for (long id = 1; id <= 500; id++) {
+            CouponRule rule = switch ((int) (id % 4)) {
+                case 0 -> new CartWiseRule(id, 0L, random.nextInt(1_000), 10);
+                case 1 -> new ProductWiseRule(id, 0L, random.nextInt(PRODUCT_RANGE), 10);
+                case 2 -> new ProductSetRule(id, 0L, ProductSet.of(random.nextInt(PRODUCT_RANGE),
+                        random.nextInt(PRODUCT_RANGE), random.nextInt(PRODUCT_RANGE)), 10);
+                default -> new BxGyRule(id, 0L,
+                        new long[] {random.nextInt(PRODUCT_RANGE)}, new int[] {1},
+                        new long[] {random.nextInt(PRODUCT_RANGE)}, new int[] {1}, 2, 1, 1);
+            };
+            long from = random.nextBoolean() ? CatalogEntry.UNBOUNDED_FROM : random.nextInt(10_000);
+            long until = random.nextBoolean()
+                    ? CatalogEntry.UNBOUNDED_UNTIL
+                    : Math.max(from, 0) + random.nextInt(5_000);
+            entries.add(new CatalogEntry(rule, "{}", from, until));
+        }
+        List<CartIndex> carts = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            List<CartItem> items = new ArrayList<>();
+            for (int line = 0; line < 4; line++) {
+                items.add(new CartItem((long) random.nextInt(PRODUCT_RANGE), 1 + random.nextInt(3),
+                        random.nextInt(400), 0));
+            }
+            carts.add(CartIndex.of(new Cart(items)));
+        }
+        long[] allProducts = LongStream.range(0, PRODUCT_RANGE).toArray();
+
+        CatalogSnapshot moved = CatalogSnapshot.of(1L, entries, 0L);
+        for (long now = 0; now <= 16_000; now += 1 + random.nextInt(400)) {
+            moved = moved.withActiveAt(moved.version() + 1, now);
+            CatalogSnapshot rebuilt = CatalogSnapshot.of(moved.version(), entries, now);
+
+            assertThat(moved.activeCount()).as("at %d", now).isEqualTo(rebuilt.activeCount());
+            assertThat(moved.nextBoundary()).as("at %d", now).isEqualTo(rebuilt.nextBoundary());
+            assertThat(moved.index().affected(allProducts, 0, 2_000))
+                    .as("at %d", now).isEqualTo(rebuilt.index().affected(allProducts, 0, 2_000));
+            for (long productId = 0; productId < PRODUCT_RANGE; productId++) {
+                assertThat(moved.index().affected(new long[] {productId}, 0, 0))
+                        .as("at %d", now).isEqualTo(rebuilt.index().affected(new long[] {productId}, 0, 0));
+            }
+            for (CartIndex candidateCart : carts) {
+                assertThat(moved.index().candidates(candidateCart))
+                        .as("at %d", now).isEqualTo(rebuilt.index().candidates(candidateCart));
+            }
+        }
+    }
+
+    private List<Long> couponIds() {
+        return catalog.snapshot().index().candidates(cart).stream().map(CouponRule::couponId).toList();
+    }
+
+    private CatalogSnapshot publishedSnapshot() {
+        return (CatalogSnapshot) ReflectionTestUtils.getField(catalog, "snapshot");
+    }
+
+    private static final class MutableClock extends Clock {
+
+        private volatile long millis;
+
+        private MutableClock(long millis) {
+            this.millis = millis;
+        }
+
+        void set(long millis) {
+            this.millis = millis;
+        }
+
+        @Override
+        public long millis() {
+            return millis;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+    }
+}
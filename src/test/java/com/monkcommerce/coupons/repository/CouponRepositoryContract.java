@@ -0,0 +1,171 @@
+package com.monkcommerce.coupons.repository;
+
+import com.monkcommerce.coupons.model.Coupon;
+import com.monkcommerce.coupons.model.CouponType;
+import com.monkcommerce.coupons.rule.RuleCompiler;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Limit;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Behaviour every {@link CouponRepository} backend must share. Implementations run it against a
+ * store that only the test class writes to.
+ */
+abstract class CouponRepositoryContract {
+
+    private final RuleCompiler ruleCompiler = new RuleCompiler();
+
+    protected abstract CouponRepository repository();
+
+    /**
+     * Runs {@code work} the way callers of the stream queries must, inside a read-only transaction
+     * where the backend needs one.
+     */
+    protected <T> T read(Supplier<T> work) {
+        return work.get();
+    }
+
+    @Test
+    void saveAssignsIncreasingIdsAndAnInitialVersion() {
+        Coupon first = repository().save(cartWise(100));
+        Coupon second = repository().save(cartWise(200));
+
+        assertThat(first.getId()).isNotNull();
+        assertThat(second.getId()).isGreaterThan(first.getId());
+        assertThat(first.getVersion()).isZero();
+    }
+
+    @Test
+    void findByIdReturnsTheStoredColumns() {
+        Coupon saved = repository().save(productWise(4242L, 15));
+
+        Coupon found = repository().findById(saved.getId()).orElseThrow();
+
+        assertThat(found.getType()).isEqualTo(CouponType.PRODUCT_WISE);
+        assertThat(found.getDetails()).isEqualTo(saved.getDetails());
+        assertThat(found.getDiscountPercent()).isEqualTo(15.0);
+        assertThat(found.getThreshold()).isNull();
+        assertThat(found.getVersion()).isZero();
+        assertThat(repository().findById(Long.MAX_VALUE)).isEmpty();
+    }
+
+    @Test
+    void updatesIncrementTheVersionAndStaleCopiesAreRejected() {
+        Long id = repository().save(cartWise(100)).getId();
+        Coupon first = repository().findById(id).orElseThrow();
+        Coupon second = repository().findById(id).orElseThrow();
+
+        first.setDetails("{\"threshold\":150,\"discount\":10}");
+        first.setThreshold(150.0);
+        Coupon updated = repository().save(first);
+
+        assertThat(updated.getVersion()).isEqualTo(1L);
+        assertThat(repository().findById(id).orElseThrow().getThreshold()).isEqualTo(150.0);
+
+        second.setDetails("{\"threshold\":175,\"discount\":10}");
+        second.setThreshold(175.0);
+        assertThatThrownBy(() -> repository().save(second)).isInstanceOf(OptimisticLockingFailureException.class);
+    }
+
+    @Test
+    void deleteRemovesTheCoupon() {
+        Coupon saved = repository().save(cartWise(100));
+        long count = repository().count();
+
+        repository().delete(repository().findById(saved.getId()).orElseThrow());
+
+        assertThat(repository().findById(saved.getId())).isEmpty();
+        assertThat(repository().count()).isEqualTo(count - 1);
+    }
+
+    @Test
+    void keysetPagesAndStreamsAreOrderedById() {
+        List<Coupon> saved = repository().saveAll(List.of(
+                cartWise(10), productWise(77L, 5), cartWise(20), bxGy(88L, 99L)));
+        long before = saved.get(0).getId() - 1;
+
+        assertThat(repository().findByIdGreaterThanOrderByIdAsc(before, Limit.of(3)))
+                .extracting(Coupon::getId)
+                .containsExactly(saved.get(0).getId(), saved.get(1).getId(), saved.get(2).getId());
+        assertThat(repository().findByTypeAndIdGreaterThanOrderByIdAsc(CouponType.CART_WISE, before, Limit.of(10)))
+                .extracting(Coupon::getId)
+                .containsExactly(saved.get(0).getId(), saved.get(2).getId());
+
+        List<Long> all = read(() -> ids(repository().streamAllByOrderByIdAsc(), before));
+        List<Long> bxGy = read(() -> ids(repository().streamByTypeOrderByIdAsc(CouponType.BXGY), before));
+        assertThat(all).containsExactly(saved.stream().map(Coupon::getId).toArray(Long[]::new));
+        assertThat(bxGy).containsExactly(saved.get(3).getId());
+        assertThat(repository().findAllByOrderByIdAsc()).extracting(Coupon::getId).isSorted();
+    }
+
+    @Test
+    void candidatesMatchOnThresholdOrTargetAndBuyProductsAndIncludeEveryProductSet() {
+        Coupon cheap = repository().save(cartWise(100));
+        Coupon expensive = repository().save(cartWise(1_000_000_000));
+        Coupon target = repository().save(productWise(9_000_001L, 10));
+        Coupon buy = repository().save(bxGy(9_000_002L, 9_000_003L));
+        Coupon getOnly = repository().save(bxGy(9_000_004L, 9_000_001L));
+        Coupon productSet = repository().save(productSet(9_000_005L));
+
+        List<Long> candidates = repository().findCandidates(List.of(9_000_001L, 9_000_002L), 150).stream()
+                .map(Coupon::getId)
+                .toList();
+
+        assertThat(candidates).contains(cheap.getId(), target.getId(), buy.getId(), productSet.getId())
+                .doesNotContain(expensive.getId(), getOnly.getId())
+                .isSorted();
+    }
+
+    @Test
+    void thresholdCandidatesOnlyIncludeCartWiseCouponsBelowTheTotal() {
+        Coupon cheap = repository().save(cartWise(120));
+        Coupon expensive = repository().save(cartWise(2_000_000_000));
+        Coupon target = repository().save(productWise(9_000_011L, 10));
+
+        List<Long> candidates = repository()
+                .findByTypeAndThresholdLessThanOrderByIdAsc(CouponType.CART_WISE, 150.0).stream()
+                .map(Coupon::getId)
+                .toList();
+
+        assertThat(candidates).contains(cheap.getId())
+                .doesNotContain(expensive.getId(), target.getId())
+                .isSorted();
+    }
+
+    protected Coupon cartWise(double threshold) {
+        return coupon(CouponType.CART_WISE, "{\"threshold\":" + threshold + ",\"discount\":10}");
+    }
+
+    protected Coupon productWise(long productId, double discount) {
+        return coupon(CouponType.PRODUCT_WISE, "{\"product_id\":" + productId + ",\"discount\":" + discount + "}");
+    }
+
+    protected Coupon bxGy(long buyProductId, long getProductId) {
+        return coupon(CouponType.BXGY, "{\"buy_products\":[{\"product_id\":" + buyProductId + ",\"quantity\":2}],"
+                + "\"get_products\":[{\"product_id\":" + getProductId + ",\"quantity\":1}],\"repetition_limit\":2}");
+    }
+
+    protected Coupon productSet(long... productIds) {
+        return coupon(CouponType.PRODUCT_SET, "{\"product_ids\":" + Arrays.toString(productIds) + ",\"discount\":10}");
+    }
+
+    private static List<Long> ids(Stream<Coupon> coupons, long after) {
+        try (coupons) {
+            return coupons.map(Coupon::getId).filter(id -> id > after).toList();
+        }
+    }
+
+    private Coupon coupon(CouponType type, String details) {
+        Coupon coupon = Coupon.builder().type(type).details(details).build();
+        ruleCompiler.normalize(coupon, ruleCompiler.compile(0L, 0L, type, details));
+        return coupon;
+    }
+}
@@ -0,0 +1,33 @@
+package com.monkcommerce.coupons.repository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.function.Supplier;
+
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:coupon_repository_contract",
+        "spring.jpa.show-sql=false"
+})
+class JpaCouponRepositoryTests extends CouponRepositoryContract {
+
+    @Autowired
+    private CouponRepository repository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Override
+    protected CouponRepository repository() {
+        return repository;
+    }
+
+    @Override
+    protected <T> T read(Supplier<T> work) {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setReadOnly(true);
+        return template.execute(status -> work.get());
+    }
+}
@@ -0,0 +1,226 @@
+package com.monkcommerce.coupons.repository;
+
+import com.monkcommerce.coupons.model.Coupon;
+import com.monkcommerce.coupons.model.CouponProduct;
+import com.monkcommerce.coupons.model.CouponProductRole;
+import com.monkcommerce.coupons.repository.log.LogCouponRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.groups.Tuple.tuple;
+
+class LogCouponRepositoryTests extends CouponRepositoryContract {
+
+    @TempDir
+    Path directory;
+
+    private LogCouponRepository repository;
+
+    @BeforeEach
+    void openRepository() throws IOException {
+        repository = open(directory);
+    }
+
+    @AfterEach
+    void closeRepository() throws IOException {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        repository.close();
+    }
+
+    @Override
+    protected CouponRepository repository() {
+        return repository;
+    }
+
+    @Test
+    void productsAndNullableColumnsRoundTrip() {
+        Coupon saved = repository.save(bxGy(11L, 12L));
+
+        Coupon found = repository.findById(saved.getId()).orElseThrow();
+
+        assertThat(found.getRepetitionLimit()).isEqualTo(2);
+        assertThat(found.getThreshold()).isNull();
+        assertThat(found.getDiscountPercent()).isNull();
+        assertThat(found.getProducts())
+                .extracting(CouponProduct::getProductId, CouponProduct::getRole, CouponProduct::getQuantity)
+                .containsExactly(tuple(11L, CouponProductRole.BUY, 2), tuple(12L, CouponProductRole.GET, 1));
+    }
+
+    @Test
+    void contentsSurviveACleanRestart() throws IOException {
+        Coupon kept = repository.save(cartWise(100));
+        Coupon updated = repository.save(productWise(5L, 10));
+        Coupon deleted = repository.save(cartWise(300));
+        updated.setDetails("{\"product_id\":5,\"discount\":20}");
+        updated.setDiscountPercent(20.0);
+        repository.save(updated);
+        repository.delete(deleted);
+
+        repository.close();
+        repository = open(directory);
+
+        assertThat(repository.findAllByOrderByIdAsc())
+                .extracting(Coupon::getId, Coupon::getVersion)
+                .containsExactly(tuple(kept.getId(), 0L), tuple(updated.getId(), 1L));
+        assertThat(repository.findById(updated.getId()).orElseThrow().getDiscountPercent()).isEqualTo(20.0);
+        assertThat(repository.save(cartWise(400)).getId()).isGreaterThan(deleted.getId());
+    }
+
+    @Test
+    void crashRecoveryRebuildsTheIndexAndTruncatesATornTail() throws IOException {
+        List<Coupon> saved = repository.saveAll(List.of(cartWise(100), productWise(6L, 10), bxGy(7L, 8L)));
+        repository.delete(saved.get(1));
+        long intactEnd = end(repository);
+        try (FileChannel log = FileChannel.open(directory.resolve("coupons.log"), StandardOpenOption.WRITE)) {
+            log.write(ByteBuffer.wrap(new byte[] {0, 0, 0, 40, 1, 2, 3}), intactEnd);
+        }
+
+        // The crashed instance is abandoned without closing, so its index is still marked dirty.
+        repository = open(directory);
+
+        assertThat(end(repository)).isEqualTo(intactEnd);
+        assertThat(repository.findAllByOrderByIdAsc())
+                .extracting(Coupon::getId)
+                .containsExactly(saved.get(0).getId(), saved.get(2).getId());
+        assertThat(repository.findById(saved.get(1).getId())).isEmpty();
+        assertThat(repository.save(cartWise(200)).getId()).isGreaterThan(saved.get(2).getId());
+    }
+
+    @Test
+    void compactionDropsSupersededRecordsAndKeepsLiveOnes() throws IOException {
+        Coupon coupon = repository.save(cartWise(100));
+        for (int i = 1; i <= 20; i++) {
+            coupon.setDetails("{\"threshold\":" + (100 + i) + ",\"discount\":10}");
+            coupon.setThreshold(100.0 + i);
+            coupon = repository.save(coupon);
+        }
+        Coupon deleted = repository.save(productWise(9L, 10));
+        repository.delete(deleted);
+        long before = end(repository);
+        assertThat(ReflectionTestUtils.<Double>invokeMethod(repository, "garbageRatio")).isGreaterThan(0.9);
+
+        repository.compact();
+
+        assertThat(end(repository)).isLessThan(before / 10);
+        assertThat(ReflectionTestUtils.<Double>invokeMethod(repository, "garbageRatio")).isLessThan(0.5);
+        assertThat(repository.findById(coupon.getId()).orElseThrow().getThreshold()).isEqualTo(120.0);
+        assertThat(repository.findById(deleted.getId())).isEmpty();
+
+        repository.close();
+        repository = open(directory);
+        assertThat(repository.findAllByOrderByIdAsc())
+                .extracting(Coupon::getId, Coupon::getVersion)
+                .containsExactly(tuple(coupon.getId(), 20L));
+        assertThat(repository.save(cartWise(200)).getId()).isGreaterThan(deleted.getId());
+    }
+
+    @Test
+    void cleanCloseTrimsTheSpaceMappedAheadOfTheLog() throws IOException {
+        repository.save(cartWise(100));
+        long end = end(repository);
+        assertThat(Files.size(directory.resolve("coupons.log"))).isGreaterThan(end);
+
+        repository.close();
+
+        assertThat(Files.size(directory.resolve("coupons.log"))).isEqualTo(end);
+        repository = open(directory);
+    }
+
+    @Test
+    void writesInsideATransactionAreAppendedWhenItCommits() {
+        Coupon existing = repository.save(cartWise(100));
+        long end = end(repository);
+
+        TransactionSynchronizationManager.initSynchronization();
+        Coupon created = repository.save(cartWise(200));
+        repository.delete(existing);
+        assertThat(end(repository)).isEqualTo(end);
+        assertThat(repository.findById(created.getId())).isEmpty();
+        assertThat(repository.findById(existing.getId())).isPresent();
+
+        TransactionSynchronizationUtils.triggerBeforeCommit(false);
+        TransactionSynchronizationUtils.invokeAfterCompletion(TransactionSynchronizationManager.getSynchronizations(),
+                TransactionSynchronization.STATUS_COMMITTED);
+        TransactionSynchronizationManager.clearSynchronization();
+
+        assertThat(repository.findAllByOrderByIdAsc()).extracting(Coupon::getId).containsExactly(created.getId());
+        assertThat(TransactionSynchronizationManager.hasResource(repository)).isFalse();
+    }
+
+    @Test
+    void rolledBackWritesNeverReachTheLog() throws IOException {
+        Coupon existing = repository.save(cartWise(100));
+        long end = end(repository);
+
+        TransactionSynchronizationManager.initSynchronization();
+        Coupon created = repository.save(cartWise(200));
+        existing.setThreshold(150.0);
+        repository.save(existing);
+        TransactionSynchronizationUtils.invokeAfterCompletion(TransactionSynchronizationManager.getSynchronizations(),
+                TransactionSynchronization.STATUS_ROLLED_BACK);
+        TransactionSynchronizationManager.clearSynchronization();
+
+        assertThat(end(repository)).isEqualTo(end);
+        repository.close();
+        repository = open(directory);
+        assertThat(repository.findById(created.getId())).isEmpty();
+        assertThat(repository.findById(existing.getId()).orElseThrow())
+                .extracting(Coupon::getVersion, Coupon::getThreshold)
+                .containsExactly(0L, 100.0);
+    }
+
+    @Test
+    void aCommitLosesToAnUpdateCommittedSinceItsWriteWasStaged() {
+        Long id = repository.save(cartWise(100)).getId();
+        Coupon staged = repository.findById(id).orElseThrow();
+        Coupon concurrent = repository.findById(id).orElseThrow();
+
+        TransactionSynchronizationManager.initSynchronization();
+        staged.setThreshold(150.0);
+        repository.save(staged);
+        List<TransactionSynchronization> transaction = TransactionSynchronizationManager.getSynchronizations();
+        transaction.forEach(TransactionSynchronization::suspend);
+        TransactionSynchronizationManager.clearSynchronization();
+
+        concurrent.setThreshold(175.0);
+        repository.save(concurrent);
+
+        assertThatThrownBy(() -> transaction.get(0).beforeCommit(false))
+                .isInstanceOf(OptimisticLockingFailureException.class);
+        assertThat(repository.findById(id).orElseThrow().getThreshold()).isEqualTo(175.0);
+    }
+
+    private static long end(LogCouponRepository repository) {
+        return ReflectionTestUtils.<Long>invokeMethod(repository, "end");
+    }
+
+    private static LogCouponRepository open(Path directory) throws IOException {
+        LogCouponRepository repository = new LogCouponRepository();
+        ReflectionTestUtils.setField(repository, "directory", directory.toString());
+        ReflectionTestUtils.setField(repository, "fsync", true);
+        ReflectionTestUtils.setField(repository, "compactionInterval", Duration.ZERO);
+        ReflectionTestUtils.setField(repository, "compactionGarbageRatio", 0.5);
+        repository.open();
+        return repository;
+    }
+}
@@ -0,0 +1,45 @@
+package com.monkcommerce.coupons.rule;
+
+import com.monkcommerce.coupons.dto.Cart;
+import com.monkcommerce.coupons.dto.CartItem;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CartFingerprintTests {
+
+    @Test
+    void interleavingOfDifferentProductsDoesNotMatter() {
+        CartFingerprint cart = fingerprint(item(1L, 2, 10.0), item(2L, 1, 25.5), item(1L, 1, 12.0), item(null, 1, 4.0));
+        CartFingerprint reordered = fingerprint(item(null, 1, 4.0), item(2L, 1, 25.5), item(1L, 2, 10.0), item(1L, 1, 12.0));
+
+        assertThat(reordered).isEqualTo(cart).hasSameHashCodeAs(cart);
+    }
+
+    @Test
+    void lineOrderWithinOneProductMatters() {
+        CartFingerprint cart = fingerprint(item(1L, 2, 10.0), item(1L, 1, 12.0));
+        CartFingerprint swapped = fingerprint(item(1L, 1, 12.0), item(1L, 2, 10.0));
+
+        assertThat(swapped).isNotEqualTo(cart);
+    }
+
+    @Test
+    void quantitiesPricesAndUnindexedLinesAllCount() {
+        CartFingerprint cart = fingerprint(item(1L, 2, 10.0), item(2L, 1, 25.5));
+
+        assertThat(fingerprint(item(1L, 3, 10.0), item(2L, 1, 25.5))).isNotEqualTo(cart);
+        assertThat(fingerprint(item(1L, 2, 10.0), item(2L, 1, 25.0))).isNotEqualTo(cart);
+        assertThat(fingerprint(item(1L, 2, 10.0), item(2L, 1, 25.5), item(null, 1, 4.0))).isNotEqualTo(cart);
+    }
+
+    private CartFingerprint fingerprint(CartItem... items) {
+        return CartFingerprint.of(CartIndex.of(Cart.builder().items(List.of(items)).build()));
+    }
+
+    private CartItem item(Long productId, int quantity, double price) {
+        return CartItem.builder().productId(productId).quantity(quantity).price(price).build();
+    }
+}
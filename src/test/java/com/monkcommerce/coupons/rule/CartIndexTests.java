@@ -0,0 +1,69 @@
+package com.monkcommerce.coupons.rule;
+
+import com.monkcommerce.coupons.dto.Cart;
+import com.monkcommerce.coupons.dto.CartItem;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CartIndexTests {
+
+    private static final int PRODUCT_RANGE = 40;
+
+    @Test
+    void editsMatchAFreshlyBuiltIndexAfterEveryChange() {
+        Random random = new Random(11);
+        CartIndex edited = CartIndex.empty();
+        List<CartItem> lines = new ArrayList<>();
+
+        for (int step = 0; step < 5_000; step++) {
+            CartItem item = item(random);
+            int operation = lines.isEmpty() ? 0 : lines.size() > 30 ? 1 + random.nextInt(2) : random.nextInt(3);
+            switch (operation) {
+                case 0 -> {
+                    lines.add(item);
+                    edited.add(item.getProductId(), item.getQuantity(), item.getPrice());
+                }
+                case 1 -> {
+                    int position = random.nextInt(lines.size());
+                    lines.set(position, item);
+                    edited.set(position, item.getProductId(), item.getQuantity(), item.getPrice());
+                }
+                default -> {
+                    int position = random.nextInt(lines.size());
+                    lines.remove(position);
+                    edited.remove(position);
+                }
+            }
+
+            CartIndex built = CartIndex.of(Cart.builder().items(List.copyOf(lines)).build());
+            assertThat(CartFingerprint.of(edited)).as("step %d", step).isEqualTo(CartFingerprint.of(built));
+            assertThat(edited.productCount()).isEqualTo(built.productCount());
+            for (long productId = 0; productId < PRODUCT_RANGE; productId++) {
+                assertThat(edited.contains(productId)).isEqualTo(built.contains(productId));
+                assertThat(edited.quantity(productId)).isEqualTo(built.quantity(productId));
+                assertThat(edited.value(productId)).isEqualTo(built.value(productId));
+            }
+        }
+    }
+
+    @Test
+    void onlyAnEmptyStartedIndexCanBeEdited() {
+        CartIndex built = CartIndex.of(Cart.builder().items(List.of(item(new Random(1)))).build());
+
+        assertThatThrownBy(() -> built.remove(0)).isInstanceOf(IllegalStateException.class);
+    }
+
+    private static CartItem item(Random random) {
+        return CartItem.builder()
+                .productId((long) random.nextInt(PRODUCT_RANGE))
+                .quantity(1 + random.nextInt(5))
+                .price(1 + random.nextInt(10_000) / 100.0)
+                .build();
+    }
+}
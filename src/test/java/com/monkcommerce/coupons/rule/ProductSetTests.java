@@ -0,0 +1,37 @@
+package com.monkcommerce.coupons.rule;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ProductSetTests {
+
+    @Test
+    void answersMembershipLikeAHashSet() {
+        Random random = new Random(11);
+        long[] productIds = new long[20_000];
+        Set<Long> expected = new HashSet<>();
+        for (int i = 0; i < productIds.length; i++) {
+            productIds[i] = random.nextInt(100_000) - 50_000;
+            expected.add(productIds[i]);
+        }
+
+        ProductSet set = ProductSet.of(productIds);
+
+        assertThat(set.size()).isEqualTo(expected.size());
+        assertThat(set.ids()).isSorted().doesNotHaveDuplicates();
+        for (long productId = -60_000; productId <= 60_000; productId++) {
+            assertThat(set.contains(productId)).isEqualTo(expected.contains(productId));
+        }
+    }
+
+    @Test
+    void reportsEightBytesPerProductPlusHeaders() {
+        assertThat(ProductSet.of(3L, 1L, 3L, 2L).memoryBytes()).isEqualTo(32L + 3 * Long.BYTES);
+        assertThat(ProductSet.of().contains(0L)).isFalse();
+    }
+}
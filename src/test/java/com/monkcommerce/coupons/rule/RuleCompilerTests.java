@@ -0,0 +1,115 @@
+package com.monkcommerce.coupons.rule;
+
+import com.monkcommerce.coupons.model.Coupon;
+import com.monkcommerce.coupons.model.CouponProduct;
+import com.monkcommerce.coupons.model.CouponProductRole;
+import com.monkcommerce.coupons.model.CouponType;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+
+class RuleCompilerTests {
+
+    private final RuleCompiler compiler = new RuleCompiler();
+
+    @Test
+    void compilesEachTypeIntoItsRule() {
+        assertThat(compiler.compile(1L, 2L, CouponType.CART_WISE, "{\"threshold\":100,\"discount\":10}"))
+                .isEqualTo(new CartWiseRule(1L, 2L, 100, 10));
+        assertThat(compiler.compile(3L, 0L, CouponType.PRODUCT_WISE, "{\"product_id\":7,\"discount\":20}"))
+                .isEqualTo(new ProductWiseRule(3L, 0L, 7L, 20));
+
+        BxGyRule bxGy = (BxGyRule) compiler.compile(4L, 0L, CouponType.BXGY, """
+                {"buy_products":[{"product_id":1,"quantity":2},{"product_id":2,"quantity":1}],
+                 "get_products":[{"product_id":3,"quantity":1}],"repetition_limit":2}""");
+        assertThat(bxGy.buyProductIds()).containsExactly(1L, 2L);
+        assertThat(bxGy.buyQuantities()).containsExactly(2, 1);
+        assertThat(bxGy.getProductIds()).containsExactly(3L);
+        assertThat(bxGy.repetitionLimit()).isEqualTo(2);
+        assertThat(bxGy.buyQuantityNeeded()).isEqualTo(3);
+        assertThat(bxGy.getQuantityPerDeal()).isEqualTo(1);
+
+        assertThat(compiler.compile(5L, 0L, CouponType.PRODUCT_SET, "{\"product_ids\":[3,1,3,2],\"discount\":15}"))
+                .isEqualTo(new ProductSetRule(5L, 0L, ProductSet.of(1L, 2L, 3L), 15));
+    }
+
+    @Test
+    void rejectsInvalidDetails() {
+        assertInvalid(CouponType.CART_WISE, null, "details are required");
+        assertInvalid(null, "{}", "type is required");
+        assertInvalid(CouponType.CART_WISE, "{\"threshold\":", "not valid JSON");
+        assertInvalid(CouponType.CART_WISE, "{\"threshold\":1,\"discount\":1} {}", "not valid JSON");
+        assertInvalid(CouponType.CART_WISE, "[1]", "must be a JSON object");
+        assertInvalid(CouponType.CART_WISE, "{\"discount\":10}", "Missing required field 'threshold'");
+        assertInvalid(CouponType.CART_WISE, "{\"threshold\":-1,\"discount\":10}", "non-negative");
+        assertInvalid(CouponType.CART_WISE, "{\"threshold\":\"100\",\"discount\":10}", "must be a number");
+        assertInvalid(CouponType.CART_WISE, "{\"threshold\":100,\"discount\":101}", "percentage");
+        assertInvalid(CouponType.PRODUCT_WISE, "{\"product_id\":1.5,\"discount\":10}", "integer product id");
+        assertInvalid(CouponType.BXGY, """
+                {"buy_products":[],"get_products":[{"product_id":3,"quantity":1}],"repetition_limit":1}""",
+                "'buy_products' must be a non-empty array");
+        assertInvalid(CouponType.BXGY, """
+                {"buy_products":[{"product_id":1,"quantity":0}],"get_products":[{"product_id":3,"quantity":1}],
+                 "repetition_limit":1}""", "'quantity' must be a positive integer");
+        assertInvalid(CouponType.BXGY, """
+                {"buy_products":[{"product_id":1,"quantity":1}],"get_products":[{"product_id":3,"quantity":1}]}""",
+                "'repetition_limit'");
+        assertInvalid(CouponType.BXGY, """
+                {"buy_products":[{"product_id":1,"quantity":2000000000},{"product_id":2,"quantity":2000000000}],
+                 "get_products":[{"product_id":3,"quantity":1}],"repetition_limit":1}""",
+                "Quantities in 'buy_products' must add up to at most");
+        assertInvalid(CouponType.BXGY, """
+                {"buy_products":[{"product_id":1,"quantity":1}],
+                 "get_products":[{"product_id":3,"quantity":2000000000},{"product_id":4,"quantity":2000000000}],
+                 "repetition_limit":1}""", "Quantities in 'get_products' must add up to at most");
+        assertInvalid(CouponType.PRODUCT_SET, "{\"discount\":10}", "Missing required field 'product_ids'");
+        assertInvalid(CouponType.PRODUCT_SET, "{\"product_ids\":[],\"discount\":10}",
+                "'product_ids' must be a non-empty array");
+        assertInvalid(CouponType.PRODUCT_SET, "{\"product_ids\":7,\"discount\":10}",
+                "'product_ids' must be a non-empty array");
+        assertInvalid(CouponType.PRODUCT_SET, "{\"product_ids\":[1,2.5],\"discount\":10}",
+                "'product_ids' must only hold integer product ids");
+        assertInvalid(CouponType.PRODUCT_SET, "{\"product_ids\":[1,\"2\"],\"discount\":10}",
+                "'product_ids' must only hold integer product ids");
+        assertInvalid(CouponType.PRODUCT_SET, "{\"product_ids\":[1],\"discount\":150}", "percentage");
+    }
+
+    @Test
+    void normalizesRulesIntoColumnsAndProductRows() {
+        Coupon coupon = Coupon.builder().type(CouponType.BXGY).build();
+        compiler.normalize(coupon, compiler.compile(1L, 0L, CouponType.BXGY, """
+                {"buy_products":[{"product_id":1,"quantity":2}],
+                 "get_products":[{"product_id":3,"quantity":1}],"repetition_limit":4}"""));
+
+        assertThat(coupon.getRepetitionLimit()).isEqualTo(4);
+        assertThat(coupon.getThreshold()).isNull();
+        assertThat(coupon.getProducts())
+                .extracting(CouponProduct::getProductId, CouponProduct::getRole, CouponProduct::getQuantity)
+                .containsExactly(tuple(1L, CouponProductRole.BUY, 2), tuple(3L, CouponProductRole.GET, 1));
+
+        compiler.normalize(coupon, compiler.compile(1L, 1L, CouponType.CART_WISE, "{\"threshold\":50,\"discount\":5}"));
+        assertThat(coupon.getThreshold()).isEqualTo(50.0);
+        assertThat(coupon.getDiscountPercent()).isEqualTo(5.0);
+        assertThat(coupon.getRepetitionLimit()).isNull();
+        assertThat(coupon.getProducts()).isEmpty();
+
+        compiler.normalize(coupon, compiler.compile(1L, 2L, CouponType.PRODUCT_WISE, "{\"product_id\":9,\"discount\":5}"));
+        assertThat(coupon.getThreshold()).isNull();
+        assertThat(coupon.getProducts())
+                .extracting(CouponProduct::getProductId, CouponProduct::getRole)
+                .containsExactly(tuple(9L, CouponProductRole.TARGET));
+
+        compiler.normalize(coupon, compiler.compile(1L, 3L, CouponType.PRODUCT_SET,
+                "{\"product_ids\":[4,5,6],\"discount\":12}"));
+        assertThat(coupon.getDiscountPercent()).isEqualTo(12.0);
+        assertThat(coupon.getProducts()).isEmpty();
+    }
+
+    private void assertInvalid(CouponType type, String details, String message) {
+        assertThatThrownBy(() -> compiler.compile(1L, 0L, type, details))
+                .isInstanceOf(InvalidCouponDetailsException.class)
+                .hasMessageContaining(message);
+    }
+}
@@ -0,0 +1,72 @@
+package com.monkcommerce.coupons.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.monkcommerce.coupons.dto.ApplicableCoupon;
+import com.monkcommerce.coupons.dto.ApplicableCouponsResponse;
+import com.monkcommerce.coupons.model.CouponType;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:coupon_batch",
+        "spring.jpa.show-sql=false"
+})
+class ApplicableCouponsBatchServiceTests {
+
+    private static final String MATCHING = "{\"items\":[{\"productId\":424242,\"quantity\":2,\"price\":50}]}";
+    private static final String NOT_MATCHING = "{\"items\":[{\"productId\":7,\"quantity\":1,\"price\":50}]}";
+
+    @Autowired
+    private ApplicableCouponsBatchService batchService;
+
+    @Autowired
+    private CouponService couponService;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void answersEveryCartOfAnNdjsonOrArrayBatchInOrder() throws IOException {
+        long couponId = couponService.createCoupon(CouponServiceTests.request(CouponType.PRODUCT_WISE,
+                Map.of("product_id", 424242, "discount", 10))).getId();
+
+        for (String batch : List.of(
+                MATCHING + "\n" + NOT_MATCHING + "\n{}\n" + MATCHING + "\n",
+                "[" + MATCHING + "," + NOT_MATCHING + ",{}," + MATCHING + "]")) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            long count = batchService.evaluate(
+                    new ByteArrayInputStream(batch.getBytes(StandardCharsets.UTF_8)), out);
+
+            String body = out.toString(StandardCharsets.UTF_8);
+            assertThat(count).isEqualTo(4);
+            assertThat(body).endsWith("\n");
+            List<ApplicableCouponsResponse> responses = new ArrayList<>();
+            for (String line : body.lines().toList()) {
+                responses.add(objectMapper.readValue(line, ApplicableCouponsResponse.class));
+            }
+            assertThat(responses).hasSize(4);
+            assertThat(responses.get(0).getApplicableCoupons())
+                    .containsExactly(new ApplicableCoupon(couponId, "PRODUCT_WISE", 10.0));
+            assertThat(responses.get(1).getApplicableCoupons()).isEmpty();
+            assertThat(responses.get(2).getApplicableCoupons()).isEmpty();
+            assertThat(responses.get(3)).isEqualTo(responses.get(0));
+        }
+    }
+
+    @Test
+    void writesNothingForAnEmptyBatch() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertThat(batchService.evaluate(new ByteArrayInputStream(new byte[0]), out)).isZero();
+        assertThat(out.size()).isZero();
+    }
+}
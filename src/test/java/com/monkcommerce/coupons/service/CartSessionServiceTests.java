@@ -0,0 +1,180 @@
+package com.monkcommerce.coupons.service;
+
+import com.monkcommerce.coupons.catalog.CatalogEntry;
+import com.monkcommerce.coupons.catalog.CatalogSnapshot;
+import com.monkcommerce.coupons.catalog.CouponCatalog;
+import com.monkcommerce.coupons.dto.ApplicableCoupon;
+import com.monkcommerce.coupons.dto.Cart;
+import com.monkcommerce.coupons.dto.CartItem;
+import com.monkcommerce.coupons.dto.CartSessionResponse;
+import com.monkcommerce.coupons.metrics.CouponMetrics;
+import com.monkcommerce.coupons.rule.BxGyRule;
+import com.monkcommerce.coupons.rule.CartIndex;
+import com.monkcommerce.coupons.rule.CartWiseRule;
+import com.monkcommerce.coupons.rule.CouponRule;
+import com.monkcommerce.coupons.rule.CouponRuleCache;
+import com.monkcommerce.coupons.rule.ProductWiseRule;
+import com.monkcommerce.coupons.rule.RuleCompiler;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CartSessionServiceTests {
+
+    private static final int PRODUCT_RANGE = 60;
+
+    private final DiscountService discountService = new DiscountService(new CouponRuleCache(new RuleCompiler()));
+    private final CouponMetrics metrics = new CouponMetrics(new SimpleMeterRegistry());
+    private CouponEvaluationEngine engine;
+    private CouponCatalog catalog;
+    private CartSessionService service;
+
+    @BeforeEach
+    void setUp() {
+        engine = new CouponEvaluationEngine(discountService, metrics);
+        ReflectionTestUtils.setField(engine, "parallelThreshold", Integer.MAX_VALUE);
+        ReflectionTestUtils.setField(engine, "chunkSize", 1024);
+        ReflectionTestUtils.setField(engine, "parallelism", 1);
+        engine.start();
+
+        catalog = new CouponCatalog(null, new CouponRuleCache(new RuleCompiler()), metrics, null);
+        ReflectionTestUtils.setField(catalog, "enabled", true);
+        publish(1L, rules(new Random(42)));
+
+        service = new CartSessionService(catalog, engine, discountService, metrics);
+        ReflectionTestUtils.setField(service, "maximumSize", 1000L);
+        ReflectionTestUtils.setField(service, "idleTimeout", Duration.ofMinutes(5));
+        service.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        engine.stop();
+    }
+
+    @Test
+    void incrementalEditsMatchAFullEvaluationAfterEveryChange() {
+        Random random = new Random(7);
+        CartSessionResponse response = service.create(null);
+        String sessionId = response.getSessionId();
+        assertThat(response.getApplicableCoupons()).isEmpty();
+
+        for (int step = 0; step < 1_000; step++) {
+            Set<Long> before = ids(response.getApplicableCoupons());
+            int lines = response.getItems().size();
+            int operation = lines == 0 ? 0 : lines > 15 ? 1 + random.nextInt(2) : random.nextInt(3);
+            response = switch (operation) {
+                case 0 -> service.addItem(sessionId, item(random));
+                case 1 -> service.updateItem(sessionId, random.nextInt(lines), item(random));
+                default -> service.removeItem(sessionId, random.nextInt(lines));
+            };
+
+            List<ApplicableCoupon> expected = fullEvaluation(response.getItems());
+            assertThat(response.getApplicableCoupons()).as("step %d", step).isEqualTo(expected);
+
+            Set<Long> after = ids(expected);
+            Set<Long> added = new TreeSet<>(after);
+            added.removeAll(before);
+            Set<Long> removed = new TreeSet<>(before);
+            removed.removeAll(after);
+            assertThat(ids(response.getAdded())).as("added at step %d", step).isEqualTo(added);
+            assertThat(response.getRemoved()).as("removed at step %d", step).containsExactlyElementsOf(removed);
+        }
+    }
+
+    @Test
+    void aNewCatalogVersionTriggersAFullReevaluation() {
+        List<CartItem> items = new ArrayList<>();
+        Random random = new Random(3);
+        for (int i = 0; i < 10; i++) {
+            items.add(item(random));
+        }
+        CartSessionResponse created = service.create(new Cart(items));
+        assertThat(created.getAdded()).isEqualTo(created.getApplicableCoupons()).isNotEmpty();
+        long withdrawn = created.getApplicableCoupons().get(0).getCouponId();
+
+        List<CouponRule> remaining = new ArrayList<>(rules(new Random(42)));
+        remaining.removeIf(rule -> rule.couponId() == withdrawn);
+        publish(2L, remaining);
+        CartSessionResponse refreshed = service.get(created.getSessionId());
+
+        assertThat(refreshed.getCatalogVersion()).isEqualTo(2L);
+        assertThat(refreshed.getRemoved()).containsExactly(withdrawn);
+        assertThat(refreshed.getAdded()).isEmpty();
+        assertThat(refreshed.getApplicableCoupons()).isEqualTo(fullEvaluation(items));
+    }
+
+    @Test
+    void unknownSessionsAndLinesAreNotFoundAndInvalidItemsRejected() {
+        String sessionId = service.create(null).getSessionId();
+
+        assertStatus(() -> service.get("missing"), HttpStatus.NOT_FOUND);
+        assertStatus(() -> service.removeItem(sessionId, 0), HttpStatus.NOT_FOUND);
+        assertStatus(() -> service.addItem(sessionId, CartItem.builder().productId(1L).quantity(0).build()),
+                HttpStatus.BAD_REQUEST);
+        assertStatus(() -> service.addItem(sessionId, CartItem.builder().quantity(1).build()), HttpStatus.BAD_REQUEST);
+
+        service.delete(sessionId);
+        assertStatus(() -> service.get(sessionId), HttpStatus.NOT_FOUND);
+    }
+
+    private List<ApplicableCoupon> fullEvaluation(List<CartItem> items) {
+        CartIndex cart = CartIndex.of(new Cart(items));
+        return engine.applicableCoupons(catalog.snapshot().index().candidates(cart), cart);
+    }
+
+    private void publish(long version, List<CouponRule> rules) {
+        ReflectionTestUtils.setField(catalog, "snapshot", CatalogSnapshot.of(version,
+                rules.stream().map(rule -> new CatalogEntry(rule, "{}")).toList(), 0L));
+    }
+
+    private static List<CouponRule> rules(Random random) {
+        List<CouponRule> rules = new ArrayList<>();
+        for (long id = 1; id <= 3_000; id++) {
+            int buyQuantity = 1 + random.nextInt(3);
+            rules.add(switch ((int) (id % 3)) {
+                case 0 -> new CartWiseRule(id, 0, random.nextInt(2_000), 1 + random.nextInt(50));
+                case 1 -> new ProductWiseRule(id, 0, random.nextInt(PRODUCT_RANGE), 1 + random.nextInt(50));
+                default -> new BxGyRule(id, 0,
+                        new long[]{random.nextInt(PRODUCT_RANGE)}, new int[]{buyQuantity},
+                        new long[]{random.nextInt(PRODUCT_RANGE)}, new int[]{1},
+                        1 + random.nextInt(3), buyQuantity, 1);
+            });
+        }
+        return rules;
+    }
+
+    private static CartItem item(Random random) {
+        return CartItem.builder()
+                .productId((long) random.nextInt(PRODUCT_RANGE))
+                .quantity(1 + random.nextInt(5))
+                .price(1 + random.nextInt(10_000) / 100.0)
+                .build();
+    }
+
+    private static Set<Long> ids(List<ApplicableCoupon> coupons) {
+        Set<Long> ids = new TreeSet<>();
+        coupons.forEach(coupon -> ids.add(coupon.getCouponId()));
+        return ids;
+    }
+
+    private static void assertStatus(Runnable call, HttpStatus status) {
+        assertThatThrownBy(call::run)
+                .isInstanceOfSatisfying(ResponseStatusException.class,
+                        e -> assertThat(e.getStatusCode()).isEqualTo(status));
+    }
+}
@@ -0,0 +1,129 @@
+package com.monkcommerce.coupons.service;
+
+import com.monkcommerce.coupons.catalog.CouponCatalog;
+import com.monkcommerce.coupons.dto.BulkImportError;
+import com.monkcommerce.coupons.dto.BulkImportResponse;
+import com.monkcommerce.coupons.model.CouponType;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * The throughput floors are deliberately low so the test holds on slow CI machines; raise them
+ * with {@code -Dbulk.budget.import-rows-per-second=..} and {@code -Dbulk.budget.export-rows-per-second=..}
+ * when measuring.
+ */
+@SpringBootTest(properties = {
+        "spring.jpa.show-sql=false",
+        "coupons.changes.poll-interval=0s"
+})
+class CouponBulkServiceTests {
+
+    private static final int COUPONS = 100_000;
+
+    @Autowired
+    private CouponBulkService bulkService;
+
+    @Autowired
+    private CouponCatalog couponCatalog;
+
+    @Value("${bulk.budget.import-rows-per-second:5000}")
+    private double minImportRowsPerSecond;
+
+    @Value("${bulk.budget.export-rows-per-second:20000}")
+    private double minExportRowsPerSecond;
+
+    @Test
+    void importsAndExportsOneHundredThousandCoupons() throws IOException {
+        StringBuilder ndjson = new StringBuilder();
+        for (int i = 0; i < COUPONS; i++) {
+            ndjson.append(switch (i % 3) {
+                case 0 -> "{\"type\":\"CART_WISE\",\"details\":{\"threshold\":" + (i % 500) + ",\"discount\":10}}";
+                case 1 -> "{\"type\":\"PRODUCT_WISE\",\"details\":{\"product_id\":" + (i % 10_000) + ",\"discount\":15}}";
+                default -> "{\"type\":\"BXGY\",\"details\":{\"buy_products\":[{\"product_id\":" + (i % 10_000)
+                        + ",\"quantity\":2}],\"get_products\":[{\"product_id\":" + ((i + 1) % 10_000)
+                        + ",\"quantity\":1}],\"repetition_limit\":2}}";
+            }).append('\n');
+            if (i == 10 || i == 50_000) {
+                ndjson.append("{\"type\":\"CART_WISE\",\"details\":{\"threshold\":-1,\"discount\":10}}\n");
+            }
+        }
+        ndjson.append("not json\n");
+
+        long catalogSizeBefore = couponCatalog.snapshot().size();
+        long catalogVersionBefore = couponCatalog.snapshot().version();
+        BulkImportResponse imported = bulkService.importCoupons(
+                new ByteArrayInputStream(ndjson.toString().getBytes(StandardCharsets.UTF_8)), BulkFormat.NDJSON);
+
+        assertThat(imported.getImported()).isEqualTo(COUPONS);
+        assertThat(imported.getFailed()).isEqualTo(3);
+        assertThat(imported.getErrors()).extracting(BulkImportError::getLine)
+                .containsExactly(12L, 50_003L, COUPONS + 3L);
+        assertThat(couponCatalog.snapshot().size()).isEqualTo(catalogSizeBefore + COUPONS);
+        assertThat(couponCatalog.snapshot().version()).isEqualTo(catalogVersionBefore + 1);
+        assertThat(imported.getRowsPerSecond()).isGreaterThanOrEqualTo(minImportRowsPerSecond);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long start = System.nanoTime();
+        long exported = bulkService.exportCoupons(null, BulkFormat.NDJSON, out);
+        long exportNanos = System.nanoTime() - start;
+
+        assertThat(exported).isGreaterThanOrEqualTo(COUPONS);
+        assertThat(out.toString(StandardCharsets.UTF_8).lines().count()).isEqualTo(exported);
+        assertThat(exported * 1_000_000_000.0 / exportNanos).isGreaterThanOrEqualTo(minExportRowsPerSecond);
+    }
+
+    @Test
+    void csvImportReportsBadLinesAndRoundTripsThroughExport() throws IOException {
+        String csv = """
+                type,details
+                PRODUCT_WISE,"{""product_id"":987654321,""discount"":20}"
+                PRODUCT_WISE,"{""product_id"":987654322,""discount"":200}"
+                COUPON_WISE,"{}"
+                """;
+
+        BulkImportResponse imported = bulkService.importCoupons(
+                new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)), BulkFormat.CSV);
+
+        assertThat(imported.getImported()).isEqualTo(1);
+        assertThat(imported.getErrors()).extracting(BulkImportError::getLine).containsExactly(3L, 4L);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        bulkService.exportCoupons(CouponType.PRODUCT_WISE, BulkFormat.CSV, out);
+
+        assertThat(out.toString(StandardCharsets.UTF_8))
+                .startsWith("type,details\n")
+                .contains("PRODUCT_WISE,\"{\"\"product_id\"\":987654321,\"\"discount\"\":20}\"\n")
+                .doesNotContain("987654322");
+    }
+
+    @Test
+    void canonicalizesDetailsOnImportAndExportsThemVerbatim() throws IOException {
+        String csv = """
+                type,details
+                PRODUCT_WISE,"{ ""product_id"" : 987654330,  ""discount"" : 5 }"
+                PRODUCT_WISE,"{""product_id"":987654331,""discount"":5} trailing"
+                """;
+
+        BulkImportResponse imported = bulkService.importCoupons(
+                new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)), BulkFormat.CSV);
+
+        assertThat(imported.getImported()).isEqualTo(1);
+        assertThat(imported.getErrors()).extracting(BulkImportError::getLine).containsExactly(3L);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        bulkService.exportCoupons(CouponType.PRODUCT_WISE, BulkFormat.NDJSON, out);
+
+        assertThat(out.toString(StandardCharsets.UTF_8))
+                .contains("\"details\":{\"product_id\":987654330,\"discount\":5}")
+                .doesNotContain("987654331");
+    }
+}
@@ -0,0 +1,98 @@
+package com.monkcommerce.coupons.service;
+
+import com.monkcommerce.coupons.CouponsApplication;
+import com.monkcommerce.coupons.catalog.CouponCatalog;
+import com.monkcommerce.coupons.dto.CouponResponse;
+import com.monkcommerce.coupons.dto.CreateCouponRequest;
+import com.monkcommerce.coupons.model.CouponType;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Two application contexts sharing one database, standing in for two nodes.
+ */
+class CouponChangeFeedTests {
+
+    private static ConfigurableApplicationContext nodeA;
+    private static ConfigurableApplicationContext nodeB;
+
+    @BeforeAll
+    static void startNodes() {
+        nodeA = startNode();
+        nodeB = startNode();
+    }
+
+    @AfterAll
+    static void stopNodes() {
+        nodeB.close();
+        nodeA.close();
+    }
+
+    @Test
+    void appliesChangesFromAnotherNodeAndReloadsOnceTheyAreCompactedAway() {
+        CouponService couponsA = nodeA.getBean(CouponService.class);
+        CouponChangeService changesA = nodeA.getBean(CouponChangeService.class);
+        CouponChangeService changesB = nodeB.getBean(CouponChangeService.class);
+        CouponCatalog catalogB = nodeB.getBean(CouponCatalog.class);
+
+        CouponResponse first = couponsA.createCoupon(cartWise(100, 10));
+        assertThat(catalogB.find(first.getId())).isEmpty();
+        changesB.poll();
+        assertThat(catalogB.find(first.getId())).hasValueSatisfying(
+                entry -> assertThat(entry.details()).contains("\"discount\":10"));
+        long seenByB = catalogB.feedVersion();
+
+        couponsA.updateCoupon(first.getId(), cartWise(100, 20));
+        CouponResponse second = couponsA.createCoupon(cartWise(200, 5));
+        assertThat(changesA.changesSince(seenByB, 10).upserts()).hasSize(2);
+
+        ReflectionTestUtils.setField(changesA, "clock", Clock.offset(Clock.systemUTC(), Duration.ofDays(2)));
+        changesA.compact();
+        ReflectionTestUtils.setField(changesA, "clock", Clock.systemUTC());
+        assertThat(changesA.changesSince(seenByB, 10).reset()).isTrue();
+
+        changesB.poll();
+        assertThat(catalogB.find(first.getId())).hasValueSatisfying(
+                entry -> assertThat(entry.details()).contains("\"discount\":20"));
+        assertThat(catalogB.find(second.getId())).isPresent();
+        assertThat(catalogB.feedVersion()).isGreaterThan(seenByB);
+
+        couponsA.deleteCoupon(first.getId());
+        CouponChangeService.CouponChanges changes = changesA.changesSince(catalogB.feedVersion(), 10);
+        assertThat(changes.upserts()).isEmpty();
+        assertThat(changes.deleted()).containsExactly(first.getId());
+        changesB.poll();
+        assertThat(catalogB.find(first.getId())).isEmpty();
+        assertThat(catalogB.find(second.getId())).isPresent();
+        assertThat(catalogB.feedVersion()).isEqualTo(changes.version());
+    }
+
+    private static ConfigurableApplicationContext startNode() {
+        return new SpringApplicationBuilder(CouponsApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "spring.datasource.url=jdbc:h2:mem:coupon_changes;DB_CLOSE_DELAY=-1",
+                        "spring.jpa.show-sql=false",
+                        "coupons.changes.poll-interval=0s",
+                        "coupons.changes.compaction-interval=0s")
+                .run();
+    }
+
+    private static CreateCouponRequest cartWise(int threshold, int discount) {
+        CreateCouponRequest request = new CreateCouponRequest();
+        request.setType(CouponType.CART_WISE);
+        request.setDetails(Map.of("threshold", threshold, "discount", discount));
+        return request;
+    }
+}
@@ -0,0 +1,167 @@
+package com.monkcommerce.coupons.service;
+
+import com.monkcommerce.coupons.dto.ApplicableCoupon;
+import com.monkcommerce.coupons.dto.Cart;
+import com.monkcommerce.coupons.dto.CartItem;
+import com.monkcommerce.coupons.dto.CouponExplanation;
+import com.monkcommerce.coupons.metrics.CouponMetrics;
+import com.monkcommerce.coupons.rule.BxGyRule;
+import com.monkcommerce.coupons.rule.CartIndex;
+import com.monkcommerce.coupons.rule.CartWiseRule;
+import com.monkcommerce.coupons.rule.CouponRule;
+import com.monkcommerce.coupons.rule.CouponRuleCache;
+import com.monkcommerce.coupons.rule.ProductWiseRule;
+import com.monkcommerce.coupons.rule.RuleCompiler;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CouponEvaluationEngineTests {
+
+    private final DiscountService discountService = new DiscountService(new CouponRuleCache(new RuleCompiler()));
+
+    @Test
+    void parallelEvaluationMatchesSequentialEvaluation() {
+        List<CouponRule> candidates = candidates(new Random(42));
+        CartIndex cart = CartIndex.of(cart(new Random(7)));
+
+        CouponEvaluationEngine sequential = engine(Integer.MAX_VALUE, 1024);
+        CouponEvaluationEngine parallel = engine(1, 64);
+        try {
+            assertThat(parallel.evaluate(candidates, cart)).containsExactly(sequential.evaluate(candidates, cart));
+            assertThat(parallel.applicableCoupons(candidates, cart))
+                    .isNotEmpty()
+                    .isEqualTo(sequential.applicableCoupons(candidates, cart));
+        } finally {
+            sequential.stop();
+            parallel.stop();
+        }
+    }
+
+    @Test
+    void topApplicableCouponsMatchFullScanFollowedBySort() {
+        List<CouponRule> candidates = candidates(new Random(42));
+        CouponEvaluationEngine engine = engine(Integer.MAX_VALUE, 1024);
+        try {
+            for (int seed = 0; seed < 20; seed++) {
+                CartIndex cart = CartIndex.of(cart(new Random(seed)));
+                List<ApplicableCoupon> sorted = new ArrayList<>(engine.applicableCoupons(candidates, cart));
+                sorted.sort(CouponEvaluationEngine.BEST_FIRST);
+
+                for (int k : new int[]{1, 5, 50, 1_000_000}) {
+                    assertThat(engine.topApplicableCoupons(candidates, cart, k))
+                            .isEqualTo(sorted.subList(0, Math.min(k, sorted.size())));
+                }
+            }
+        } finally {
+            engine.stop();
+        }
+    }
+
+    @Test
+    void explainReportsTheSameOutcomeAsEvaluation() {
+        List<CouponRule> candidates = candidates(new Random(42));
+        CouponEvaluationEngine engine = engine(Integer.MAX_VALUE, 1024);
+        try {
+            for (int seed = 0; seed < 5; seed++) {
+                CartIndex cart = CartIndex.of(cart(new Random(seed)));
+                double[] discounts = engine.evaluate(candidates, cart);
+                List<CouponExplanation> explained = engine.explain(candidates, cart, null);
+                for (int i = 0; i < discounts.length; i++) {
+                    CouponExplanation explanation = explained.get(i);
+                    assertThat(explanation.getCouponId()).isEqualTo(candidates.get(i).couponId());
+                    assertThat(explanation.getPath()).isEqualTo(CouponExplanation.Path.EVALUATED);
+                    assertThat(explanation.getDiscount()).isEqualTo(discounts[i]);
+                    assertThat(explanation.getEvaluationNanos()).isNotNull();
+                    assertThat(explanation.getRejection() == null).isEqualTo(discounts[i] > 0);
+                }
+
+                List<CouponExplanation> top = engine.explain(candidates, cart, 5);
+                List<ApplicableCoupon> best = new ArrayList<>();
+                for (CouponExplanation explanation : top) {
+                    if (explanation.getPath() == CouponExplanation.Path.BOUND_PRUNED) {
+                        assertThat(explanation.getEvaluationNanos()).isNull();
+                        assertThat(explanation.getRejection()).isNotNull();
+                    } else if (explanation.getDiscount() > 0) {
+                        best.add(new ApplicableCoupon(explanation.getCouponId(), explanation.getType(),
+                                explanation.getDiscount()));
+                    }
+                }
+                best.sort(CouponEvaluationEngine.BEST_FIRST);
+                assertThat(best.subList(0, Math.min(5, best.size())))
+                        .isEqualTo(engine.topApplicableCoupons(candidates, cart, 5));
+                assertThat(top).extracting(CouponExplanation::getPath).contains(CouponExplanation.Path.BOUND_PRUNED);
+            }
+        } finally {
+            engine.stop();
+        }
+    }
+
+    @Test
+    void explainsWhyEachCouponGivesNoDiscount() {
+        List<CouponRule> candidates = List.of(
+                new CartWiseRule(1, 0, 500, 10),
+                new ProductWiseRule(2, 0, 99, 10),
+                new BxGyRule(3, 0, new long[]{1}, new int[]{3}, new long[]{2}, new int[]{1}, 1, 3, 1),
+                new BxGyRule(4, 0, new long[]{1}, new int[]{2}, new long[]{99}, new int[]{1}, 1, 2, 1),
+                new ProductWiseRule(5, 0, 1, 10));
+        CartIndex cart = CartIndex.of(Cart.builder().items(List.of(
+                CartItem.builder().productId(1L).quantity(2).price(50).build(),
+                CartItem.builder().productId(2L).quantity(1).price(20).build())).build());
+        CouponEvaluationEngine engine = engine(Integer.MAX_VALUE, 1024);
+        try {
+            assertThat(engine.explain(candidates, cart, null))
+                    .extracting(CouponExplanation::getRejection)
+                    .containsExactly(CouponExplanation.Reason.THRESHOLD_NOT_MET,
+                            CouponExplanation.Reason.PRODUCT_NOT_IN_CART,
+                            CouponExplanation.Reason.BUY_QUANTITY_NOT_MET,
+                            CouponExplanation.Reason.GET_PRODUCT_NOT_IN_CART,
+                            null);
+        } finally {
+            engine.stop();
+        }
+    }
+
+    private List<CouponRule> candidates(Random random) {
+        List<CouponRule> candidates = new ArrayList<>();
+        for (long id = 1; id <= 20_000; id++) {
+            int buyQuantity = 1 + random.nextInt(3);
+            candidates.add(switch ((int) (id % 3)) {
+                case 0 -> new CartWiseRule(id, 0, random.nextInt(500), 1 + random.nextInt(50));
+                case 1 -> new ProductWiseRule(id, 0, random.nextInt(200), 1 + random.nextInt(50));
+                default -> new BxGyRule(id, 0,
+                        new long[]{random.nextInt(200)}, new int[]{buyQuantity},
+                        new long[]{random.nextInt(200)}, new int[]{1},
+                        1 + random.nextInt(3), buyQuantity, 1);
+            });
+        }
+        return candidates;
+    }
+
+    private Cart cart(Random random) {
+        List<CartItem> items = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            items.add(CartItem.builder()
+                    .productId((long) random.nextInt(200))
+                    .quantity(1 + random.nextInt(5))
+                    .price(1 + random.nextInt(10_000) / 100.0)
+                    .build());
+        }
+        return Cart.builder().items(items).build();
+    }
+
+    private CouponEvaluationEngine engine(int parallelThreshold, int chunkSize) {
+        CouponEvaluationEngine engine = new CouponEvaluationEngine(discountService, new CouponMetrics(new SimpleMeterRegistry()));
+        ReflectionTestUtils.setField(engine, "parallelThreshold", parallelThreshold);
+        ReflectionTestUtils.setField(engine, "chunkSize", chunkSize);
+        ReflectionTestUtils.setField(engine, "parallelism", 4);
+        engine.start();
+        return engine;
+    }
+}
@@ -0,0 +1,115 @@
+package com.monkcommerce.coupons.service;
+
+import com.monkcommerce.coupons.dto.Cart;
+import com.monkcommerce.coupons.dto.CartItem;
+import com.monkcommerce.coupons.dto.CouponResponse;
+import com.monkcommerce.coupons.dto.CreateCouponRequest;
+import com.monkcommerce.coupons.model.CouponType;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:coupon_service",
+        "spring.jpa.show-sql=false"
+})
+class CouponServiceTests {
+
+    @Autowired
+    private CouponService couponService;
+
+    @Autowired
+    private MeterRegistry registry;
+
+    @Test
+    void rejectsInvalidDetailsWithBadRequest() {
+        assertBadRequest(request(CouponType.CART_WISE, Map.of("threshold", -1, "discount", 10)), "non-negative");
+        assertBadRequest(request(CouponType.PRODUCT_WISE, Map.of("discount", 10)), "product_id");
+        assertBadRequest(request(null, Map.of("threshold", 1, "discount", 10)), "type is required");
+
+        long id = couponService.createCoupon(request(CouponType.CART_WISE, Map.of("threshold", 1, "discount", 10)))
+                .getId();
+        assertThatThrownBy(() -> couponService.updateCoupon(id,
+                request(CouponType.CART_WISE, Map.of("threshold", 1, "discount", 150))))
+                .isInstanceOfSatisfying(ResponseStatusException.class,
+                        e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST));
+        assertThat(couponService.getCouponById(id).getDetails()).contains("\"discount\":10");
+    }
+
+    @Test
+    void pagesThroughCouponsByIdWithAnOptionalType() {
+        List<Long> productWise = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            couponService.createCoupon(request(CouponType.CART_WISE, Map.of("threshold", i, "discount", 5)));
+            productWise.add(couponService.createCoupon(
+                    request(CouponType.PRODUCT_WISE, Map.of("product_id", i, "discount", 5))).getId());
+        }
+
+        List<Long> all = new ArrayList<>();
+        long after = 0L;
+        List<CouponResponse> page;
+        do {
+            page = couponService.getCoupons(after, 3, null);
+            assertThat(page.size()).isLessThanOrEqualTo(3);
+            page.forEach(coupon -> all.add(coupon.getId()));
+            after = page.isEmpty() ? after : page.get(page.size() - 1).getId();
+        } while (page.size() == 3);
+        assertThat(all).isSorted().doesNotHaveDuplicates().containsAll(productWise)
+                .containsExactlyElementsOf(couponService.getAllCoupons().stream().map(CouponResponse::getId).toList());
+
+        List<CouponResponse> typed = couponService.getCoupons(productWise.get(0), 2, CouponType.PRODUCT_WISE);
+        assertThat(typed).extracting(CouponResponse::getId).containsExactly(productWise.get(1), productWise.get(2));
+        assertThat(couponService.getCoupons(productWise.get(4), 10, CouponType.PRODUCT_WISE)).isEmpty();
+    }
+
+    @Test
+    void rejectsPageSizesOutsideTheLimit() {
+        for (int limit : new int[]{0, -1, 1001}) {
+            assertThatThrownBy(() -> couponService.getCoupons(0L, limit, null))
+                    .isInstanceOfSatisfying(ResponseStatusException.class,
+                            e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST));
+        }
+        assertThat(couponService.getCoupons(Long.MAX_VALUE, 1000, null)).isEmpty();
+    }
+
+    @Test
+    void timesCachedApplicableRequestsButCountsCandidatesOnlyWhenEvaluating() {
+        couponService.createCoupon(request(CouponType.CART_WISE, Map.of("threshold", 1, "discount", 10)));
+        Cart cart = new Cart(List.of(new CartItem(1L, 2, 50, 0)));
+        long timed = registry.get("coupons.applicable.duration").timer().count();
+        long matched = registry.get("coupons.applicable.matched").summary().count();
+        long evaluated = registry.get("coupons.applicable.candidates").summary().count();
+
+        couponService.getApplicableCoupons(cart);
+        couponService.getApplicableCoupons(cart);
+
+        assertThat(registry.get("coupons.applicable.duration").timer().count()).isEqualTo(timed + 2);
+        assertThat(registry.get("coupons.applicable.matched").summary().count()).isEqualTo(matched + 2);
+        assertThat(registry.get("coupons.applicable.candidates").summary().count()).isEqualTo(evaluated + 1);
+    }
+
+    private void assertBadRequest(CreateCouponRequest request, String message) {
+        assertThatThrownBy(() -> couponService.createCoupon(request))
+                .isInstanceOfSatisfying(ResponseStatusException.class, e -> {
+                    assertThat(e.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+                    assertThat(e.getReason()).contains(message);
+                });
+    }
+
+    static CreateCouponRequest request(CouponType type, Map<String, Object> details) {
+        CreateCouponRequest request = new CreateCouponRequest();
+        request.setType(type);
+        request.setDetails(details);
+        return request;
+    }
+}
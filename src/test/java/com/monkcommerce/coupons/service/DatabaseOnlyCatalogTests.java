@@ -0,0 +1,60 @@
+package com.monkcommerce.coupons.service;
+
+import com.monkcommerce.coupons.dto.ApplicableCoupon;
+import com.monkcommerce.coupons.dto.Cart;
+import com.monkcommerce.coupons.dto.CartItem;
+import com.monkcommerce.coupons.dto.CreateCouponRequest;
+import com.monkcommerce.coupons.model.CouponType;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:coupon_database_only",
+        "spring.jpa.show-sql=false",
+        "coupons.catalog.enabled=false"
+})
+class DatabaseOnlyCatalogTests {
+
+    @Autowired
+    private CouponService couponService;
+
+    @Test
+    void evaluatesTheActiveCouponsTheDatabasePrefilters() {
+        long cartWise = create(CouponType.CART_WISE, Map.of("threshold", 100, "discount", 10), null);
+        create(CouponType.CART_WISE, Map.of("threshold", 1_000, "discount", 10), null);
+        long productWise = create(CouponType.PRODUCT_WISE, Map.of("product_id", 5, "discount", 20), null);
+        create(CouponType.PRODUCT_WISE, Map.of("product_id", 5, "discount", 50),
+                Instant.now().minus(1, ChronoUnit.DAYS));
+        create(CouponType.PRODUCT_WISE, Map.of("product_id", 6, "discount", 20), null);
+        long productSet = create(CouponType.PRODUCT_SET, Map.of("product_ids", List.of(7, 5), "discount", 5), null);
+        create(CouponType.PRODUCT_SET, Map.of("product_ids", List.of(7, 8), "discount", 5), null);
+
+        Cart cart = Cart.builder().items(List.of(
+                CartItem.builder().productId(5L).quantity(2).price(100).build())).build();
+        assertThat(couponService.getApplicableCoupons(cart).getApplicableCoupons())
+                .extracting(ApplicableCoupon::getCouponId)
+                .containsExactly(cartWise, productWise, productSet);
+        assertThat(couponService.getTopApplicableCoupons(cart, 1).getApplicableCoupons())
+                .extracting(ApplicableCoupon::getCouponId)
+                .containsExactly(productWise);
+        assertThat(couponService.getApplicableCoupons(Cart.builder().items(List.of()).build())
+                .getApplicableCoupons()).isEmpty();
+    }
+
+    private long create(CouponType type, Map<String, Object> details, Instant validUntil) {
+        CreateCouponRequest request = CouponServiceTests.request(type, details);
+        if (validUntil != null) {
+            request.setValidFrom(validUntil.minus(1, ChronoUnit.DAYS));
+            request.setValidUntil(validUntil);
+        }
+        return couponService.createCoupon(request).getId();
+    }
+}
@@ -0,0 +1,75 @@
+package com.monkcommerce.coupons.service;
+
+import com.monkcommerce.coupons.dto.Cart;
+import com.monkcommerce.coupons.dto.CartItem;
+import com.monkcommerce.coupons.dto.CouponExplanation;
+import com.monkcommerce.coupons.dto.UpdatedCart;
+import com.monkcommerce.coupons.rule.BxGyRule;
+import com.monkcommerce.coupons.rule.CartIndex;
+import com.monkcommerce.coupons.rule.CouponRuleCache;
+import com.monkcommerce.coupons.rule.ProductSet;
+import com.monkcommerce.coupons.rule.ProductSetRule;
+import com.monkcommerce.coupons.rule.RuleCompiler;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class DiscountServiceTests {
+
+    private static final ProductSetRule CATEGORY = new ProductSetRule(1L, 0L, ProductSet.of(10L, 20L, 30L), 10);
+
+    private final DiscountService discountService = new DiscountService(new CouponRuleCache(new RuleCompiler()));
+
+    private final Cart cart = new Cart(List.of(
+            new CartItem(10L, 2, 50, 0),
+            new CartItem(99L, 1, 200, 0),
+            new CartItem(30L, 1, 100, 0),
+            new CartItem(10L, 1, 20, 0)));
+
+    @Test
+    void discountsOnlyTheCartProductsInTheSet() {
+        assertThat(discountService.calculateDiscount(CATEGORY, cart)).isCloseTo(22.0, within(1e-9));
+        assertThat(discountService.upperBound(CATEGORY, CartIndex.of(cart))).isCloseTo(22.0, within(1e-9));
+        assertThat(discountService.calculateDiscount(CATEGORY, new Cart(List.of(new CartItem(99L, 3, 10, 0)))))
+                .isZero();
+    }
+
+    @Test
+    void appliesTheSetDiscountLineByLine() {
+        UpdatedCart updated = discountService.applyDiscount(CATEGORY, cart);
+
+        assertThat(updated.getItems())
+                .extracting(CartItem::getTotalDiscount)
+                .containsExactly(10.0, 0.0, 10.0, 2.0);
+        assertThat(updated.getTotalPrice()).isCloseTo(420.0, within(1e-9));
+        assertThat(updated.getTotalDiscount()).isCloseTo(22.0, within(1e-9));
+        assertThat(updated.getFinalPrice()).isCloseTo(398.0, within(1e-9));
+    }
+
+    @Test
+    void explainsWhyASetGivesNoDiscount() {
+        Cart outside = new Cart(List.of(new CartItem(99L, 1, 200, 0)));
+        assertThat(discountService.rejection(CATEGORY, CartIndex.of(outside)).reason())
+                .isEqualTo(CouponExplanation.Reason.PRODUCT_NOT_IN_CART);
+
+        Cart free = new Cart(List.of(new CartItem(20L, 1, 0, 0)));
+        assertThat(discountService.calculateDiscount(CATEGORY, free)).isZero();
+        assertThat(discountService.rejection(CATEGORY, CartIndex.of(free)).reason())
+                .isEqualTo(CouponExplanation.Reason.ZERO_DISCOUNT);
+    }
+
+    @Test
+    void freeItemsPastTheIntRangeDoNotWrapAround() {
+        BxGyRule rule = new BxGyRule(2L, 0L, new long[] {1L}, new int[] {1},
+                new long[] {2L}, new int[] {2_000_000_000}, 2, 1, 2_000_000_000);
+        Cart cart = new Cart(List.of(new CartItem(1L, 2, 5, 0), new CartItem(2L, 3, 10, 0)));
+
+        assertThat(discountService.calculateDiscount(rule, cart)).isCloseTo(30.0, within(1e-9));
+        assertThat(discountService.applyDiscount(rule, cart).getItems())
+                .extracting(CartItem::getTotalDiscount)
+                .containsExactly(0.0, 30.0);
+    }
+}
@@ -0,0 +1,121 @@
+package com.monkcommerce.coupons.service;
+
+import com.monkcommerce.coupons.dto.Cart;
+import com.monkcommerce.coupons.dto.CartItem;
+import com.monkcommerce.coupons.metrics.CouponMetrics;
+import com.monkcommerce.coupons.rule.CartFingerprint;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EvaluationCoalescerTests {
+
+    private static final int CALLERS = 8;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @Test
+    void concurrentIdenticalEvaluationsRunOnce() throws Exception {
+        EvaluationCoalescer coalescer = coalescer(Duration.ofSeconds(10));
+        CartFingerprint cart = CartFingerprint.ordered(cart());
+        AtomicInteger evaluations = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+
+        List<Future<String>> results = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(CALLERS)) {
+            for (int i = 0; i < CALLERS; i++) {
+                results.add(executor.submit(() -> coalescer.execute(1L, 7L, cart, () -> {
+                    evaluations.incrementAndGet();
+                    await(release);
+                    return "result";
+                })));
+            }
+            waitForCoalesced(CALLERS - 1);
+            release.countDown();
+
+            for (Future<String> result : results) {
+                assertThat(result.get(10, TimeUnit.SECONDS)).isEqualTo("result");
+            }
+        }
+
+        assertThat(evaluations).hasValue(1);
+        assertThat(registry.get("coupons.coalesced").tag("operation", "apply").counter().count())
+                .isEqualTo(CALLERS - 1);
+    }
+
+    @Test
+    void differentCatalogVersionsAreNotCoalesced() {
+        EvaluationCoalescer coalescer = coalescer(Duration.ofSeconds(10));
+        CartFingerprint cart = CartFingerprint.ordered(cart());
+
+        String inner = coalescer.execute(1L, EvaluationCoalescer.ALL_COUPONS, cart,
+                () -> coalescer.execute(2L, EvaluationCoalescer.ALL_COUPONS, cart, () -> "v2"));
+
+        assertThat(inner).isEqualTo("v2");
+        assertThat(registry.get("coupons.coalesced").tag("operation", "applicable").counter().count()).isZero();
+    }
+
+    @Test
+    void waiterEvaluatesOnItsOwnAfterTimeout() throws Exception {
+        EvaluationCoalescer coalescer = coalescer(Duration.ofMillis(50));
+        CartFingerprint cart = CartFingerprint.ordered(cart());
+        CountDownLatch leaderStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        try (ExecutorService executor = Executors.newSingleThreadExecutor()) {
+            Future<String> leader = executor.submit(() -> coalescer.execute(1L, 7L, cart, () -> {
+                leaderStarted.countDown();
+                await(release);
+                return "leader";
+            }));
+            leaderStarted.await(10, TimeUnit.SECONDS);
+
+            assertThat(coalescer.execute(1L, 7L, cart, () -> "waiter")).isEqualTo("waiter");
+            release.countDown();
+            assertThat(leader.get(10, TimeUnit.SECONDS)).isEqualTo("leader");
+        }
+
+        assertThat(registry.get("coupons.coalescing.timeouts").counter().count()).isEqualTo(1);
+    }
+
+    private EvaluationCoalescer coalescer(Duration timeout) {
+        EvaluationCoalescer coalescer = new EvaluationCoalescer(new CouponMetrics(registry));
+        ReflectionTestUtils.setField(coalescer, "enabled", true);
+        ReflectionTestUtils.setField(coalescer, "timeout", timeout);
+        return coalescer;
+    }
+
+    private void waitForCoalesced(int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (registry.get("coupons.coalesced").tag("operation", "apply").counter().count() < expected
+                && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Cart cart() {
+        return Cart.builder()
+                .items(List.of(CartItem.builder().productId(1L).quantity(2).price(10.0).build()))
+                .build();
+    }
+}
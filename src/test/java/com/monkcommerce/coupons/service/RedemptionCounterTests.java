@@ -0,0 +1,91 @@
+package com.monkcommerce.coupons.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RedemptionCounterTests {
+
+    private static final int THREADS = 16;
+    private static final long FINAL_LIMIT = 20_000;
+
+    @Test
+    void changingTheLimitUnderLoadNeitherLosesNorCreatesTokens() throws InterruptedException {
+        RedemptionCounter counter = new RedemptionCounter(8, 0L);
+        counter.setLimit(FINAL_LIMIT / 2);
+        AtomicBoolean running = new AtomicBoolean(true);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            threads.add(Thread.ofPlatform().start(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                List<RedemptionCounter.Reservation> held = new ArrayList<>();
+                while (running.get()) {
+                    RedemptionCounter.Reservation reservation = counter.reserve();
+                    if (reservation != null) {
+                        held.add(reservation);
+                    }
+                    if (!held.isEmpty() && (reservation == null || random.nextInt(3) == 0)) {
+                        RedemptionCounter.Reservation done = held.remove(random.nextInt(held.size()));
+                        if (random.nextInt(8) == 0) {
+                            done.commit();
+                        } else {
+                            done.release();
+                        }
+                    }
+                }
+                held.forEach(RedemptionCounter.Reservation::release);
+            }));
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int change = 0; change < 2_000; change++) {
+            counter.setLimit(FINAL_LIMIT / 4 + random.nextLong(FINAL_LIMIT * 3 / 4));
+            Thread.onSpinWait();
+        }
+        counter.setLimit(FINAL_LIMIT);
+        running.set(false);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertThat(counter.committed()).isLessThanOrEqualTo(FINAL_LIMIT);
+        long redeemed = counter.committed();
+        RedemptionCounter.Reservation reservation;
+        while ((reservation = counter.reserve()) != null) {
+            reservation.commit();
+            redeemed++;
+        }
+        assertThat(redeemed).isEqualTo(FINAL_LIMIT);
+        assertThat(counter.committed()).isEqualTo(FINAL_LIMIT);
+    }
+
+    @Test
+    void aLimitLoweredBelowWhatIsHeldStaysInDebtUntilReleasesPayItOff() {
+        RedemptionCounter counter = new RedemptionCounter(4, 0L);
+        counter.setLimit(5);
+        List<RedemptionCounter.Reservation> held = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            held.add(counter.reserve());
+        }
+
+        counter.setLimit(2);
+        held.subList(0, 3).forEach(RedemptionCounter.Reservation::release);
+        assertThat(counter.reserve()).isNull();
+
+        held.get(3).release();
+        RedemptionCounter.Reservation next = counter.reserve();
+        assertThat(next).isNotNull();
+        assertThat(counter.reserve()).isNull();
+
+        next.commit();
+        held.get(4).commit();
+        counter.setLimit(3);
+        assertThat(counter.reserve()).isNotNull();
+        assertThat(counter.reserve()).isNull();
+    }
+}
@@ -0,0 +1,244 @@
+package com.monkcommerce.coupons.service;
+
+import com.monkcommerce.coupons.catalog.CatalogEntry;
+import com.monkcommerce.coupons.metrics.CouponMetrics;
+import com.monkcommerce.coupons.model.CouponRedemption;
+import com.monkcommerce.coupons.repository.CouponRedemptionRepository;
+import com.monkcommerce.coupons.rule.CartWiseRule;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:coupon_redemptions",
+        "spring.jpa.show-sql=false",
+        "coupons.redemptions.flush-interval=0s"
+})
+class RedemptionServiceTests {
+
+    private static final int THREADS = 400;
+
+    @Autowired
+    private RedemptionService redemptionService;
+
+    @Autowired
+    private CouponRedemptionRepository redemptionRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private CouponMetrics metrics;
+
+    @Test
+    void neverRedeemsAHotCouponPastItsLimit() throws InterruptedException {
+        CatalogEntry coupon = coupon(1_001L, 1_000L, CatalogEntry.NO_LIMIT);
+        AtomicInteger committed = new AtomicInteger();
+
+        hammer(() -> {
+            while (true) {
+                RedemptionService.Redemption redemption;
+                try {
+                    redemption = redemptionService.reserve(coupon, null);
+                } catch (ResponseStatusException e) {
+                    return;
+                }
+                if (ThreadLocalRandom.current().nextInt(4) == 0) {
+                    redemption.release();
+                } else {
+                    redemption.commit();
+                    committed.incrementAndGet();
+                }
+            }
+        });
+
+        assertThat(committed).hasValue(1_000);
+        assertThat(redemptionService.redeemed(1_001L, null)).isEqualTo(1_000L);
+    }
+
+    @Test
+    void neverRedeemsPastAPerCustomerLimit() throws InterruptedException {
+        CatalogEntry coupon = coupon(1_002L, CatalogEntry.NO_LIMIT, 3L);
+        AtomicInteger committed = new AtomicInteger();
+        AtomicInteger tickets = new AtomicInteger();
+
+        hammer(() -> {
+            String customerId = "customer-" + tickets.getAndIncrement() % 2;
+            try {
+                redemptionService.reserve(coupon, customerId).commit();
+                committed.incrementAndGet();
+            } catch (ResponseStatusException e) {
+                assertThat(e.getStatusCode()).isEqualTo(HttpStatus.CONFLICT);
+            }
+        });
+
+        assertThat(committed).hasValue(6);
+        assertThat(redemptionService.redeemed(1_002L, "customer-0")).isEqualTo(3L);
+        assertThat(redemptionService.redeemed(1_002L, "customer-1")).isEqualTo(3L);
+        assertThat(redemptionService.redeemed(1_002L, null)).isEqualTo(6L);
+        assertThatThrownBy(() -> redemptionService.reserve(coupon, null))
+                .isInstanceOfSatisfying(ResponseStatusException.class,
+                        e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST));
+    }
+
+    @Test
+    void countsRedemptionsInFlightAgainstARaisedOrLoweredLimit() {
+        RedemptionService.Redemption first = redemptionService.reserve(coupon(1_003L, 2L, CatalogEntry.NO_LIMIT), null);
+        redemptionService.reserve(coupon(1_003L, 2L, CatalogEntry.NO_LIMIT), null).commit();
+        assertConflict(coupon(1_003L, 2L, CatalogEntry.NO_LIMIT));
+
+        CatalogEntry raised = coupon(1_003L, 3L, CatalogEntry.NO_LIMIT);
+        redemptionService.reserve(raised, null).commit();
+        assertConflict(raised);
+
+        first.release();
+        assertConflict(coupon(1_003L, 1L, CatalogEntry.NO_LIMIT));
+        assertThat(redemptionService.redeemed(1_003L, null)).isEqualTo(2L);
+    }
+
+    @Test
+    void resumesFromTheLastFlushedCountsAfterARestart() {
+        CatalogEntry coupon = coupon(1_004L, 10L, 4L);
+        for (int i = 0; i < 4; i++) {
+            redemptionService.reserve(coupon, "alice").commit();
+        }
+        redemptionService.reserve(coupon, "bob").commit();
+        redemptionService.flush();
+        redemptionService.flush();
+        redemptionService.reserve(coupon, "bob").commit();
+        redemptionService.flush();
+
+        RedemptionService restarted = new RedemptionService(redemptionRepository, transactionTemplate, metrics);
+        ReflectionTestUtils.setField(restarted, "flushInterval", Duration.ZERO);
+        restarted.start();
+
+        assertThat(restarted.redeemed(1_004L, null)).isEqualTo(6L);
+        assertThat(restarted.redeemed(1_004L, "alice")).isEqualTo(4L);
+        assertThat(restarted.redeemed(1_004L, "bob")).isEqualTo(2L);
+        assertConflict(restarted, coupon, "alice");
+        for (int i = 0; i < 4; i++) {
+            restarted.reserve(coupon, "carol-" + i).commit();
+        }
+        assertConflict(restarted, coupon, "dave");
+    }
+
+    @Test
+    void flushesFromInstancesSharingTheDatabaseAddUp() {
+        CatalogEntry coupon = coupon(1_005L, CatalogEntry.NO_LIMIT, CatalogEntry.NO_LIMIT);
+        RedemptionService other = new RedemptionService(redemptionRepository, transactionTemplate, metrics);
+        ReflectionTestUtils.setField(other, "flushInterval", Duration.ZERO);
+        other.start();
+
+        redemptionService.reserve(coupon, null).commit();
+        other.reserve(coupon, null).commit();
+        other.reserve(coupon, null).commit();
+        redemptionService.flush();
+        other.flush();
+        redemptionService.reserve(coupon, null).commit();
+        redemptionService.flush();
+
+        assertThat(redemptionRepository.findById(new CouponRedemption.Key(1_005L, "")))
+                .hasValueSatisfying(row -> assertThat(row.getRedeemed()).isEqualTo(4L));
+    }
+
+    @Test
+    void evictsIdleCountersOnceFlushedAndReloadsThemOnNextUse() {
+        CatalogEntry coupon = coupon(1_006L, 3L, CatalogEntry.NO_LIMIT);
+        RedemptionService service = new RedemptionService(redemptionRepository, transactionTemplate, metrics);
+        ReflectionTestUtils.setField(service, "flushInterval", Duration.ZERO);
+        ReflectionTestUtils.setField(service, "idleTimeout", Duration.ZERO);
+        service.start();
+
+        service.reserve(coupon, null).commit();
+        RedemptionService.Redemption inFlight = service.reserve(coupon, null);
+        service.evictIdle();
+        assertThat(counters(service)).hasSize(1);
+
+        inFlight.commit();
+        service.evictIdle();
+        assertThat(counters(service)).hasSize(1);
+
+        service.flush();
+        service.evictIdle();
+        assertThat(counters(service)).isEmpty();
+
+        assertThat(service.redeemed(1_006L, null)).isEqualTo(2L);
+        service.reserve(coupon, null).commit();
+        assertConflict(service, coupon, null);
+    }
+
+    @Test
+    void deletingACouponDropsItsCountsWhenTheDeleteCommits() {
+        CatalogEntry coupon = coupon(1_007L, 2L, 1L);
+        redemptionService.reserve(coupon, "alice").commit();
+        redemptionService.flush();
+        redemptionService.reserve(coupon, "bob").commit();
+
+        transactionTemplate.executeWithoutResult(status -> {
+            redemptionService.removeAfterCommit(1_007L);
+            assertThat(redemptionService.redeemed(1_007L, "bob")).isEqualTo(1L);
+        });
+
+        assertThat(redemptionRepository.findAll())
+                .noneMatch(row -> row.getKey().getCouponId() == 1_007L);
+        assertThat(redemptionService.redeemed(1_007L, null)).isZero();
+        redemptionService.flush();
+        assertThat(redemptionRepository.findAll())
+                .noneMatch(row -> row.getKey().getCouponId() == 1_007L);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<CouponRedemption.Key, ?> counters(RedemptionService service) {
+        return (Map<CouponRedemption.Key, ?>) ReflectionTestUtils.getField(service, "counters");
+    }
+
+    private void hammer(Runnable work) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>(THREADS);
+        for (int i = 0; i < THREADS; i++) {
+            threads.add(Thread.ofPlatform().start(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                work.run();
+            }));
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+
+    private void assertConflict(CatalogEntry coupon) {
+        assertConflict(redemptionService, coupon, null);
+    }
+
+    private static void assertConflict(RedemptionService service, CatalogEntry coupon, String customerId) {
+        assertThatThrownBy(() -> service.reserve(coupon, customerId))
+                .isInstanceOfSatisfying(ResponseStatusException.class,
+                        e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.CONFLICT));
+    }
+
+    private static CatalogEntry coupon(long id, long maxRedemptions, long maxRedemptionsPerCustomer) {
+        return new CatalogEntry(new CartWiseRule(id, 0L, 0, 10), "{}", CatalogEntry.UNBOUNDED_FROM,
+                CatalogEntry.UNBOUNDED_UNTIL, maxRedemptions, maxRedemptionsPerCustomer);
+    }
+}